@@ -7,6 +7,8 @@ create table users
     id               bigint      not null primary key auto_increment,
     username         varchar(20) not null unique,
     password         varchar(64) not null,
+    retention_max_versions int,      -- the retention policy of the user's files, null for no limit
+    retention_max_age_days int,
     created_at       datetime    not null default current_timestamp,
     last_modified_at datetime on update current_timestamp
 );
@@ -17,49 +19,97 @@ create table files
     filename         varchar(100) not null,
     content_type     varchar(50)  not null,
     user_id          bigint       not null,
+    current_version_id bigint,       -- the newest version, updated on every upload
+    retention_max_versions int,      -- replaces the retention policy of the user when set
+    retention_max_age_days int,
     created_at datetime    not null default current_timestamp,
+    deleted_at datetime,             -- set when the file is deleted, the row is removed later in the background
+    -- the filename while the file isn't deleted, so a deleted file doesn't keep its filename taken
+    live_filename varchar(100) generated always as (if(deleted_at is null, filename, null)) stored,
 
     foreign key (user_id) references users (id),
-    unique (filename, user_id)
+    unique (live_filename, user_id)
 );
 
+create index ix_files_user_id_filename on files (user_id, filename);
+create index ix_files_deleted_at on files (deleted_at);
+
 create table file_versions
 (
     id         bigint      not null primary key auto_increment,
     uuid       varchar(36) not null unique,
     file_id    bigint      not null,
-    size       int         not null,
-    content    longblob,
+    size       bigint      not null,
+    content    longblob,   -- only used by versions created before the blob store was introduced
+    storage_key varchar(64),
+    delta_base_key varchar(64), -- the full snapshot the content is a delta from, null when stored whole
+    content_encoding varchar(16), -- e.g. gzip, null when the content is stored as uploaded
+    encoded_size bigint, -- size of the content as stored, null when stored as uploaded
+    content_hash char(64), -- hex encoded SHA-256 digest of the content
     created_at datetime    not null default current_timestamp,
 
     foreign key (file_id) references files (id)
 );
 
 create index ix_file_versions_created_at on file_versions (file_id, created_at desc);
+create index ix_file_versions_storage_key on file_versions (storage_key);
+
+alter table files add foreign key (current_version_id) references file_versions (id) on delete set null;
+
+/*
+ Identical content is stored once in the blob store, this table counts the file versions using each blob
+ so it's only deleted when the last of them is
+*/
+create table blob_references
+(
+    storage_key varchar(64) not null primary key,
+    size        bigint      not null,
+    ref_count   int         not null,
+    created_at  datetime    not null default current_timestamp
+);
 
 /*
- This view selects files with their versions, and ranks the versions
- by their creation date, so the newest file version will have a rank of 1
-  and the oldest will have a rank of N
+ Files uploaded in chunks, the chunks are kept in the filesystem until the upload is committed
 */
-create view user_files_view as (
-with files_ranked as (
-   select f.id,
-          f.filename,
-          f.content_type,
-          fv.uuid version,
-          fv.content,
-          fv.size size_in_bytes,
-          f.created_at,
-          fv.created_at last_modified_at,
-          f.user_id,
-          rank() over (partition by f.user_id, f.filename order by fv.created_at desc) date_created_rank
-   from files f
-            inner join file_versions fv on f.id = fv.file_id
-    )
-    select * from files_ranked
+create table upload_sessions
+(
+    id           varchar(36)  not null primary key,
+    filename     varchar(100) not null,
+    content_type varchar(50)  not null,
+    size         bigint       not null,
+    user_id      bigint       not null,
+    file_id      bigint,      -- the file that gets a new version, null when creating a file
+    created_at   datetime     not null default current_timestamp,
+    expires_at   datetime     not null,
+
+    foreign key (user_id) references users (id),
+    foreign key (file_id) references files (id) on delete cascade
 );
 
+create index ix_upload_sessions_expires_at on upload_sessions (expires_at);
+
+/*
+ This view selects files with their current version
+*/
+create view user_files_view as
+select f.id,
+       f.filename,
+       f.content_type,
+       fv.uuid version,
+       fv.content,
+       fv.storage_key,
+       fv.delta_base_key,
+       fv.content_encoding,
+       fv.encoded_size,
+       fv.content_hash,
+       fv.size size_in_bytes,
+       f.created_at,
+       fv.created_at last_modified_at,
+       f.user_id
+from files f
+         inner join file_versions fv on fv.id = f.current_version_id
+where f.deleted_at is null;
+
 /* username: test, password: test */
 insert into users (username, password) values ('test', '$2a$10$/9iZqwhMOwhtZyhq0edzteESqErGMglHGpG8/U8gssc5ZuT/Kx0/G');
 /* username: test2, password: test */
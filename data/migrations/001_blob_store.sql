@@ -0,0 +1,29 @@
+/*
+ Moves file contents out of the database (run on databases created before the blob store was introduced)
+
+ New versions store their content in the blob store and only keep its key in storage_key.
+ Existing versions keep their inline content until the application is started with
+ storage.migration.enabled=true, which copies it to the blob store and clears the content column
+*/
+alter table file_versions add column storage_key varchar(64) after content;
+
+create index ix_file_versions_storage_key on file_versions (storage_key);
+
+create or replace view user_files_view as (
+with files_ranked as (
+   select f.id,
+          f.filename,
+          f.content_type,
+          fv.uuid version,
+          fv.content,
+          fv.storage_key,
+          fv.size size_in_bytes,
+          f.created_at,
+          fv.created_at last_modified_at,
+          f.user_id,
+          rank() over (partition by f.user_id, f.filename order by fv.created_at desc) date_created_rank
+   from files f
+            inner join file_versions fv on f.id = fv.file_id
+    )
+    select * from files_ranked
+);
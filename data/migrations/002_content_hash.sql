@@ -0,0 +1,29 @@
+/*
+ Adds the SHA-256 digest of the content of each version, used to build the ETag of downloads.
+
+ Versions stored in the blob store use the digest as their storage key, so it's copied from there.
+ Versions still stored inline get their digest when they are moved to the blob store
+*/
+alter table file_versions add column content_hash char(64) after storage_key;
+
+update file_versions set content_hash = storage_key where storage_key is not null;
+
+create or replace view user_files_view as (
+with files_ranked as (
+   select f.id,
+          f.filename,
+          f.content_type,
+          fv.uuid version,
+          fv.content,
+          fv.storage_key,
+          fv.content_hash,
+          fv.size size_in_bytes,
+          f.created_at,
+          fv.created_at last_modified_at,
+          f.user_id,
+          rank() over (partition by f.user_id, f.filename order by fv.created_at desc) date_created_rank
+   from files f
+            inner join file_versions fv on f.id = fv.file_id
+    )
+    select * from files_ranked
+);
@@ -0,0 +1,19 @@
+/*
+ Adds the reference counts of the blobs, so identical content is stored once and only deleted
+ from the blob store when the last file version using it is deleted.
+
+ The counts of the content already moved to the blob store are computed from the file versions
+*/
+create table blob_references
+(
+    storage_key varchar(64) not null primary key,
+    size        bigint      not null,
+    ref_count   int         not null,
+    created_at  datetime    not null default current_timestamp
+);
+
+insert into blob_references (storage_key, size, ref_count)
+select storage_key, max(size), count(*)
+from file_versions
+where storage_key is not null
+group by storage_key;
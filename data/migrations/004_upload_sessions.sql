@@ -0,0 +1,21 @@
+/*
+ Adds the chunked uploads, and widens the size of the file versions so files larger than 2GB can be stored
+*/
+alter table file_versions modify size bigint not null;
+
+create table upload_sessions
+(
+    id           varchar(36)  not null primary key,
+    filename     varchar(100) not null,
+    content_type varchar(50)  not null,
+    size         bigint       not null,
+    user_id      bigint       not null,
+    file_id      bigint,      -- the file that gets a new version, null when creating a file
+    created_at   datetime     not null default current_timestamp,
+    expires_at   datetime     not null,
+
+    foreign key (user_id) references users (id),
+    foreign key (file_id) references files (id) on delete cascade
+);
+
+create index ix_upload_sessions_expires_at on upload_sessions (expires_at);
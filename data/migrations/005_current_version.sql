@@ -0,0 +1,31 @@
+/*
+ Keeps a pointer to the newest version of each file, so listing files no longer ranks every version
+ of every file to find the newest ones
+*/
+alter table files add column current_version_id bigint after user_id;
+
+update files f
+set f.current_version_id = (select fv.id
+                            from file_versions fv
+                            where fv.file_id = f.id
+                            order by fv.created_at desc, fv.id desc
+                            limit 1);
+
+alter table files add foreign key (current_version_id) references file_versions (id) on delete set null;
+
+create index ix_files_user_id_filename on files (user_id, filename);
+
+create or replace view user_files_view as
+select f.id,
+       f.filename,
+       f.content_type,
+       fv.uuid version,
+       fv.content,
+       fv.storage_key,
+       fv.content_hash,
+       fv.size size_in_bytes,
+       f.created_at,
+       fv.created_at last_modified_at,
+       f.user_id
+from files f
+         inner join file_versions fv on fv.id = f.current_version_id;
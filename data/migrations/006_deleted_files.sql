@@ -0,0 +1,30 @@
+/*
+ Deleted files are tombstoned and removed later in the background with their versions, so deleting a file
+ with many versions doesn't hold the request. A tombstoned file no longer keeps its filename taken
+*/
+alter table files add column deleted_at datetime after created_at;
+
+alter table files add column live_filename varchar(100)
+    generated always as (if(deleted_at is null, filename, null)) stored after deleted_at;
+
+alter table files add unique (live_filename, user_id);
+-- the unique key created by init.sql for (filename, user_id)
+alter table files drop index filename;
+
+create index ix_files_deleted_at on files (deleted_at);
+
+create or replace view user_files_view as
+select f.id,
+       f.filename,
+       f.content_type,
+       fv.uuid version,
+       fv.content,
+       fv.storage_key,
+       fv.content_hash,
+       fv.size size_in_bytes,
+       f.created_at,
+       fv.created_at last_modified_at,
+       f.user_id
+from files f
+         inner join file_versions fv on fv.id = f.current_version_id
+where f.deleted_at is null;
@@ -0,0 +1,9 @@
+/*
+ Retention policies limit the versions kept of each file, by number or by age. A user's policy applies to all
+ their files, a file's policy replaces it. The versions the policies don't keep are pruned in the background
+*/
+alter table users add column retention_max_versions int after password;
+alter table users add column retention_max_age_days int after retention_max_versions;
+
+alter table files add column retention_max_versions int after current_version_id;
+alter table files add column retention_max_age_days int after retention_max_versions;
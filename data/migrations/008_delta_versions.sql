@@ -0,0 +1,21 @@
+/*
+ New versions of large files can be stored as binary deltas from the newest version stored whole
+*/
+alter table file_versions add column delta_base_key varchar(64) after storage_key;
+
+create or replace view user_files_view as
+select f.id,
+       f.filename,
+       f.content_type,
+       fv.uuid version,
+       fv.content,
+       fv.storage_key,
+       fv.delta_base_key,
+       fv.content_hash,
+       fv.size size_in_bytes,
+       f.created_at,
+       fv.created_at last_modified_at,
+       f.user_id
+from files f
+         inner join file_versions fv on fv.id = f.current_version_id
+where f.deleted_at is null;
@@ -0,0 +1,24 @@
+/*
+ The contents of new versions can be stored compressed
+*/
+alter table file_versions add column content_encoding varchar(16) after delta_base_key;
+alter table file_versions add column encoded_size bigint after content_encoding;
+
+create or replace view user_files_view as
+select f.id,
+       f.filename,
+       f.content_type,
+       fv.uuid version,
+       fv.content,
+       fv.storage_key,
+       fv.delta_base_key,
+       fv.content_encoding,
+       fv.encoded_size,
+       fv.content_hash,
+       fv.size size_in_bytes,
+       f.created_at,
+       fv.created_at last_modified_at,
+       f.user_id
+from files f
+         inner join file_versions fv on fv.id = f.current_version_id
+where f.deleted_at is null;
@@ -0,0 +1,93 @@
+package com.demo.filestorageapi.benchmark;
+
+import com.demo.filestorageapi.FileStorageApiApplication;
+import com.demo.filestorageapi.core.dao.UserRepository;
+import com.demo.filestorageapi.core.model.User;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark application - starts the application without the web server, against its own in-memory H2 database
+ * and a blob store in a temporary directory, so every trial starts from an empty storage
+ *
+ * @author Franklin Grassals
+ */
+final class BenchmarkApplication implements AutoCloseable {
+    static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final Path rootDir;
+    private final ConfigurableApplicationContext context;
+
+    /**
+     * Starts the application
+     * @param properties Extra properties, e.g. to disable a cache
+     * @throws IOException if the temporary directory couldn't be created
+     */
+    BenchmarkApplication(String... properties) throws IOException {
+        this.rootDir = Files.createTempDirectory("file-storage-benchmark-");
+        var arguments = Stream.concat(Stream.of(
+                "spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "spring.datasource.username=sa",
+                "spring.datasource.password=",
+                "spring.datasource.initialization-mode=always",
+                "storage.filesystem.root-dir=" + rootDir,
+                // the background jobs only run when a benchmark asks for them
+                "storage.reclaim.interval=PT24H",
+                "storage.retention.interval=PT24H",
+                "storage.upload.expiration-check-interval=PT24H",
+                // the jobs that run on startup finish before the temporary directory is deleted
+                "spring.task.scheduling.shutdown.await-termination=true",
+                "spring.task.scheduling.shutdown.await-termination-period=PT1M",
+                "logging.level.root=WARN"), Stream.of(properties));
+        // given as arguments, so they replace the ones in application.properties
+        this.context = new SpringApplicationBuilder(FileStorageApiApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(arguments.map(property -> "--" + property).toArray(String[]::new));
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    // the user created by the database initialization script
+    User getUser() {
+        return getBean(UserRepository.class).findByUsername("test").orElseThrow();
+    }
+
+    /**
+     * Generates random content, so it doesn't compress and every benchmark stores the same bytes
+     * @param size The size of the content, e.g. "1MB"
+     * @return the content
+     */
+    static byte[] payload(String size) {
+        var payload = new byte[(int) DataSize.parse(size).toBytes()];
+        new Random(42).nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Changes the first bytes of a content, so it's stored as new content instead of a copy of what's stored already
+     * @param payload The content, at least 8 bytes long
+     * @param stamp A number that wasn't used with this content before
+     */
+    static void stamp(byte[] payload, long stamp) {
+        ByteBuffer.wrap(payload).putLong(0, stamp);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(rootDir);
+    }
+}
@@ -0,0 +1,55 @@
+package com.demo.filestorageapi.benchmark;
+
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.service.FileStorageService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks streaming the content of a file as a download does, from the lookup of the file to the last byte
+ * read from the blob store. Small contents are served from the content cache after the first read
+ *
+ * @author Franklin Grassals
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ContentBenchmark {
+
+    @Param({"1KB", "1MB", "50MB"})
+    String payloadSize;
+
+    BenchmarkApplication application;
+    FileStorageService fileStorageService;
+    User user;
+    Long fileId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.application = new BenchmarkApplication();
+        this.fileStorageService = application.getBean(FileStorageService.class);
+        this.user = application.getUser();
+
+        var payload = BenchmarkApplication.payload(payloadSize);
+        this.fileId = fileStorageService.storeFile("file", new ByteArrayInputStream(payload), payload.length,
+                BenchmarkApplication.CONTENT_TYPE, user).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    @Benchmark
+    public long streamContent() throws IOException {
+        try (var in = fileStorageService.getFileContent(fileId, user).open()) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
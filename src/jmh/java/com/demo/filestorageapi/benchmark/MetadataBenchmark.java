@@ -0,0 +1,88 @@
+package com.demo.filestorageapi.benchmark;
+
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.model.UserFile;
+import com.demo.filestorageapi.core.service.BlobReferenceCounter;
+import com.demo.filestorageapi.core.service.FileStorageService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the metadata lookups of {@link FileStorageService} on a user with many files, one of them with
+ * a history of the given depth. They run with and without the metadata cache, so both the cached and the
+ * database lookups are measured
+ *
+ * @author Franklin Grassals
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MetadataBenchmark {
+    private static final int FILES = 1000;
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1", "100", "1000"})
+    int versions;
+
+    @Param({"true", "false"})
+    boolean metadataCache;
+
+    BenchmarkApplication application;
+    FileStorageService fileStorageService;
+    User user;
+    Long fileId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.application = new BenchmarkApplication("storage.metadata-cache.enabled=" + metadataCache);
+        this.fileStorageService = application.getBean(FileStorageService.class);
+        this.user = application.getUser();
+
+        // the files share their content, so it's stored once
+        var payload = BenchmarkApplication.payload("1KB");
+        for (var i = 0; i < FILES; i++) {
+            fileStorageService.storeFile(String.format("file-%04d", i), new ByteArrayInputStream(payload),
+                    payload.length, BenchmarkApplication.CONTENT_TYPE, user);
+        }
+        var file = fileStorageService.storeFile("versioned", new ByteArrayInputStream(payload), payload.length,
+                BenchmarkApplication.CONTENT_TYPE, user);
+        this.fileId = file.getId();
+
+        var fileVersionRepository = application.getBean(FileVersionRepository.class);
+        var blobReferenceCounter = application.getBean(BlobReferenceCounter.class);
+        var current = file.getCurrentVersion();
+        for (var i = 1; i < versions; i++) {
+            blobReferenceCounter.retainExisting(current.getStorageKey());
+            fileVersionRepository.save(new FileVersion(current.getStorageKey(), current.getSize(),
+                    current.getContentHash(), file));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    @Benchmark
+    public UserFile getFile() {
+        return fileStorageService.getFile(fileId, user);
+    }
+
+    @Benchmark
+    public List<UserFile> getFiles() {
+        return fileStorageService.getFiles(user, null, null, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<FileVersion> getFileVersions() {
+        return fileStorageService.getFileVersions(fileId, user);
+    }
+}
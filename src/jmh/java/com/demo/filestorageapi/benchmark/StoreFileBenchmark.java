@@ -0,0 +1,68 @@
+package com.demo.filestorageapi.benchmark;
+
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.service.DeletedFileReclaimer;
+import com.demo.filestorageapi.core.service.FileStorageService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link FileStorageService#storeFile}, every file stores new content
+ *
+ * @author Franklin Grassals
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StoreFileBenchmark {
+
+    @Param({"1KB", "1MB", "50MB"})
+    String payloadSize;
+
+    BenchmarkApplication application;
+    FileStorageService fileStorageService;
+    User user;
+    byte[] payload;
+    long stamp;
+    List<Long> stored = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.application = new BenchmarkApplication();
+        this.fileStorageService = application.getBean(FileStorageService.class);
+        this.user = application.getUser();
+        this.payload = BenchmarkApplication.payload(payloadSize);
+    }
+
+    // the files stored by the iteration are deleted, so the blob store doesn't fill the disk
+    @TearDown(Level.Iteration)
+    public void deleteStoredFiles() {
+        for (var i = 0; i < stored.size(); i += 1000) {
+            fileStorageService.deleteFiles(stored.subList(i, Math.min(i + 1000, stored.size())), user);
+        }
+        stored.clear();
+        application.getBean(DeletedFileReclaimer.class).reclaim();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    @Benchmark
+    public File storeFile() {
+        BenchmarkApplication.stamp(payload, ++stamp);
+        var file = fileStorageService.storeFile("file-" + stamp, new ByteArrayInputStream(payload), payload.length,
+                BenchmarkApplication.CONTENT_TYPE, user);
+        stored.add(file.getId());
+        return file;
+    }
+}
@@ -0,0 +1,86 @@
+package com.demo.filestorageapi.benchmark;
+
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.service.BlobReferenceCounter;
+import com.demo.filestorageapi.core.service.FileStorageService;
+import com.demo.filestorageapi.core.service.RetentionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link FileStorageService#updateFile} on files with histories of different depths. Every update
+ * changes a few bytes of the content, so large files are stored as deltas like edited files would.
+ *
+ * A retention policy keeps the history at its depth, the versions added by an iteration are pruned after it
+ *
+ * @author Franklin Grassals
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UpdateFileBenchmark {
+
+    @Param({"1KB", "1MB", "50MB"})
+    String payloadSize;
+
+    @Param({"1", "100", "1000"})
+    int versions;
+
+    BenchmarkApplication application;
+    FileStorageService fileStorageService;
+    User user;
+    byte[] payload;
+    long stamp;
+    Long fileId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.application = new BenchmarkApplication();
+        this.fileStorageService = application.getBean(FileStorageService.class);
+        this.user = application.getUser();
+        this.payload = BenchmarkApplication.payload(payloadSize);
+
+        var file = fileStorageService.storeFile("file", new ByteArrayInputStream(payload), payload.length,
+                BenchmarkApplication.CONTENT_TYPE, user);
+        this.fileId = file.getId();
+        addHistory(file, versions - 1);
+        application.getBean(RetentionService.class).setFilePolicy(fileId, user, versions, null);
+    }
+
+    @TearDown(Level.Iteration)
+    public void prune() {
+        application.getBean(RetentionService.class).prune();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        application.close();
+    }
+
+    @Benchmark
+    public File updateFile() {
+        BenchmarkApplication.stamp(payload, ++stamp);
+        return fileStorageService.updateFile(fileId, user, new ByteArrayInputStream(payload), payload.length,
+                BenchmarkApplication.CONTENT_TYPE);
+    }
+
+    // older versions pointing to the content of the current one, they are only rows so they are added directly
+    private void addHistory(File file, int count) {
+        var fileVersionRepository = application.getBean(FileVersionRepository.class);
+        var blobReferenceCounter = application.getBean(BlobReferenceCounter.class);
+        var current = file.getCurrentVersion();
+        for (var i = 0; i < count; i++) {
+            blobReferenceCounter.retainExisting(current.getStorageKey());
+            fileVersionRepository.save(new FileVersion(current.getStorageKey(), current.getSize(),
+                    current.getContentHash(), file));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Database initialization script of the benchmarks, the H2 version of data/init.sql. It has the same indexes, so the
+ * queries are measured with the indexes production relies on
+ */
+
+create table users
+(
+    id               bigint      not null primary key auto_increment,
+    username         varchar(20) not null unique,
+    password         varchar(64) not null,
+    retention_max_versions int,
+    retention_max_age_days int,
+    created_at       datetime    not null default current_timestamp,
+    last_modified_at datetime
+);
+
+create table files
+(
+    id               bigint       not null primary key auto_increment,
+    filename         varchar(100) not null,
+    content_type     varchar(50)  not null,
+    user_id          bigint       not null,
+    current_version_id bigint,
+    retention_max_versions int,
+    retention_max_age_days int,
+    created_at datetime    not null default current_timestamp,
+    deleted_at datetime,
+    live_filename varchar(100) as (case when deleted_at is null then filename end),
+    foreign key (user_id) references users (id),
+    unique (live_filename, user_id)
+);
+
+create index ix_files_user_id_filename on files (user_id, filename);
+create index ix_files_deleted_at on files (deleted_at);
+
+create table file_versions
+(
+    id         bigint      not null primary key auto_increment,
+    uuid       varchar(36) not null unique,
+    file_id    bigint      not null,
+    size       bigint      not null,
+    content    longblob,
+    storage_key varchar(64),
+    delta_base_key varchar(64),
+    content_encoding varchar(16),
+    encoded_size bigint,
+    content_hash char(64),
+    created_at datetime    not null default current_timestamp,
+    foreign key (file_id) references files (id)
+);
+
+create index ix_file_versions_created_at on file_versions (file_id, created_at desc);
+create index ix_file_versions_storage_key on file_versions (storage_key);
+
+alter table files add foreign key (current_version_id) references file_versions (id) on delete set null;
+
+create table blob_references
+(
+    storage_key varchar(64) not null primary key,
+    size        bigint      not null,
+    ref_count   int         not null,
+    created_at  datetime    not null default current_timestamp
+);
+
+
+create table upload_sessions
+(
+    id           varchar(36)  not null primary key,
+    filename     varchar(100) not null,
+    content_type varchar(50)  not null,
+    size         bigint       not null,
+    user_id      bigint       not null,
+    file_id      bigint,
+    created_at   datetime     not null default current_timestamp,
+    expires_at   datetime     not null,
+
+    foreign key (user_id) references users (id),
+    foreign key (file_id) references files (id) on delete cascade
+);
+
+create index ix_upload_sessions_expires_at on upload_sessions (expires_at);
+
+create view user_files_view as
+   select f.id,
+          f.filename,
+          f.content_type,
+          fv.uuid version,
+          fv.content,
+          fv.storage_key,
+          fv.delta_base_key,
+          fv.content_encoding,
+          fv.encoded_size,
+          fv.content_hash,
+          fv.size size_in_bytes,
+          f.created_at,
+          fv.created_at last_modified_at,
+          f.user_id
+   from files f
+            inner join file_versions fv on fv.id = f.current_version_id
+   where f.deleted_at is null;
+
+insert into users (username, password) values ('test', '$2a$10$/9iZqwhMOwhtZyhq0edzteESqErGMglHGpG8/U8gssc5ZuT/Kx0/G');
+insert into users (username, password) values ('test2', '$2a$10$/9iZqwhMOwhtZyhq0edzteESqErGMglHGpG8/U8gssc5ZuT/Kx0/G');
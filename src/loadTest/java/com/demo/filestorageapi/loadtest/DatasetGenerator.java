@@ -0,0 +1,139 @@
+package com.demo.filestorageapi.loadtest;
+
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.dao.UserRepository;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.service.BlobReferenceCounter;
+import com.demo.filestorageapi.core.service.FileStorageService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dataset generator - seeds the users, files and versions the load test runs against. The same settings and seed
+ * always generate the same dataset, so runs on different releases are comparable
+ *
+ * @author Franklin Grassals
+ */
+final class DatasetGenerator {
+    static final String PASSWORD = "load-test";
+    static final String CONTENT_TYPE = "application/octet-stream";
+    static final String SLOW_TRANSFER_CONTENT_TYPE = "text/plain";
+
+    private final LoadTestApplication application;
+    private final LoadTestSettings settings;
+
+    DatasetGenerator(LoadTestApplication application, LoadTestSettings settings) {
+        this.application = application;
+        this.settings = settings;
+    }
+
+    /**
+     * Stores the files of every user through the {@link FileStorageService}, their older versions are added as rows
+     * pointing to the content of the current one, which is much faster and looks the same to the api
+     *
+     * @return the seeded users
+     */
+    List<SeededUser> generate() {
+        var userRepository = application.getBean(UserRepository.class);
+        var fileStorageService = application.getBean(FileStorageService.class);
+        // bcrypt is slow on purpose, every user shares the same hash
+        var passwordHash = application.getBean(PasswordEncoder.class).encode(PASSWORD);
+        var payload = payload(settings.payloadSize.toBytes(), new Random(settings.seed));
+
+        var users = new ArrayList<SeededUser>();
+        for (var i = 0; i < settings.users; i++) {
+            var user = userRepository.save(new User(null, "load-test-" + i, passwordHash));
+            var fileIds = new ArrayList<Long>();
+            for (var j = 0; j < settings.filesPerUser; j++) {
+                stamp(payload, (long) i * settings.filesPerUser + j);
+                var file = fileStorageService.storeFile("file-" + j + ".bin", new ByteArrayInputStream(payload),
+                        payload.length, CONTENT_TYPE, user);
+                addHistory(file, settings.versionsPerFile - 1);
+                fileIds.add(file.getId());
+            }
+            users.add(new SeededUser(user.getUsername(), fileIds));
+        }
+        return users;
+    }
+
+    /**
+     * Stores the large file the slow clients download or update, for the first seeded user. It's text, so it's
+     * stored compressed and decompressed while it's sent to clients that don't accept gzip. Otherwise it would be
+     * sent with sendfile, which doesn't keep a thread busy however slow the client is
+     *
+     * @param user The first seeded user
+     * @return the id of the file
+     */
+    Long storeSlowTransfer(SeededUser user) {
+        var payload = slowTransferContent(settings.slowTransferSize.toBytes());
+        var owner = application.getBean(UserRepository.class).findByUsername(user.username).orElseThrow();
+        return application.getBean(FileStorageService.class).storeFile("slow-transfer.txt",
+                new ByteArrayInputStream(payload), payload.length, SLOW_TRANSFER_CONTENT_TYPE, owner).getId();
+    }
+
+    /**
+     * Generates the text content of the slow transfers
+     * @param size The size of the content in bytes
+     * @return the content
+     */
+    static byte[] slowTransferContent(long size) {
+        var content = new StringBuilder();
+        for (var line = 0; content.length() < size; line++) {
+            content.append("line ").append(line).append(" of the file transferred by the slow clients\n");
+        }
+        return content.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void addHistory(File file, int count) {
+        var fileVersionRepository = application.getBean(FileVersionRepository.class);
+        var blobReferenceCounter = application.getBean(BlobReferenceCounter.class);
+        var current = file.getCurrentVersion();
+        for (var i = 0; i < count; i++) {
+            blobReferenceCounter.retainExisting(current.getStorageKey());
+            fileVersionRepository.save(new FileVersion(current.getStorageKey(), current.getSize(),
+                    current.getContentHash(), file));
+        }
+    }
+
+    /**
+     * Generates random content, so it doesn't compress
+     * @param size The size of the content in bytes
+     * @param random The source of the content
+     * @return the content
+     */
+    static byte[] payload(long size, Random random) {
+        var payload = new byte[(int) Math.max(size, Long.BYTES)];
+        random.nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Changes the first bytes of a content, so it's stored as new content instead of a copy of what's stored already
+     * @param payload The content, at least 8 bytes long
+     * @param stamp A number that wasn't used with this content before
+     */
+    static void stamp(byte[] payload, long stamp) {
+        ByteBuffer.wrap(payload).putLong(0, stamp);
+    }
+
+    /**
+     * A seeded user and the ids of its files
+     */
+    static final class SeededUser {
+        final String username;
+        final List<Long> fileIds;
+
+        SeededUser(String username, List<Long> fileIds) {
+            this.username = username;
+            this.fileIds = fileIds;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.demo.filestorageapi.loadtest;
+
+import java.time.Duration;
+
+/**
+ * HTTP load test - starts the api, seeds a dataset, runs a mix of uploads, updates, listings, downloads and deletes
+ * against it and reports the throughput and latency percentiles of each endpoint.
+ *
+ * Run it with ./gradlew loadTest, the settings are given with -PloadTestArgs="--users=20 --duration=PT5M"
+ * (see {@link LoadTestSettings})
+ *
+ * @author Franklin Grassals
+ */
+public final class LoadTest {
+
+    private LoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        var settings = LoadTestSettings.parse(args);
+        System.out.println("Load test: " + settings);
+
+        try (var application = new LoadTestApplication()) {
+            var started = System.nanoTime();
+            var generator = new DatasetGenerator(application, settings);
+            var users = generator.generate();
+            var slowTransferId = settings.slowClients > 0 ? generator.storeSlowTransfer(users.get(0)) : null;
+            System.out.printf("Seeded the dataset in %ss%n", Duration.ofNanos(System.nanoTime() - started).toSeconds());
+
+            var report = new Workload(application.getBaseUri(), settings).run(users, slowTransferId);
+            report.print(System.out);
+            if (settings.report != null) {
+                report.write(settings.report);
+                System.out.println("Results written to " + settings.report.toAbsolutePath());
+            }
+        }
+    }
+}
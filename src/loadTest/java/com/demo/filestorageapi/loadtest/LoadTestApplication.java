@@ -0,0 +1,60 @@
+package com.demo.filestorageapi.loadtest;
+
+import com.demo.filestorageapi.FileStorageApiApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+/**
+ * Load test application - starts the api on a random port, against its own in-memory H2 database and a blob store
+ * in a temporary directory. The rest of the settings, like the caches and background jobs, are the production ones
+ *
+ * @author Franklin Grassals
+ */
+final class LoadTestApplication implements AutoCloseable {
+    private final Path rootDir;
+    private final ConfigurableApplicationContext context;
+
+    LoadTestApplication() throws IOException {
+        this.rootDir = Files.createTempDirectory("file-storage-load-test-");
+        var arguments = new String[] {
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.initialization-mode=always",
+                "--storage.filesystem.root-dir=" + rootDir,
+                // the clients get a token once, so it has to outlast the run
+                "--security.token.ttl=PT24H",
+                "--spring.task.scheduling.shutdown.await-termination=true",
+                "--spring.task.scheduling.shutdown.await-termination-period=PT1M",
+                "--logging.level.root=WARN",
+                // hibernate warns on every bulk update of the files, which would bury the report
+                "--logging.level.org.hibernate.internal.SessionImpl=ERROR"
+        };
+        // given as arguments, so they replace the ones in application.properties
+        this.context = new SpringApplicationBuilder(FileStorageApiApplication.class).run(arguments);
+    }
+
+    <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    URI getBaseUri() {
+        var port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        return URI.create("http://localhost:" + port);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(rootDir);
+    }
+}
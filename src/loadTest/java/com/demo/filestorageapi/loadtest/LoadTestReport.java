@@ -0,0 +1,132 @@
+package com.demo.filestorageapi.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Load test report - records the latency of every request of the measured run, and reports the throughput and
+ * latency percentiles of each endpoint. The percentiles are exact, every latency is kept until the run ends
+ *
+ * @author Franklin Grassals
+ */
+final class LoadTestReport {
+    private final Map<Operation, Samples> samples = new EnumMap<>(Operation.class);
+    private Duration elapsed = Duration.ZERO;
+
+    LoadTestReport() {
+        for (Operation operation : Operation.values()) {
+            samples.put(operation, new Samples());
+        }
+    }
+
+    /**
+     * Records a request
+     * @param operation The operation the request was part of
+     * @param nanos The latency of the request, until its whole response body was read
+     * @param success Whether the api answered with a 2xx status, the latency of failed requests isn't recorded
+     */
+    void record(Operation operation, long nanos, boolean success) {
+        samples.get(operation).add(nanos, success);
+    }
+
+    void setElapsed(Duration elapsed) {
+        this.elapsed = elapsed;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-26s %9s %7s %12s %10s %10s %10s%n",
+                "Endpoint", "Requests", "Errors", "Throughput", "p50", "p99", "max");
+        for (List<String> row : rows()) {
+            out.printf("%-26s %9s %7s %10s/s %8sms %8sms %8sms%n", row.toArray());
+        }
+    }
+
+    void write(Path path) throws IOException {
+        var lines = new ArrayList<String>();
+        lines.add("endpoint,requests,errors,throughput_per_second,p50_ms,p99_ms,max_ms");
+        for (List<String> row : rows()) {
+            lines.add(String.join(",", row));
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Files.write(path, lines);
+    }
+
+    // an endpoint per row, and the total of all of them
+    private List<List<String>> rows() {
+        var rows = new ArrayList<List<String>>();
+        var total = new Samples();
+        samples.forEach((operation, endpointSamples) -> {
+            if (endpointSamples.count + endpointSamples.errors > 0) {
+                rows.add(row(operation.getEndpoint(), endpointSamples));
+                total.addAll(endpointSamples);
+            }
+        });
+        rows.add(row("Total", total));
+        return rows;
+    }
+
+    private List<String> row(String endpoint, Samples endpointSamples) {
+        var latencies = endpointSamples.sorted();
+        var requests = endpointSamples.count + endpointSamples.errors;
+        var seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+        return List.of(endpoint, String.valueOf(requests), String.valueOf(endpointSamples.errors),
+                format(requests / seconds), millis(percentile(latencies, 0.5)),
+                millis(percentile(latencies, 0.99)), millis(percentile(latencies, 1)));
+    }
+
+    // nearest rank percentile
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        var rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static String millis(long nanos) {
+        return format(nanos / 1_000_000.0);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static final class Samples {
+        long[] latencies = new long[1024];
+        int count;
+        int errors;
+
+        synchronized void add(long nanos, boolean success) {
+            if (!success) {
+                errors++;
+                return;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        synchronized void addAll(Samples other) {
+            for (var i = 0; i < other.count; i++) {
+                add(other.latencies[i], true);
+            }
+            errors += other.errors;
+        }
+
+        synchronized long[] sorted() {
+            var sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
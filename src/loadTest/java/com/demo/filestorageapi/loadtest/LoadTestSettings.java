@@ -0,0 +1,117 @@
+package com.demo.filestorageapi.loadtest;
+
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load test settings - given as --name=value arguments, e.g. --users=20 --duration=PT5M
+ *
+ * @author Franklin Grassals
+ */
+final class LoadTestSettings {
+    int users = 10;
+    int filesPerUser = 100;
+    int versionsPerFile = 10;
+    DataSize payloadSize = DataSize.ofKilobytes(64);
+    int concurrency = 16;
+    Duration warmup = Duration.ofSeconds(10);
+    Duration duration = Duration.ofSeconds(60);
+    long seed = 42;
+    // relative weights of the operations in the workload
+    Map<Operation, Integer> mix = parseMix("upload:10,update:10,list:30,download:40,delete:10");
+    // clients downloading or updating a large file at a low rate during the whole run, like mobile clients on a bad
+    // network
+    int slowClients = 0;
+    Operation slowClientOperation = Operation.DOWNLOAD;
+    DataSize slowClientRate = DataSize.ofKilobytes(64);
+    DataSize slowTransferSize = DataSize.ofMegabytes(50);
+    // a csv file the results are written to, besides the console
+    Path report;
+
+    static LoadTestSettings parse(String... args) {
+        var settings = new LoadTestSettings();
+        for (String arg : args) {
+            var separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Arguments must be given as --name=value: " + arg);
+            }
+            var value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+                case "users":
+                    settings.users = Integer.parseInt(value);
+                    break;
+                case "files-per-user":
+                    settings.filesPerUser = Integer.parseInt(value);
+                    break;
+                case "versions-per-file":
+                    settings.versionsPerFile = Integer.parseInt(value);
+                    break;
+                case "payload-size":
+                    settings.payloadSize = DataSize.parse(value);
+                    break;
+                case "concurrency":
+                    settings.concurrency = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    settings.warmup = Duration.parse(value);
+                    break;
+                case "duration":
+                    settings.duration = Duration.parse(value);
+                    break;
+                case "seed":
+                    settings.seed = Long.parseLong(value);
+                    break;
+                case "mix":
+                    settings.mix = parseMix(value);
+                    break;
+                case "slow-clients":
+                    settings.slowClients = Integer.parseInt(value);
+                    break;
+                case "slow-client-operation":
+                    settings.slowClientOperation = Operation.valueOf(value.toUpperCase());
+                    break;
+                case "slow-client-rate":
+                    settings.slowClientRate = DataSize.parse(value);
+                    break;
+                case "slow-transfer-size":
+                    settings.slowTransferSize = DataSize.parse(value);
+                    break;
+                case "report":
+                    settings.report = Path.of(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        if (settings.users < 1 || settings.filesPerUser < 1 || settings.versionsPerFile < 1
+                || settings.concurrency < 1) {
+            throw new IllegalArgumentException("The users, files, versions and concurrency must be at least 1");
+        }
+        if (settings.slowClientOperation != Operation.DOWNLOAD && settings.slowClientOperation != Operation.UPDATE) {
+            throw new IllegalArgumentException("Slow clients can only download or update");
+        }
+        return settings;
+    }
+
+    // e.g. upload:10,list:90, the operations left out aren't run
+    private static Map<Operation, Integer> parseMix(String value) {
+        var mix = new LinkedHashMap<Operation, Integer>();
+        for (String entry : value.split(",")) {
+            var parts = entry.split(":");
+            mix.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return mix;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d users, %d files per user, %d versions per file, %s payloads, %d clients, "
+                        + "%ss warmup, %ss run, seed %d, mix %s, %d slow clients %s at %s/s", users,
+                filesPerUser, versionsPerFile, payloadSize, concurrency, warmup.toSeconds(), duration.toSeconds(), seed,
+                mix, slowClients, slowClientOperation.name().toLowerCase(), slowClientRate);
+    }
+}
@@ -0,0 +1,24 @@
+package com.demo.filestorageapi.loadtest;
+
+/**
+ * Operations of the load test workload, and the endpoints they call
+ *
+ * @author Franklin Grassals
+ */
+enum Operation {
+    UPLOAD("POST /files"),
+    UPDATE("PATCH /files/{id}"),
+    LIST("GET /files"),
+    DOWNLOAD("GET /files/{id}/download"),
+    DELETE("DELETE /files/{id}");
+
+    private final String endpoint;
+
+    Operation(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+}
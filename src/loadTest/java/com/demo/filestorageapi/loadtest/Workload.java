@@ -0,0 +1,277 @@
+package com.demo.filestorageapi.loadtest;
+
+import com.demo.filestorageapi.loadtest.DatasetGenerator.SeededUser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Workload - every client is a thread sending one request after another over HTTP as one of the seeded users,
+ * picking each operation at random with the weights of the mix. The clients of a user split its files, so they
+ * never update, download or delete a file another client deleted.
+ *
+ * Clients start sending requests right away, the requests sent during the warmup aren't recorded. Slow clients,
+ * if any, download or update a large file at a low rate meanwhile, their transfers aren't recorded either
+ *
+ * @author Franklin Grassals
+ */
+final class Workload {
+    private static final int SLOW_BUFFER_SIZE = 8192;
+
+    private final URI baseUri;
+    private final LoadTestSettings settings;
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    Workload(URI baseUri, LoadTestSettings settings) {
+        this.baseUri = baseUri;
+        this.settings = settings;
+    }
+
+    /**
+     * Runs the workload for the warmup and the duration of the settings
+     *
+     * @param users The seeded users
+     * @param slowTransferId The file downloaded or updated by the slow clients, or null if there are none
+     * @return the report of the requests sent after the warmup
+     * @throws IOException if a client couldn't get its access token
+     * @throws InterruptedException if the thread was interrupted while waiting for the clients
+     */
+    LoadTestReport run(List<SeededUser> users, Long slowTransferId) throws IOException, InterruptedException {
+        var clients = new ArrayList<Client>();
+        for (var i = 0; i < settings.concurrency; i++) {
+            clients.add(new Client(i, users));
+        }
+
+        var report = new LoadTestReport();
+        var measureFrom = System.nanoTime() + settings.warmup.toNanos();
+        var end = measureFrom + settings.duration.toNanos();
+        var slowClients = Executors.newFixedThreadPool(Math.max(settings.slowClients, 1));
+        if (settings.slowClients > 0) {
+            var authorization = "Bearer " + getAccessToken(users.get(0).username);
+            Runnable slowClient;
+            if (settings.slowClientOperation == Operation.UPDATE) {
+                var content = DatasetGenerator.slowTransferContent(settings.slowTransferSize.toBytes());
+                var slowUpdate = HttpRequest.newBuilder(baseUri.resolve("/files/" + slowTransferId))
+                        .header("Authorization", authorization)
+                        .header("Content-Type", DatasetGenerator.SLOW_TRANSFER_CONTENT_TYPE)
+                        .method("PATCH", HttpRequest.BodyPublishers.ofInputStream(() -> slowly(content, end)))
+                        .build();
+                slowClient = () -> updateSlowly(slowUpdate, end);
+            } else {
+                var slowDownload = HttpRequest.newBuilder(baseUri.resolve("/files/" + slowTransferId + "/download"))
+                        .header("Authorization", authorization)
+                        .build();
+                slowClient = () -> downloadSlowly(slowDownload, end);
+            }
+            for (var i = 0; i < settings.slowClients; i++) {
+                slowClients.execute(slowClient);
+            }
+        }
+        var executor = Executors.newFixedThreadPool(settings.concurrency);
+        for (Client client : clients) {
+            executor.execute(() -> client.run(report, measureFrom, end));
+        }
+        executor.shutdown();
+        // the requests still running at the end are waited for, they are slow ones too
+        if (!executor.awaitTermination(settings.warmup.plus(settings.duration).toSeconds() + 60, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        slowClients.shutdownNow();
+        report.setElapsed(settings.duration);
+        return report;
+    }
+
+    // reads the download a buffer at a time, pausing between reads to keep to the rate, and starts it again when done
+    private void downloadSlowly(HttpRequest download, long end) {
+        var buffer = new byte[SLOW_BUFFER_SIZE];
+        var pause = buffer.length * 1000L / settings.slowClientRate.toBytes();
+        while (System.nanoTime() < end) {
+            try (var body = httpClient.send(download, HttpResponse.BodyHandlers.ofInputStream()).body()) {
+                while (System.nanoTime() < end && body.read(buffer) >= 0) {
+                    Thread.sleep(pause);
+                }
+            } catch (IOException e) {
+                // the download failed, it's started again
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // sends the update again and again, its body is read slowly
+    private void updateSlowly(HttpRequest update, long end) {
+        while (System.nanoTime() < end) {
+            try {
+                httpClient.send(update, HttpResponse.BodyHandlers.discarding());
+            } catch (IOException e) {
+                // the update failed, it's started again
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // a body that gives a buffer of the content at a time, pausing between them to keep to the rate
+    private InputStream slowly(byte[] content, long end) {
+        var pause = SLOW_BUFFER_SIZE * 1000L / settings.slowClientRate.toBytes();
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                var buffer = new byte[1];
+                return read(buffer, 0, 1) < 0 ? -1 : buffer[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (position == content.length || System.nanoTime() >= end) {
+                    return -1;
+                }
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                var count = Math.min(Math.min(length, SLOW_BUFFER_SIZE), content.length - position);
+                System.arraycopy(content, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+        };
+    }
+
+    private final class Client {
+        private final int index;
+        private final String authorization;
+        private final List<Long> fileIds = new ArrayList<>();
+        private final Random random;
+        private final byte[] payload;
+        private long requests;
+
+        Client(int index, List<SeededUser> users) throws IOException, InterruptedException {
+            this.index = index;
+            this.random = new Random(settings.seed + index);
+            this.payload = DatasetGenerator.payload(settings.payloadSize.toBytes(), random);
+
+            var user = users.get(index % users.size());
+            var slot = index / users.size();
+            var clientsOfUser = (settings.concurrency - index % users.size() + users.size() - 1) / users.size();
+            for (var i = slot; i < user.fileIds.size(); i += clientsOfUser) {
+                fileIds.add(user.fileIds.get(i));
+            }
+            this.authorization = "Bearer " + getAccessToken(user.username);
+        }
+
+        void run(LoadTestReport report, long measureFrom, long end) {
+            while (System.nanoTime() < end) {
+                var operation = pickOperation();
+                var start = System.nanoTime();
+                boolean success;
+                try {
+                    success = execute(operation);
+                } catch (IOException e) {
+                    success = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (start >= measureFrom) {
+                    report.record(operation, System.nanoTime() - start, success);
+                }
+            }
+        }
+
+        private Operation pickOperation() {
+            var total = settings.mix.values().stream().mapToInt(Integer::intValue).sum();
+            var pick = random.nextInt(total);
+            for (var entry : settings.mix.entrySet()) {
+                pick -= entry.getValue();
+                if (pick < 0) {
+                    // a client whose files were all deleted uploads new ones
+                    return entry.getKey() != Operation.UPLOAD && entry.getKey() != Operation.LIST && fileIds.isEmpty()
+                            ? Operation.UPLOAD
+                            : entry.getKey();
+                }
+            }
+            throw new IllegalStateException("The mix has no operations");
+        }
+
+        private boolean execute(Operation operation) throws IOException, InterruptedException {
+            switch (operation) {
+                case UPLOAD:
+                    var uploaded = send(request("/files?filename=load-test-" + index + "-" + requests + ".bin")
+                            .header("Content-Type", DatasetGenerator.CONTENT_TYPE)
+                            .POST(nextPayload()));
+                    uploaded.headers().firstValue("Location").ifPresent(location ->
+                            fileIds.add(Long.valueOf(location.substring(location.lastIndexOf('/') + 1))));
+                    return isSuccess(uploaded);
+                case UPDATE:
+                    return isSuccess(send(request("/files/" + randomFileId())
+                            .header("Content-Type", DatasetGenerator.CONTENT_TYPE)
+                            .method("PATCH", nextPayload())));
+                case LIST:
+                    return isSuccess(send(request("/files?limit=100").GET()));
+                case DOWNLOAD:
+                    return isSuccess(send(request("/files/" + randomFileId() + "/download").GET()));
+                case DELETE:
+                    var fileId = fileIds.remove(random.nextInt(fileIds.size()));
+                    return isSuccess(send(request("/files/" + fileId).DELETE()));
+                default:
+                    throw new IllegalArgumentException("Unknown operation " + operation);
+            }
+        }
+
+        // new content on every request, so it's never deduplicated against what's stored already
+        private HttpRequest.BodyPublisher nextPayload() {
+            DatasetGenerator.stamp(payload, ((long) index + 1) << 40 | ++requests);
+            return HttpRequest.BodyPublishers.ofByteArray(payload);
+        }
+
+        private Long randomFileId() {
+            return fileIds.get(random.nextInt(fileIds.size()));
+        }
+
+        private HttpRequest.Builder request(String path) {
+            return HttpRequest.newBuilder(baseUri.resolve(path)).header("Authorization", authorization);
+        }
+
+        // the latency includes reading the whole response body
+        private HttpResponse<Void> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+            return httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding());
+        }
+    }
+
+    private String getAccessToken(String username) throws IOException, InterruptedException {
+        var credentials = username + ":" + DatasetGenerator.PASSWORD;
+        var request = HttpRequest.newBuilder(baseUri.resolve("/auth/token"))
+                .header("Authorization", "Basic "
+                        + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("Could not get an access token for " + username + ": " + response.body());
+        }
+        return objectMapper.readTree(response.body()).get("accessToken").asText();
+    }
+
+    private static boolean isSuccess(HttpResponse<?> response) {
+        return response.statusCode() / 100 == 2;
+    }
+}
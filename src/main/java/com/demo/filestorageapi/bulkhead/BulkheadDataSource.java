@@ -0,0 +1,83 @@
+package com.demo.filestorageapi.bulkhead;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Splits the connection pool between the request classes - a connection for a request is only taken from the pool
+ * once the {@link ConnectionBulkhead} of its class lets it, and is given back to it when closed. Transfers can keep
+ * a connection for as long as the client takes, so a burst of them can't take the connections the metadata
+ * requests need.
+ *
+ * Connections taken outside of requests, e.g. by the scheduled tasks, only wait for the pool
+ *
+ * @author Franklin Grassals
+ */
+public class BulkheadDataSource extends DelegatingDataSource {
+    private final Map<RequestClass, ConnectionBulkhead> bulkheads = new EnumMap<>(RequestClass.class);
+
+    public BulkheadDataSource(DataSource targetDataSource, List<ConnectionBulkhead> bulkheads) {
+        super(targetDataSource);
+        bulkheads.forEach(bulkhead -> this.bulkheads.put(bulkhead.getRequestClass(), bulkhead));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        var bulkhead = currentBulkhead();
+        if (bulkhead == null) {
+            return super.getConnection();
+        }
+        bulkhead.acquire();
+        try {
+            return releasingOnClose(super.getConnection(), bulkhead);
+        } catch (SQLException | RuntimeException e) {
+            bulkhead.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        var bulkhead = currentBulkhead();
+        if (bulkhead == null) {
+            return super.getConnection(username, password);
+        }
+        bulkhead.acquire();
+        try {
+            return releasingOnClose(super.getConnection(username, password), bulkhead);
+        } catch (SQLException | RuntimeException e) {
+            bulkhead.release();
+            throw e;
+        }
+    }
+
+    private ConnectionBulkhead currentBulkhead() {
+        return RequestClassHolder.get().map(bulkheads::get).orElse(null);
+    }
+
+    // the connection may be closed on another thread than the one that took it, e.g. after an async request
+    private static Connection releasingOnClose(Connection connection, ConnectionBulkhead bulkhead) {
+        var released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(BulkheadDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            bulkhead.release();
+                        }
+                    }
+                });
+    }
+}
@@ -0,0 +1,104 @@
+package com.demo.filestorageapi.bulkhead;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many database connections the requests of a class can hold at once. Once they hold all of them,
+ * their requests wait in line for one, up to a maximum wait
+ *
+ * @author Franklin Grassals
+ */
+public class ConnectionBulkhead implements MeterBinder {
+    private final RequestClass requestClass;
+    private final int maxConnections;
+    private final Duration maxWait;
+    private final Semaphore permits;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public ConnectionBulkhead(RequestClass requestClass, int maxConnections, Duration maxWait) {
+        this.requestClass = requestClass;
+        this.maxConnections = maxConnections;
+        this.maxWait = maxWait;
+        // connections are handed out in the order they were asked for
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    public RequestClass getRequestClass() {
+        return requestClass;
+    }
+
+    /**
+     * Takes one of the connections of the class, waiting for one to be released if needed
+     * @throws SQLTransientConnectionException if none was released within the maximum wait, like the pool does
+     * @throws SQLException if the thread was interrupted while waiting
+     */
+    public void acquire() throws SQLException {
+        var start = System.nanoTime();
+        if (!permits.tryAcquire()) {
+            pending.incrementAndGet();
+            try {
+                if (!permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS)) {
+                    timeouts.increment();
+                    throw new SQLTransientConnectionException(String.format(
+                            "No connection available for %s requests, they hold all %d of theirs. Waited %dms",
+                            requestClass.name().toLowerCase(), maxConnections, maxWait.toMillis()));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+        acquired.increment();
+        waitNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * Gives back a connection taken with {@link #acquire()}
+     */
+    public void release() {
+        permits.release();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        var tag = requestClass.name().toLowerCase();
+        Gauge.builder("storage.bulkhead.connections.active", this, b -> b.maxConnections - b.permits.availablePermits())
+                .description("Connections held by the requests of the class")
+                .tag("class", tag)
+                .register(registry);
+        Gauge.builder("storage.bulkhead.connections.pending", pending, AtomicInteger::get)
+                .description("Requests of the class waiting for a connection")
+                .tag("class", tag)
+                .register(registry);
+        Gauge.builder("storage.bulkhead.connections.max", this, b -> b.maxConnections)
+                .description("Connections the requests of the class can hold at once")
+                .tag("class", tag)
+                .register(registry);
+        FunctionTimer.builder("storage.bulkhead.connections.wait", this, b -> b.acquired.sum(),
+                b -> b.waitNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time the requests of the class waited for a connection")
+                .tag("class", tag)
+                .register(registry);
+        FunctionCounter.builder("storage.bulkhead.connections.timeout", timeouts, LongAdder::sum)
+                .description("Requests of the class that gave up waiting for a connection")
+                .tag("class", tag)
+                .register(registry);
+    }
+}
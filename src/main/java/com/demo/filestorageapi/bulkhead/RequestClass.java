@@ -0,0 +1,18 @@
+package com.demo.filestorageapi.bulkhead;
+
+/**
+ * The classes of requests kept apart by the bulkheads, so one can't use up the database connections the other needs
+ *
+ * @author Franklin Grassals
+ */
+public enum RequestClass {
+    /**
+     * Requests that read or change metadata, e.g. getting a file or listing versions. They are short
+     */
+    METADATA,
+    /**
+     * Requests that move file contents, e.g. uploads, downloads and exports, annotated with {@link Transfer}.
+     * They can take as long as the client needs
+     */
+    TRANSFER
+}
@@ -0,0 +1,31 @@
+package com.demo.filestorageapi.bulkhead;
+
+import java.util.Optional;
+
+/**
+ * Holds the class of the request handled by the current thread, for the {@link BulkheadDataSource}
+ *
+ * @author Franklin Grassals
+ */
+public final class RequestClassHolder {
+    private static final ThreadLocal<RequestClass> current = new ThreadLocal<>();
+
+    private RequestClassHolder() {
+    }
+
+    /**
+     * @return the class of the request handled by the current thread, empty outside of requests, e.g. on the
+     * scheduled tasks
+     */
+    public static Optional<RequestClass> get() {
+        return Optional.ofNullable(current.get());
+    }
+
+    public static void set(RequestClass requestClass) {
+        current.set(requestClass);
+    }
+
+    public static void clear() {
+        current.remove();
+    }
+}
@@ -0,0 +1,53 @@
+package com.demo.filestorageapi.bulkhead;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.Callable;
+
+/**
+ * Sets the class of the request on the threads handling it - the request thread, from the handler methods on, and
+ * the transfer threads running its async processing, which are always transfers
+ *
+ * @author Franklin Grassals
+ */
+public class RequestClassInterceptor implements AsyncHandlerInterceptor, CallableProcessingInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestClassHolder.set(classOf(handler));
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        RequestClassHolder.clear();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        RequestClassHolder.clear();
+    }
+
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        RequestClassHolder.set(RequestClass.TRANSFER);
+    }
+
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        RequestClassHolder.clear();
+    }
+
+    static RequestClass classOf(Object handler) {
+        return handler instanceof HandlerMethod && ((HandlerMethod) handler).hasMethodAnnotation(Transfer.class)
+                ? RequestClass.TRANSFER
+                : RequestClass.METADATA;
+    }
+}
@@ -0,0 +1,19 @@
+package com.demo.filestorageapi.bulkhead;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the handler methods that move file contents, their requests are in the {@link RequestClass#TRANSFER} class.
+ * Requests to the other handlers are in the {@link RequestClass#METADATA} class
+ *
+ * @author Franklin Grassals
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Transfer {
+}
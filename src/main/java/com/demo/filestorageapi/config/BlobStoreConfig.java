@@ -0,0 +1,31 @@
+package com.demo.filestorageapi.config;
+
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.FileSystemBlobStore;
+import com.demo.filestorageapi.core.storage.UploadStagingArea;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+/**
+ * Blob store configuration - defines where the content of the files, and of the uploads in progress, is stored
+ *
+ * @author Franklin Grassals
+ */
+@Configuration
+public class BlobStoreConfig {
+
+    @Bean
+    public BlobStore blobStore(@Value("${storage.filesystem.root-dir}") String rootDir, MeterRegistry meterRegistry) {
+        // the local filesystem is the only backend for now, other backends only need to implement BlobStore
+        return new FileSystemBlobStore(Path.of(rootDir), meterRegistry);
+    }
+
+    @Bean
+    public UploadStagingArea uploadStagingArea(@Value("${storage.upload.staging-dir}") String stagingDir) {
+        return new UploadStagingArea(Path.of(stagingDir));
+    }
+}
@@ -0,0 +1,70 @@
+package com.demo.filestorageapi.config;
+
+import com.demo.filestorageapi.bulkhead.BulkheadDataSource;
+import com.demo.filestorageapi.bulkhead.ConnectionBulkhead;
+import com.demo.filestorageapi.bulkhead.RequestClass;
+import com.demo.filestorageapi.bulkhead.RequestClassInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+/**
+ * Bulkhead configuration - metadata requests and transfers get their own share of the connection pool, so
+ * a burst of large uploads or downloads can't slow down listing and getting files. The connections each class
+ * holds, waits for and waited for are published as the storage.bulkhead.connections.* metrics
+ *
+ * @author Franklin Grassals
+ */
+@Configuration
+@ConditionalOnProperty(name = "storage.bulkhead.enabled", matchIfMissing = true)
+public class BulkheadConfig implements WebMvcConfigurer {
+    private final RequestClassInterceptor requestClassInterceptor = new RequestClassInterceptor();
+
+    @Bean
+    public static BeanPostProcessor bulkheadDataSourcePostProcessor(ObjectProvider<ConnectionBulkhead> bulkheads) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof BulkheadDataSource)) {
+                    return new BulkheadDataSource((DataSource) bean,
+                            bulkheads.orderedStream().collect(Collectors.toList()));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public ConnectionBulkhead metadataConnectionBulkhead(
+            @Value("${storage.bulkhead.metadata.max-connections:8}") int maxConnections,
+            @Value("${storage.bulkhead.metadata.max-wait:PT30S}") Duration maxWait) {
+        return new ConnectionBulkhead(RequestClass.METADATA, maxConnections, maxWait);
+    }
+
+    @Bean
+    public ConnectionBulkhead transferConnectionBulkhead(
+            @Value("${storage.bulkhead.transfer.max-connections:5}") int maxConnections,
+            @Value("${storage.bulkhead.transfer.max-wait:PT30S}") Duration maxWait) {
+        return new ConnectionBulkhead(RequestClass.TRANSFER, maxConnections, maxWait);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(requestClassInterceptor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(requestClassInterceptor);
+    }
+}
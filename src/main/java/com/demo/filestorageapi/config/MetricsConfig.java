@@ -0,0 +1,21 @@
+package com.demo.filestorageapi.config;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Metrics configuration - times the methods annotated with {@link io.micrometer.core.annotation.Timed},
+ * e.g. the storage operations
+ *
+ * @author Franklin Grassals
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+}
@@ -0,0 +1,16 @@
+package com.demo.filestorageapi.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Scheduling configuration - enables the background jobs, e.g. deleting expired upload sessions.
+ * They run on the scheduler spring boot configures, with a thread for each job (spring.task.scheduling.pool.size),
+ * since pruning and reclaiming pause between batches and would delay the other jobs on a single thread
+ *
+ * @author Franklin Grassals
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
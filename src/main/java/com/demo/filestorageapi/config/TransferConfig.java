@@ -0,0 +1,63 @@
+package com.demo.filestorageapi.config;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+/**
+ * Transfer configuration - download bodies and uploads streamed in the request body are transferred on their own
+ * threads with async request processing, so the request threads are released as soon as the headers are handled.
+ * A few hundred slow clients can't use up the request threads and starve the metadata requests.
+ *
+ * The transfer threads only wait for the clients' sockets, so there can be many more of them than request threads.
+ * Downloads sent with sendfile don't take a thread at all. The busy and queued transfers are published as the
+ * executor.* metrics with the tag name=transfer
+ *
+ * @author Franklin Grassals
+ */
+@Configuration
+public class TransferConfig implements WebMvcConfigurer {
+    private final int maxThreads;
+    private final Duration timeout;
+
+    @Autowired
+    public TransferConfig(@Value("${storage.transfer.max-threads:1000}") int maxThreads,
+                          @Value("${storage.transfer.timeout:PT1H}") Duration timeout) {
+        this.maxThreads = maxThreads;
+        this.timeout = timeout;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor transferExecutor() {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("transfer-");
+        executor.setCorePoolSize(maxThreads);
+        executor.setMaxPoolSize(maxThreads);
+        executor.setAllowCoreThreadTimeOut(true);
+        // once every thread is busy, transfers wait for one. The headers of a download are set before its body
+        // is submitted, so it couldn't be turned into an error response anymore
+        return executor;
+    }
+
+    @Bean
+    public MeterBinder transferExecutorMetrics(ThreadPoolTaskExecutor transferExecutor) {
+        return registry -> new ExecutorServiceMetrics(transferExecutor.getThreadPoolExecutor(), "transfer",
+                Tags.empty()).bindTo(registry);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(transferExecutor());
+        // a transfer to a slow client can take a while, but not forever
+        configurer.setDefaultTimeout(timeout.toMillis());
+    }
+}
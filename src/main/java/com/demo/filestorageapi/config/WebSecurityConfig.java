@@ -1,16 +1,23 @@
 package com.demo.filestorageapi.config;
 
 import com.demo.filestorageapi.core.dao.UserRepository;
+import com.demo.filestorageapi.security.BearerTokenAuthenticationFilter;
+import com.demo.filestorageapi.security.CachingAuthenticationProvider;
+import com.demo.filestorageapi.security.CredentialsCache;
+import com.demo.filestorageapi.security.TokenService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 /**
  * Spring security configuration
@@ -21,27 +28,40 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 @EnableWebSecurity
 public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
     private final UserRepository userRepository;
+    private final CredentialsCache credentialsCache;
+    private final TokenService tokenService;
 
     @Autowired
-    public WebSecurityConfig(UserRepository userRepository) {
+    public WebSecurityConfig(UserRepository userRepository, CredentialsCache credentialsCache, TokenService tokenService) {
         this.userRepository = userRepository;
+        this.credentialsCache = credentialsCache;
+        this.tokenService = tokenService;
     }
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
-        // all requests must be authenticated using basic authentication
+        // all requests must be authenticated using basic authentication or an access token,
+        // nothing is kept in the http session so any node can serve any request
         http.authorizeRequests()
                 .anyRequest().authenticated()
                 .and()
                 .csrf().disable()
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .and()
+                .addFilterBefore(new BearerTokenAuthenticationFilter(tokenService), BasicAuthenticationFilter.class)
                 .httpBasic();
     }
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
         // provides a way to get a user from the db to authenticate
-        auth.userDetailsService(username -> userRepository.findByUsername(username)
+        var daoAuthenticationProvider = new DaoAuthenticationProvider();
+        daoAuthenticationProvider.setUserDetailsService(username -> userRepository.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("Invalid credentials")));
+        daoAuthenticationProvider.setPasswordEncoder(passwordEncoder());
+
+        // bcrypt is slow on purpose, so credentials that were already verified are remembered for a while
+        auth.authenticationProvider(new CachingAuthenticationProvider(daoAuthenticationProvider, credentialsCache));
     }
 
     @Bean
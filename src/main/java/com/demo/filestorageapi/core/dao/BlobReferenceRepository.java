@@ -0,0 +1,61 @@
+package com.demo.filestorageapi.core.dao;
+
+import com.demo.filestorageapi.core.model.BlobReference;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Blob Reference Repository
+ *
+ * @author Franklin Grassals
+ */
+public interface BlobReferenceRepository extends JpaRepository<BlobReference, String> {
+    /**
+     * Adds a reference to a blob. The row stays locked until the transaction ends
+     *
+     * @param storageKey The key of the blob
+     * @return the number of updated rows, 0 if the blob has no references row yet
+     */
+    @Modifying
+    @Query("update BlobReference b set b.refCount = b.refCount + 1 where b.storageKey = :storageKey")
+    int incrementRefCount(@Param("storageKey") String storageKey);
+
+    /**
+     * Removes a reference from a blob. The row stays locked until the transaction ends
+     *
+     * @param storageKey The key of the blob
+     * @return the number of updated rows
+     */
+    @Modifying
+    @Query("update BlobReference b set b.refCount = b.refCount - 1 where b.storageKey = :storageKey and b.refCount > 0")
+    int decrementRefCount(@Param("storageKey") String storageKey);
+
+    /**
+     * Finds the references of a blob, locking the row until the transaction ends
+     *
+     * @param storageKey The key of the blob
+     * @return an {@link Optional} of {@link BlobReference}
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from BlobReference b where b.storageKey = :storageKey")
+    Optional<BlobReference> findForUpdate(@Param("storageKey") String storageKey);
+
+    /**
+     * Finds the keys of a batch of blobs left without references, e.g. because deleting them failed
+     *
+     * @param storageKey Only keys greater than this one are returned
+     * @param pageable The page to get
+     * @return List of keys ordered by key
+     */
+    @Query("select b.storageKey from BlobReference b where b.refCount <= 0 and b.storageKey > :storageKey " +
+            "order by b.storageKey asc")
+    List<String> findUnreferencedKeys(@Param("storageKey") String storageKey, Pageable pageable);
+}
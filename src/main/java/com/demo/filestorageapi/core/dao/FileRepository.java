@@ -3,8 +3,17 @@ package com.demo.filestorageapi.core.dao;
 import com.demo.filestorageapi.core.model.File;
 import com.demo.filestorageapi.core.model.FileVersion;
 import com.demo.filestorageapi.core.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -14,11 +23,99 @@ import java.util.Optional;
  */
 public interface FileRepository extends JpaRepository<File, Long> {
     /**
-     * Finds a {@link File} object matching the query
+     * Finds a {@link File} object matching the query, deleted files are never found
      *
      * @param id Id of the file
      * @param user The the user who owns the files
      * @return an {@link Optional} of {@link File}
      */
-    Optional<File> findByIdAndUser(Long id, User user);
+    @Query("select f from File f where f.id = :id and f.user = :user and f.deletedAt is null")
+    Optional<File> findByIdAndUser(@Param("id") Long id, @Param("user") User user);
+
+    /**
+     * Finds the {@link File} objects matching the query, deleted files are never found
+     *
+     * @param ids Ids of the files
+     * @param user The the user who owns the files
+     * @return List of {@link File} objects
+     */
+    @Query("select f from File f where f.id in :ids and f.user = :user and f.deletedAt is null")
+    List<File> findAllByIdInAndUser(@Param("ids") Collection<Long> ids, @Param("user") User user);
+
+    /**
+     * Tombstones files, so they are no longer found. Their versions are deleted later by the reclaimer
+     *
+     * @param ids Ids of the files
+     * @param deletedAt The date of the deletion
+     * @return the number of files tombstoned, files that were already deleted aren't counted
+     */
+    @Modifying
+    @Query("update File f set f.deletedAt = :deletedAt where f.id in :ids and f.deletedAt is null")
+    int markDeleted(@Param("ids") Collection<Long> ids, @Param("deletedAt") LocalDateTime deletedAt);
+
+    /**
+     * Finds the ids of a batch of tombstoned files
+     *
+     * @param id Only files with an id greater than this one are returned
+     * @param pageable The page to get
+     * @return List of file ids ordered by id
+     */
+    @Query("select f.id from File f where f.deletedAt is not null and f.id > :id order by f.id asc")
+    List<Long> findDeletedIds(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Finds a file that wasn't deleted, locking its row until the transaction ends
+     *
+     * @param id Id of the file
+     * @return an {@link Optional} of {@link File}
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from File f where f.id = :id and f.deletedAt is null")
+    Optional<File> findByIdForUpdate(@Param("id") Long id);
+
+    /**
+     * Finds the ids of a batch of files with a retention policy, their own or their user's
+     *
+     * @param id Only files with an id greater than this one are returned
+     * @param pageable The page to get
+     * @return List of file ids ordered by id
+     */
+    @Query("select f.id from File f join f.user u where f.deletedAt is null and f.id > :id " +
+            "and (f.retentionPolicy.maxVersions is not null or f.retentionPolicy.maxAgeDays is not null " +
+            "or u.retentionPolicy.maxVersions is not null or u.retentionPolicy.maxAgeDays is not null) " +
+            "order by f.id asc")
+    List<Long> findIdsWithRetentionPolicy(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Finds a tombstoned file, locking its row until the transaction ends
+     *
+     * @param id Id of the file
+     * @return an {@link Optional} of {@link File}, empty if the file isn't tombstoned
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from File f where f.id = :id and f.deletedAt is not null")
+    Optional<File> findTombstoneForUpdate(@Param("id") Long id);
+
+    /**
+     * Deletes a tombstoned file with a single statement, once its versions are gone
+     *
+     * @param id Id of the file
+     * @return the number of files deleted, 0 if the file isn't tombstoned
+     */
+    @Modifying
+    @Query("delete from File f where f.id = :id and f.deletedAt is not null")
+    int deleteTombstone(@Param("id") Long id);
+
+    /**
+     * Makes a version the current version of its file, unless a newer version already is.
+     * Versions are compared by id, so concurrent updates always leave the newest one as current
+     *
+     * @param fileId Id of the file
+     * @param version The new version of the file
+     * @return the number of files updated, 0 if a newer version is already the current one
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("update File f set f.currentVersion = :version where f.id = :fileId " +
+            "and (f.currentVersion is null or f.currentVersion.id < :#{#version.id})")
+    int updateCurrentVersion(@Param("fileId") Long fileId, @Param("version") FileVersion version);
 }
@@ -2,9 +2,18 @@ package com.demo.filestorageapi.core.dao;
 
 import com.demo.filestorageapi.core.model.FileVersion;
 import com.demo.filestorageapi.core.model.User;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -15,21 +24,157 @@ import java.util.UUID;
  */
 public interface FileVersionRepository extends JpaRepository<FileVersion, Long> {
     /**
-     * Finds a list of versions matching the query
+     * Finds a list of versions matching the query, the versions of deleted files are never found
      *
      * @param fileId Id of the file that owns the versions
      * @param user The the user who owns the files
-     * @return List of {@link FileVersion} objects
+     * @return List of {@link FileVersion} objects, with their file fetched in the same query
      */
-    List<FileVersion> findAllByFileIdAndFileUserOrderByCreatedAtDesc(Long fileId, User user);
+    @EntityGraph(attributePaths = "file")
+    @Query("select v from FileVersion v where v.file.id = :fileId and v.file.user = :user " +
+            "and v.file.deletedAt is null order by v.createdAt desc")
+    List<FileVersion> findAllByFileIdAndFileUserOrderByCreatedAtDesc(@Param("fileId") Long fileId,
+                                                                     @Param("user") User user);
 
     /**
-     * Finds a file version matching the query
+     * Finds a file version matching the query, the versions of deleted files are never found
      *
      * @param uuid UUID of the file version
      * @param fileId Id of the file that owns the version
      * @param user The the user who owns the files
-     * @return an {@link Optional} of {@link FileVersion}
+     * @return an {@link Optional} of {@link FileVersion}, with its file fetched in the same query
      */
-    Optional<FileVersion> findByUuidAndFileIdAndFileUser(UUID uuid, Long fileId, User user);
+    @EntityGraph(attributePaths = "file")
+    @Query("select v from FileVersion v where v.uuid = :uuid and v.file.id = :fileId and v.file.user = :user " +
+            "and v.file.deletedAt is null")
+    Optional<FileVersion> findByUuidAndFileIdAndFileUser(@Param("uuid") UUID uuid,
+                                                         @Param("fileId") Long fileId,
+                                                         @Param("user") User user);
+
+    /**
+     * Finds a range of the content of a version that is still stored inline in the database. Only the range is
+     * sent by the database, the MySQL driver would otherwise read the whole blob into memory to cut the range from it
+     *
+     * @param uuid UUID of the file version
+     * @param position Position of the first byte of the range, starting at 1
+     * @param length Number of bytes in the range, fewer are found past the end of the content
+     * @return an {@link Optional} of the range, empty if the version has no content
+     */
+    default Optional<byte[]> findContentRangeByUuid(UUID uuid, long position, int length) {
+        return findContentRangesByUuid(uuid.toString(), position, length).stream()
+                .filter(Objects::nonNull)
+                .findFirst();
+    }
+
+    // the range is selected in a list, spring would convert a single byte array result to a list of its bytes
+    @Query(value = "select substring(content, :position, :length) from file_versions where uuid = :uuid",
+            nativeQuery = true)
+    List<byte[]> findContentRangesByUuid(@Param("uuid") String uuid,
+                                         @Param("position") long position,
+                                         @Param("length") int length);
+
+    /**
+     * Finds a page of versions whose content is still stored inline in the database
+     *
+     * @param id Only versions with an id greater than this one are returned
+     * @param pageable The page to get
+     * @return List of {@link FileVersion} objects ordered by id
+     */
+    List<FileVersion> findAllByStorageKeyIsNullAndIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
+    /**
+     * Finds the ids of a batch of versions of a file
+     *
+     * @param fileId Id of the file that owns the versions
+     * @param pageable The page to get
+     * @return List of version ids ordered by id
+     */
+    @Query("select v.id from FileVersion v where v.file.id = :fileId order by v.id asc")
+    List<Long> findIdsByFileId(@Param("fileId") Long fileId, Pageable pageable);
+
+    /**
+     * Finds the blob store keys of the given versions, without loading the versions
+     *
+     * @param ids Ids of the versions
+     * @return List of keys, a key appears once per version using it
+     */
+    @Query("select v.storageKey from FileVersion v where v.id in :ids and v.storageKey is not null")
+    List<String> findStorageKeysByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Finds the keys of the snapshots the given versions are deltas from, without loading the versions
+     *
+     * @param ids Ids of the versions
+     * @return List of keys, a key appears once per version using it
+     */
+    @Query("select v.deltaBaseKey from FileVersion v where v.id in :ids and v.deltaBaseKey is not null")
+    List<String> findDeltaBaseKeysByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Finds all the blobs the given versions hold a reference to, their own content and the snapshots of deltas
+     *
+     * @param ids Ids of the versions
+     * @return List of keys, a key appears once per reference
+     */
+    default List<String> findBlobKeysByIdIn(Collection<Long> ids) {
+        var keys = new ArrayList<>(findStorageKeysByIdIn(ids));
+        keys.addAll(findDeltaBaseKeysByIdIn(ids));
+        return keys;
+    }
+
+    /**
+     * Finds the key of the newest full snapshot of a file, the one new deltas are taken from
+     *
+     * @param fileId Id of the file
+     * @return an {@link Optional} of the key, empty if the current version is stored inline or compressed
+     */
+    @Query("select coalesce(v.deltaBaseKey, v.storageKey) from File f join f.currentVersion v " +
+            "where f.id = :fileId and v.contentEncoding is null")
+    Optional<String> findSnapshotKeyByFileId(@Param("fileId") Long fileId);
+
+    /**
+     * Deletes the given versions with a single statement
+     *
+     * @param ids Ids of the versions
+     * @return the number of versions deleted
+     */
+    @Modifying
+    @Query("delete from FileVersion v where v.id in :ids")
+    int deleteInBulkByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Finds the ids of the versions of a file from the newest to the oldest, e.g. the page 9 of size 1
+     * has the id of the 10th newest version
+     *
+     * @param fileId Id of the file that owns the versions
+     * @param pageable The page to get
+     * @return List of version ids ordered by id, descending
+     */
+    @Query("select v.id from FileVersion v where v.file.id = :fileId order by v.id desc")
+    List<Long> findNewestIdsByFileId(@Param("fileId") Long fileId, Pageable pageable);
+
+    /**
+     * Finds the ids of a batch of versions a retention policy prunes. The current version of the file is never found
+     *
+     * @param fileId Id of the file that owns the versions
+     * @param minId Versions with a lower id are found
+     * @param minCreatedAt Versions created before this date are found
+     * @param pageable The page to get
+     * @return List of version ids ordered by id
+     */
+    @Query("select v.id from FileVersion v where v.file.id = :fileId and v.id <> v.file.currentVersion.id " +
+            "and (v.id < :minId or v.createdAt < :minCreatedAt) order by v.id asc")
+    List<Long> findPrunableIds(@Param("fileId") Long fileId,
+                               @Param("minId") Long minId,
+                               @Param("minCreatedAt") LocalDateTime minCreatedAt,
+                               Pageable pageable);
+
+    /**
+     * Adds up the sizes of the given versions
+     *
+     * @param ids Ids of the versions
+     * @return the total size in bytes
+     */
+    @Query("select coalesce(sum(v.size), 0) from FileVersion v where v.id in :ids")
+    long sumSizeByIdIn(@Param("ids") Collection<Long> ids);
 }
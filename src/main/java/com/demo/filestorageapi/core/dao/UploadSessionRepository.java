@@ -0,0 +1,34 @@
+package com.demo.filestorageapi.core.dao;
+
+import com.demo.filestorageapi.core.model.UploadSession;
+import com.demo.filestorageapi.core.model.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Upload Session Repository
+ *
+ * @author Franklin Grassals
+ */
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+    /**
+     * Finds an upload session matching the query
+     *
+     * @param id Id of the upload session
+     * @param user The user who started the upload
+     * @return an {@link Optional} of {@link UploadSession}
+     */
+    Optional<UploadSession> findByIdAndUser(UUID id, User user);
+
+    /**
+     * Finds the upload sessions that expired
+     *
+     * @param dateTime The current date
+     * @return List of {@link UploadSession} objects
+     */
+    List<UploadSession> findAllByExpiresAtBefore(LocalDateTime dateTime);
+}
@@ -1,10 +1,16 @@
 package com.demo.filestorageapi.core.dao;
 
 import com.demo.filestorageapi.core.model.UserFile;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * User File Repository
@@ -13,27 +19,56 @@ import java.util.Optional;
  */
 public interface UserFileRepository extends JpaRepository<UserFile, Long> {
     /**
-     * Gets a list of {@link UserFile} objects matching the query
+     * Gets a page of {@link UserFile} objects with the current version of each file. The page starts after
+     * the given filename and id, so the (user_id, filename) index is scanned from there instead of
+     * sorting and skipping all the files before it
      *
      * @param userId The id of the user who owns the files
-     * @param rank The rank of the files go get.
-     *            A rank of 1 will only get the newest version of the given file.
-     *            A rank of 2 will be the second newest version of a given file, and so on.
+     * @param filenamePattern Like pattern the filenames must match, with "!" as escape character, e.g. "docs/%"
+     * @param contentType Content type of the files, or null for any
+     * @param afterFilename Only files after this filename are returned, "" to start from the first
+     * @param afterId Only files with this filename and a greater id are returned, 0 to start from the first
+     * @param pageable The size of the page, the page number is ignored
+     * @return A list of {@link UserFile} ordered by filename and id
+     */
+    @Query("select f from UserFile f where f.userId = :userId and f.filename like :filenamePattern escape '!' " +
+            "and (:contentType is null or f.contentType = :contentType) " +
+            "and f.filename >= :afterFilename and (f.filename > :afterFilename or f.id > :afterId) " +
+            "order by f.filename asc, f.id asc")
+    List<UserFile> findPage(@Param("userId") Long userId,
+                            @Param("filenamePattern") String filenamePattern,
+                            @Param("contentType") String contentType,
+                            @Param("afterFilename") String afterFilename,
+                            @Param("afterId") Long afterId,
+                            Pageable pageable);
+
+    /**
+     * Streams all the {@link UserFile} objects of a user with the current version of each file. Rows are fetched
+     * from the db in batches while the stream is consumed, instead of loading them all at once. The stream must
+     * be consumed inside a transaction and closed
      *
-     * @return A list of {@link UserFile} matching the query
+     * @param userId The id of the user who owns the files
+     * @param filenamePattern Like pattern the filenames must match, with "!" as escape character
+     * @param contentType Content type of the files, or null for any
+     * @return A stream of {@link UserFile} ordered by filename and id
      */
-    List<UserFile> findAllByUserIdAndRankOrderByFilenameAsc(Long userId, int rank);
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select f from UserFile f where f.userId = :userId and f.filename like :filenamePattern escape '!' " +
+            "and (:contentType is null or f.contentType = :contentType) " +
+            "order by f.filename asc, f.id asc")
+    Stream<UserFile> streamAll(@Param("userId") Long userId,
+                               @Param("filenamePattern") String filenamePattern,
+                               @Param("contentType") String contentType);
 
     /**
-     * Gets a {@link UserFile} object matching the query
+     * Gets a {@link UserFile} object with the current version of the file
      *
-     * @param id The id of the fie
+     * @param id The id of the file
      * @param userId The id of the user who owns the file
-     * @param rank The rank of the files go get.
-     *            A rank of 1 will only get the newest version of the given file.
-     *            A rank of 2 will be the second newest version of a given file, and so on.
-     *
      * @return An {@link Optional} with {@link UserFile} matching the query
      */
-    Optional<UserFile> findByIdAndUserIdAndRank(Long id, Long userId, int rank);
+    Optional<UserFile> findByIdAndUserId(Long id, Long userId);
 }
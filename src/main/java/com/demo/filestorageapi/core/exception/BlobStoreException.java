@@ -0,0 +1,16 @@
+package com.demo.filestorageapi.core.exception;
+
+/**
+ * Blob store exception - thrown when file content can't be written to or read from the blob store
+ *
+ * @author Franklin Grassals
+ */
+public class BlobStoreException extends RuntimeException {
+    public BlobStoreException(String message) {
+        super(message);
+    }
+
+    public BlobStoreException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
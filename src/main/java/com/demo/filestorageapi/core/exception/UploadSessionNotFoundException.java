@@ -0,0 +1,15 @@
+package com.demo.filestorageapi.core.exception;
+
+import java.util.UUID;
+
+/**
+ * Upload session not found exception - thrown when an upload session can't be found in the data store,
+ * either because it never existed or because it was committed or expired
+ *
+ * @author Franklin Grassals
+ */
+public class UploadSessionNotFoundException extends RuntimeException {
+    public UploadSessionNotFoundException(UUID id) {
+        super(String.format("Upload '%s' not found", id));
+    }
+}
@@ -0,0 +1,90 @@
+package com.demo.filestorageapi.core.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * BlobReference entity - Counts the file versions that share a piece of content in the blob store.
+ *
+ * Identical content uploaded by any user is stored only once, the blob is deleted when its count drops to zero
+ *
+ * @author Franklin Grassals
+ */
+@Entity
+@Table(name = "blob_references")
+public class BlobReference {
+    @Id
+    @Column(name = "storage_key")
+    private String storageKey;
+
+    private long size; // size in bytes
+
+    @Column(name = "ref_count")
+    private int refCount;
+
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public BlobReference() {
+    }
+
+    /**
+     * Creates an instance with a single reference
+     * @param storageKey The key of the content in the blob store
+     * @param size Content's size in bytes
+     */
+    public BlobReference(String storageKey, long size) {
+        this.storageKey = storageKey;
+        this.size = size;
+        this.refCount = 1;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BlobReference that = (BlobReference) o;
+        return Objects.equals(storageKey, that.storageKey);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(storageKey);
+    }
+}
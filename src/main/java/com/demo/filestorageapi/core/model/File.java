@@ -1,15 +1,24 @@
 package com.demo.filestorageapi.core.model;
 
+import org.hibernate.annotations.LazyToOne;
+import org.hibernate.annotations.LazyToOneOption;
+
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Objects;
 
@@ -30,13 +39,33 @@ public class File {
     @Column(name = "content_type")
     private String contentType;
 
-
-    @OneToMany(mappedBy = "file", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    // versions are only loaded when needed, a file can have thousands of them. They are persisted with a new file,
+    // and deleted with a bulk statement instead of one by one
+    @OneToMany(mappedBy = "file", cascade = CascadeType.PERSIST)
     private List<FileVersion> versions;
 
+    // the newest version, kept up to date on every upload so it's found without scanning all the versions.
+    // The class is enhanced, so without NO_PROXY hibernate would load it with the file
+    @OneToOne(fetch = FetchType.LAZY)
+    @LazyToOne(LazyToOneOption.NO_PROXY)
+    @JoinColumn(name = "current_version_id")
+    private FileVersion currentVersion;
+
     @ManyToOne
     private User user;
 
+    // deleted files are tombstoned and hidden right away, their versions are removed later in the background
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    // replaces the retention policy of the user for this file
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "maxVersions", column = @Column(name = "retention_max_versions")),
+            @AttributeOverride(name = "maxAgeDays", column = @Column(name = "retention_max_age_days"))
+    })
+    private RetentionPolicy retentionPolicy;
+
     public File() {
     }
 
@@ -78,6 +107,14 @@ public class File {
         this.versions = versions;
     }
 
+    public FileVersion getCurrentVersion() {
+        return currentVersion;
+    }
+
+    public void setCurrentVersion(FileVersion currentVersion) {
+        this.currentVersion = currentVersion;
+    }
+
     public User getUser() {
         return user;
     }
@@ -86,6 +123,22 @@ public class File {
         this.user = user;
     }
 
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -22,13 +22,34 @@ public class FileVersion {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // content stored in the database by older versions of the api, new versions use the blob store
     // marking this field lazy allows us to fetch the potentially heavy blob only when needed
     @Lob
     @Basic(fetch = FetchType.LAZY)
     private Blob content;
 
+    // key of the content in the blob store, null when the content is stored inline
+    @Column(name = "storage_key")
+    private String storageKey;
+
+    // key of the full snapshot in the blob store when the content is stored as a delta from it, null otherwise
+    @Column(name = "delta_base_key")
+    private String deltaBaseKey;
+
     private long size; // size in bytes
 
+    // encoding the content is stored with, e.g. "gzip", null when stored as uploaded
+    @Column(name = "content_encoding")
+    private String contentEncoding;
+
+    // size in bytes of the content as stored, null when stored as uploaded
+    @Column(name = "encoded_size")
+    private Long encodedSize;
+
+    // hex encoded SHA-256 digest of the content, null for inline content that hasn't been migrated
+    @Column(name = "content_hash")
+    private String contentHash;
+
     @Column(updatable = false)
     @Type(type = "uuid-char") // to store as string and not binary
     private UUID uuid;
@@ -44,7 +65,24 @@ public class FileVersion {
     }
 
     /**
-     * Creates an instance using an InputStream pointing to the file content
+     * Creates an instance whose content lives in the blob store
+     * @param storageKey The key of the content in the blob store
+     * @param size File content's size in bytes
+     * @param contentHash Hex encoded SHA-256 digest of the content
+     * @param file the File instance this object will be associated with
+     */
+    public FileVersion(String storageKey, long size, String contentHash, File file) {
+        // generate the uuid first
+        this();
+
+        this.storageKey = storageKey;
+        this.size = size;
+        this.contentHash = contentHash;
+        this.file = file;
+    }
+
+    /**
+     * Creates an instance with inline content, using an InputStream pointing to the file content
      * @param contentStream The input stream pointing to the contents of the file
      * @param size File content's size in bytes
      * @param file the File instance this object will be associated with
@@ -75,6 +113,38 @@ public class FileVersion {
         this.content = content;
     }
 
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
+    }
+
+    public String getDeltaBaseKey() {
+        return deltaBaseKey;
+    }
+
+    public void setDeltaBaseKey(String deltaBaseKey) {
+        this.deltaBaseKey = deltaBaseKey;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public Long getEncodedSize() {
+        return encodedSize;
+    }
+
+    public void setEncodedSize(Long encodedSize) {
+        this.encodedSize = encodedSize;
+    }
+
     public long getSize() {
         return size;
     }
@@ -83,6 +153,14 @@ public class FileVersion {
         this.size = size;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public UUID getUuid() {
         return uuid;
     }
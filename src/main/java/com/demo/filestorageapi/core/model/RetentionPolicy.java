@@ -0,0 +1,62 @@
+package com.demo.filestorageapi.core.model;
+
+import javax.persistence.Embeddable;
+import java.util.Objects;
+
+/**
+ * Retention policy - Limits the versions kept of a file. Older versions that break any of the limits
+ * are pruned in the background, the current version of a file is always kept.
+ *
+ * A policy can be set for a user, applying to all their files, or for a single file, replacing the user's
+ *
+ * @author Franklin Grassals
+ */
+@Embeddable
+public class RetentionPolicy {
+    private Integer maxVersions; // the number of newest versions kept, or null for no limit
+    private Integer maxAgeDays; // versions older than this many days are pruned, or null for no limit
+
+    public RetentionPolicy() {
+    }
+
+    public RetentionPolicy(Integer maxVersions, Integer maxAgeDays) {
+        this.maxVersions = maxVersions;
+        this.maxAgeDays = maxAgeDays;
+    }
+
+    public Integer getMaxVersions() {
+        return maxVersions;
+    }
+
+    public void setMaxVersions(Integer maxVersions) {
+        this.maxVersions = maxVersions;
+    }
+
+    public Integer getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    public void setMaxAgeDays(Integer maxAgeDays) {
+        this.maxAgeDays = maxAgeDays;
+    }
+
+    /**
+     * @return true if the policy has no limits, hibernate loads a policy without limits as null
+     */
+    public boolean isEmpty() {
+        return maxVersions == null && maxAgeDays == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RetentionPolicy that = (RetentionPolicy) o;
+        return Objects.equals(maxVersions, that.maxVersions) && Objects.equals(maxAgeDays, that.maxAgeDays);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxVersions, maxAgeDays);
+    }
+}
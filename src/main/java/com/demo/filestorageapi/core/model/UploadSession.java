@@ -0,0 +1,139 @@
+package com.demo.filestorageapi.core.model;
+
+import org.hibernate.annotations.Type;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * UploadSession entity - Represents a file being uploaded in chunks, which becomes a new file,
+ * or a new version of an existing one, once it's committed
+ *
+ * @author Franklin Grassals
+ */
+@Entity
+@Table(name = "upload_sessions")
+public class UploadSession {
+    @Id
+    @Type(type = "uuid-char") // to store as string and not binary
+    private UUID id;
+
+    private String filename;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    private long size; // expected size of the whole file in bytes
+
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @ManyToOne
+    private User user;
+
+    // the file that gets a new version, null if the upload creates a new file
+    @ManyToOne
+    private File file;
+
+    public UploadSession() {
+        this.id = UUID.randomUUID();
+    }
+
+    public UploadSession(String filename, String contentType, long size, User user, File file, LocalDateTime expiresAt) {
+        // generate the id first
+        this();
+
+        this.filename = filename;
+        this.contentType = contentType;
+        this.size = size;
+        this.user = user;
+        this.file = file;
+        this.expiresAt = expiresAt;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UploadSession that = (UploadSession) o;
+        return Objects.equals(id, that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
@@ -1,5 +1,6 @@
 package com.demo.filestorageapi.core.model;
 
+import com.demo.filestorageapi.security.CredentialsCacheEvictionListener;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -19,6 +20,7 @@ import java.util.Objects;
  */
 @Entity
 @Table(name = "users")
+@EntityListeners(CredentialsCacheEvictionListener.class)
 public class User implements UserDetails {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -30,6 +32,14 @@ public class User implements UserDetails {
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL)
     private List<File> files;
 
+    // applies to the files of the user without a policy of their own
+    @Embedded
+    @AttributeOverrides({
+            @AttributeOverride(name = "maxVersions", column = @Column(name = "retention_max_versions")),
+            @AttributeOverride(name = "maxAgeDays", column = @Column(name = "retention_max_age_days"))
+    })
+    private RetentionPolicy retentionPolicy;
+
     public User() {}
 
     public User(Long id, String username, String password) {
@@ -70,6 +80,14 @@ public class User implements UserDetails {
         this.files = files;
     }
 
+    public RetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+    }
+
     @Override
     public boolean isAccountNonExpired() {
         return true;
@@ -1,10 +1,10 @@
 package com.demo.filestorageapi.core.model;
 
 import org.hibernate.annotations.Immutable;
+import org.hibernate.annotations.Synchronize;
 import org.hibernate.annotations.Type;
 
 import javax.persistence.Basic;
-import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
@@ -16,13 +16,15 @@ import java.util.Objects;
 import java.util.UUID;
 
 /**
- * User file - Represents a file with version information
+ * User file - Represents a file with the information of its current version
  *
  * @author Franklin Grassals
  */
 @Entity
 @Immutable
 @Table(name = "user_files_view")
+// pending changes to these tables are flushed before the view is queried
+@Synchronize({"files", "file_versions"})
 public class UserFile {
     @Id
     private Long id;
@@ -34,12 +36,15 @@ public class UserFile {
     @Lob
     @Basic(fetch = FetchType.LAZY)
     private Blob content;
+    private String storageKey;
+    private String deltaBaseKey;
+    private String contentEncoding;
+    private Long encodedSize;
+    private String contentHash;
     private Long sizeInBytes;
     private LocalDateTime createdAt;
     private LocalDateTime lastModifiedAt;
     private Long userId;
-    @Column(name = "date_created_rank")
-    private int rank;
 
     public Long getId() {
         return id;
@@ -81,6 +86,46 @@ public class UserFile {
         this.content = content;
     }
 
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
+    }
+
+    public String getDeltaBaseKey() {
+        return deltaBaseKey;
+    }
+
+    public void setDeltaBaseKey(String deltaBaseKey) {
+        this.deltaBaseKey = deltaBaseKey;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public void setContentEncoding(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public Long getEncodedSize() {
+        return encodedSize;
+    }
+
+    public void setEncodedSize(Long encodedSize) {
+        this.encodedSize = encodedSize;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public Long getSizeInBytes() {
         return sizeInBytes;
     }
@@ -113,14 +158,6 @@ public class UserFile {
         this.userId = userId;
     }
 
-    public int getRank() {
-        return rank;
-    }
-
-    public void setRank(int rank) {
-        this.rank = rank;
-    }
-
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
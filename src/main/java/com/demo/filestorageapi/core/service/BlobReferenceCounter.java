@@ -0,0 +1,168 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.BlobReferenceRepository;
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import com.demo.filestorageapi.core.model.BlobReference;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Blob reference counter - keeps track of how many file versions point to each blob, so identical content
+ * is stored once and only deleted from the blob store when the last version using it goes away.
+ *
+ * The references row of a blob is locked while a reference is added or the blob is deleted, so an upload of the same
+ * content can't end up pointing to a blob that is being deleted
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class BlobReferenceCounter {
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final BlobReferenceRepository blobReferenceRepository;
+    private final BlobStore blobStore;
+    private final TransactionTemplate transactionTemplate;
+    // blobs are deleted after the transaction that released them commits, so they need a transaction of their own
+    private final TransactionTemplate newTransactionTemplate;
+
+    @Autowired
+    public BlobReferenceCounter(BlobReferenceRepository blobReferenceRepository,
+                                BlobStore blobStore,
+                                TransactionTemplate transactionTemplate) {
+        this.blobReferenceRepository = blobReferenceRepository;
+        this.blobStore = blobStore;
+        this.transactionTemplate = transactionTemplate;
+        this.newTransactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Adds a reference to a blob that was just written to the blob store
+     *
+     * @param blob The stored blob
+     * @return true if other file versions already referenced the blob
+     */
+    public boolean retain(StoredBlob blob) {
+        Boolean shared;
+        try {
+            shared = transactionTemplate.execute(status -> increment(blob));
+        } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+            // the same content was uploaded at the same time and its row was inserted first, it can be updated now.
+            // Databases that lock the gap where the row is missing, like MySQL, fail one of the inserts with a deadlock
+            // instead of a duplicate key
+            shared = transactionTemplate.execute(status -> increment(blob));
+        }
+        return Boolean.TRUE.equals(shared);
+    }
+
+    /**
+     * Adds a reference to a blob that other file versions already reference, e.g. the base of a delta
+     *
+     * @param storageKey The key of the blob
+     * @throws BlobStoreException if the blob has no references left, and may be deleted already
+     */
+    public void retainExisting(String storageKey) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (blobReferenceRepository.incrementRefCount(storageKey) == 0) {
+                throw new BlobStoreException(String.format("Blob '%s' is not referenced", storageKey));
+            }
+            if (!blobStore.exists(storageKey)) {
+                throw new BlobStoreException(String.format("Blob '%s' was deleted", storageKey));
+            }
+        });
+    }
+
+    /**
+     * Removes a reference for each of the given keys, a key can be given more than once. The blobs left
+     * without references are deleted once the current transaction commits, or right away if there is no transaction
+     *
+     * @param storageKeys The keys of the blobs
+     */
+    public void release(Collection<String> storageKeys) {
+        if (storageKeys.isEmpty()) {
+            return;
+        }
+        // sorted so concurrent releases lock the rows in the same order
+        var keys = storageKeys.stream().sorted().collect(Collectors.toList());
+        var distinctKeys = new TreeSet<>(keys);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            keys.forEach(blobReferenceRepository::decrementRefCount);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    distinctKeys.forEach(BlobReferenceCounter.this::reclaim);
+                }
+            });
+        } else {
+            transactionTemplate.executeWithoutResult(status -> keys.forEach(blobReferenceRepository::decrementRefCount));
+            distinctKeys.forEach(this::reclaim);
+        }
+    }
+
+    /**
+     * Deletes a blob from the blob store if no file version references it
+     *
+     * @param storageKey The key of the blob
+     */
+    public void reclaim(String storageKey) {
+        try {
+            newTransactionTemplate.executeWithoutResult(status -> blobReferenceRepository.findForUpdate(storageKey)
+                    .filter(reference -> reference.getRefCount() <= 0)
+                    .ifPresent(reference -> {
+                        blobStore.delete(storageKey);
+                        blobReferenceRepository.delete(reference);
+                    }));
+        } catch (RuntimeException e) {
+            // the row is kept with no references, so the blob can be deleted later
+            logger.warn(String.format("Could not delete blob '%s'", storageKey), e);
+        }
+    }
+
+    /**
+     * Deletes the blobs left without references, e.g. because the blob store failed when they were released
+     *
+     * @param batchSize The number of keys read at a time
+     */
+    public void reclaimUnreferenced(int batchSize) {
+        var after = "";
+        while (true) {
+            var keys = blobReferenceRepository.findUnreferencedKeys(after, PageRequest.of(0, batchSize));
+            keys.forEach(this::reclaim);
+            if (keys.size() < batchSize) {
+                return;
+            }
+            // blobs that still can't be deleted are skipped, so they are not read again
+            after = keys.get(keys.size() - 1);
+        }
+    }
+
+    // returns true if the blob was already referenced
+    private boolean increment(StoredBlob blob) {
+        var shared = blobReferenceRepository.incrementRefCount(blob.getKey()) > 0;
+        if (!shared) {
+            blobReferenceRepository.saveAndFlush(new BlobReference(blob.getKey(), blob.getSize()));
+        }
+        // the row is locked now, if the blob was deleted by a concurrent release it won't be deleted again
+        if (!blobStore.exists(blob.getKey())) {
+            throw new BlobStoreException(
+                    String.format("Blob '%s' was deleted while it was being stored, please try again", blob.getKey()));
+        }
+        return shared;
+    }
+}
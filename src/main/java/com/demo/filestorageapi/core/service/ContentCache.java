@@ -0,0 +1,124 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import com.demo.filestorageapi.core.storage.ByteBufferInputStream;
+import com.demo.filestorageapi.core.storage.DeferredInputStream;
+import com.demo.filestorageapi.core.storage.FileContent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.function.Supplier;
+
+/**
+ * Content cache - keeps the contents of small files that are downloaded often in memory, so they are served
+ * without reading the blob store.
+ *
+ * File versions never change, so contents are keyed by version UUID and never go stale. They are held in direct
+ * buffers, outside of the heap, and the cache is bounded by the total size of the contents it holds. Caffeine
+ * evicts with W-TinyLFU, so a burst of downloads of different files doesn't push out the ones downloaded all the time
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class ContentCache {
+    private final Cache<String, ByteBuffer> cache;
+    private final boolean enabled;
+    private final long maxFileSize;
+
+    @Autowired
+    public ContentCache(@Value("${storage.content-cache.enabled:true}") boolean enabled,
+                        @Value("${storage.content-cache.max-size:64MB}") DataSize maxSize,
+                        @Value("${storage.content-cache.max-file-size:256KB}") DataSize maxFileSize,
+                        MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxFileSize = Math.min(maxFileSize.toBytes(), Integer.MAX_VALUE);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String key, ByteBuffer content) -> content.capacity())
+                .recordStats()
+                .build();
+        // hits, misses and evictions are published as the cache.* metrics with the tag cache=file-contents
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "file-contents");
+        // pending writes are applied before the size is read, so the gauge doesn't lag behind the cache
+        Gauge.builder("storage.content-cache.size", this, ContentCache::size)
+                .description("Size of the file contents held in memory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.content-cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Fraction of the small file downloads served from memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Makes a content be read through the cache, if it's small enough. The content is only loaded when it's
+     * read, so conditional requests that don't need it don't fill the cache
+     *
+     * @param content The content, as read from the blob store
+     * @return the content read through the cache, or the same content if it isn't cached
+     */
+    public FileContent cached(FileContent content) {
+        if (!enabled || content.getSize() > maxFileSize) {
+            return content;
+        }
+
+        var key = content.getVersion().toString();
+        // the content is served from memory, so it's never handed to sendfile
+        var encoded = content.getEncoded()
+                .map(e -> new FileContent.Encoded(e.getEncoding(), e.getSize(), null,
+                        source(key + "/" + e.getEncoding(), e::open, e.getSize())))
+                .orElse(null);
+        return new FileContent(content.getFilename(), content.getContentType(), content.getVersion(),
+                content.getContentHash(), content.getSize(), content.getLastModifiedAt(), null,
+                source(key, content::open, content.getSize()), encoded);
+    }
+
+    long size() {
+        cache.cleanUp();
+        return weightedSize();
+    }
+
+    // the total size of the contents held, in bytes
+    private long weightedSize() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    // a content that isn't cached yet is only loaded when it's first read, on the thread that sends it, not on the one
+    // that opens it
+    private FileContent.Source source(String key, Supplier<InputStream> loader, long size) {
+        return (offset, length) -> new DeferredInputStream(() -> {
+            var buffer = cache.get(key, k -> load(loader, size)).duplicate();
+            buffer.position((int) Math.min(offset, buffer.limit()));
+            buffer.limit((int) Math.min(offset + length, buffer.limit()));
+            return new ByteBufferInputStream(buffer);
+        });
+    }
+
+    // reads the whole content into a direct buffer, without copying it through the heap
+    private ByteBuffer load(Supplier<InputStream> loader, long size) {
+        var buffer = ByteBuffer.allocateDirect((int) size);
+        try (var channel = Channels.newChannel(loader.get())) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new BlobStoreException(String.format("The content ended after %d of %d bytes",
+                            buffer.position(), size));
+                }
+            }
+            return buffer.flip().asReadOnlyBuffer();
+        } catch (IOException e) {
+            throw new BlobStoreException("An error occurred while reading the content to cache", e);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.ContentDigests;
+import com.demo.filestorageapi.core.storage.EncodedBlob;
+import com.demo.filestorageapi.core.storage.GzipCompressingInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.DigestInputStream;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+/**
+ * Content compressor - stores uploads gzip compressed when that saves space.
+ *
+ * Content types that are compressed already (images, video, archives...) are stored as uploaded. For the rest,
+ * the first bytes of the upload are compressed as a sample, and the upload is only compressed if the sample shrinks
+ * enough. The content is compressed while it streams to the blob store, it's never held in memory
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class ContentCompressor {
+    public static final String GZIP = "gzip";
+
+    private final BlobStore blobStore;
+
+    @Value("${storage.compression.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.compression.level:6}")
+    private int level;
+
+    @Value("${storage.compression.sample-size:64KB}")
+    private DataSize sampleSize;
+
+    // smaller uploads are stored as uploaded, the gzip header and trailer would eat most of the savings
+    @Value("${storage.compression.min-size:1KB}")
+    private DataSize minSize;
+
+    // an upload is only compressed when its sample shrinks to at most this fraction of its size
+    @Value("${storage.compression.max-ratio:0.8}")
+    private double maxRatio;
+
+    @Value("${storage.compression.excluded-types:image/*,video/*,audio/*,application/zip,application/gzip,"
+            + "application/x-gzip,application/x-bzip2,application/x-xz,application/x-7z-compressed,"
+            + "application/x-rar-compressed,application/zstd,application/pdf}")
+    private List<String> excludedTypes;
+
+    private List<MimeType> excludedMimeTypes;
+
+    @Autowired
+    public ContentCompressor(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Stores content in the blob store, compressed if it's worth it
+     *
+     * @param stream The input stream pointing to the content to store. It is read until the end but not closed
+     * @param contentType The content type of the content, may be null
+     * @return an {@link EncodedBlob} describing the stored blob and the original content
+     * @throws BlobStoreException if the content couldn't be stored
+     */
+    public EncodedBlob put(InputStream stream, String contentType) {
+        if (!enabled || isExcluded(contentType)) {
+            return EncodedBlob.identity(blobStore.put(stream));
+        }
+
+        byte[] sample;
+        try {
+            sample = stream.readNBytes((int) sampleSize.toBytes());
+        } catch (IOException e) {
+            throw new BlobStoreException("An error occurred while reading the content", e);
+        }
+        var content = new SequenceInputStream(new ByteArrayInputStream(sample), stream);
+        if (sample.length < minSize.toBytes() || compressedSize(sample) > sample.length * maxRatio) {
+            return EncodedBlob.identity(blobStore.put(content));
+        }
+
+        var digest = ContentDigests.sha256();
+        var counter = new CountingInputStream(new DigestInputStream(content, digest));
+        try (var compressed = new GzipCompressingInputStream(counter, level)) {
+            var blob = blobStore.put(compressed);
+            return new EncodedBlob(blob, GZIP, counter.count, ContentDigests.toHex(digest.digest()));
+        } catch (IOException e) {
+            throw new BlobStoreException("An error occurred while compressing the content", e);
+        }
+    }
+
+    // checks the content type against the excluded types, parameters like the charset are ignored
+    private boolean isExcluded(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            var mimeType = MimeTypeUtils.parseMimeType(contentType);
+            return getExcludedMimeTypes().stream().anyMatch(excluded -> excluded.includes(mimeType));
+        } catch (InvalidMimeTypeException e) {
+            return false;
+        }
+    }
+
+    private List<MimeType> getExcludedMimeTypes() {
+        if (excludedMimeTypes == null) {
+            excludedMimeTypes = excludedTypes.stream()
+                    .map(String::trim)
+                    .map(MimeTypeUtils::parseMimeType)
+                    .collect(Collectors.toList());
+        }
+        return excludedMimeTypes;
+    }
+
+    private int compressedSize(byte[] sample) {
+        var deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            var buf = new byte[8192];
+            var size = 0;
+            while (!deflater.finished()) {
+                size += deflater.deflate(buf);
+            }
+            return size;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // counts the bytes read, which is the size of the original content once it's been read to the end
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            var read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() {
+            // the stream belongs to the caller, only the compressor is released
+        }
+    }
+}
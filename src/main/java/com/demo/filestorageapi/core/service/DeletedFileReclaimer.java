@@ -0,0 +1,128 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileRepository;
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+/**
+ * Deleted file reclaimer - removes the files that were tombstoned by a delete, along with their versions.
+ *
+ * Versions are deleted in small batches, each one in its own transaction, with a pause between batches,
+ * so deleting a file with thousands of versions never holds locks for long or floods the database.
+ * The references to the contents of the versions are released with each batch, and the contents are deleted
+ * from the blob store once no other version uses them
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class DeletedFileReclaimer {
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final BlobReferenceCounter blobReferenceCounter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.reclaim.batch-size:500}")
+    private int batchSize;
+
+    // pause between batches, so the reclaimer leaves room for the requests
+    @Value("${storage.reclaim.batch-delay:PT0.1S}")
+    private Duration batchDelay;
+
+    @Autowired
+    public DeletedFileReclaimer(FileRepository fileRepository,
+                                FileVersionRepository fileVersionRepository,
+                                BlobReferenceCounter blobReferenceCounter,
+                                TransactionTemplate transactionTemplate) {
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.blobReferenceCounter = blobReferenceCounter;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.reclaim.interval:PT1M}")
+    public void reclaimScheduled() {
+        var reclaimed = reclaim();
+        if (reclaimed > 0) {
+            logger.info(String.format("Reclaimed the storage of %d deleted files", reclaimed));
+        }
+    }
+
+    /**
+     * Removes all the tombstoned files, then deletes the blobs that were left without references
+     *
+     * @return the number of files removed
+     */
+    public int reclaim() {
+        var reclaimed = 0;
+        var lastId = 0L;
+        try {
+            while (true) {
+                var fileIds = fileRepository.findDeletedIds(lastId, PageRequest.of(0, batchSize));
+                for (Long fileId : fileIds) {
+                    if (reclaimFile(fileId)) {
+                        reclaimed++;
+                    }
+                }
+                if (fileIds.size() < batchSize) {
+                    break;
+                }
+                // files that couldn't be removed are skipped, so they are not read again until the next run
+                lastId = fileIds.get(fileIds.size() - 1);
+            }
+        } catch (InterruptedException e) {
+            // the application is shutting down, the rest is reclaimed on the next run
+            Thread.currentThread().interrupt();
+            return reclaimed;
+        }
+
+        blobReferenceCounter.reclaimUnreferenced(batchSize);
+        return reclaimed;
+    }
+
+    // deletes the versions of a file one batch at a time, then the file itself
+    private boolean reclaimFile(Long fileId) throws InterruptedException {
+        try {
+            while (true) {
+                var deleted = transactionTemplate.execute(status -> deleteVersions(fileId));
+                if (deleted == null || deleted < batchSize) {
+                    break;
+                }
+                Thread.sleep(batchDelay.toMillis());
+            }
+            transactionTemplate.executeWithoutResult(status -> fileRepository.deleteTombstone(fileId));
+            return true;
+        } catch (RuntimeException e) {
+            // e.g. a version was added while the file was being removed, it's tried again on the next run
+            logger.warn(String.format("Could not reclaim deleted file %d", fileId), e);
+            return false;
+        }
+    }
+
+    // deletes a batch of versions and releases their references, the blobs are deleted when the transaction commits
+    private int deleteVersions(Long fileId) {
+        // the file stays locked until the batch commits, so another node can't release the same references twice
+        if (fileRepository.findTombstoneForUpdate(fileId).isEmpty()) {
+            return 0;
+        }
+        var versionIds = fileVersionRepository.findIdsByFileId(fileId, PageRequest.of(0, batchSize));
+        if (versionIds.isEmpty()) {
+            return 0;
+        }
+        // one reference is released per version, and one more for the snapshot of each delta
+        var storageKeys = fileVersionRepository.findBlobKeysByIdIn(versionIds);
+        fileVersionRepository.deleteInBulkByIdIn(versionIds);
+        blobReferenceCounter.release(storageKeys);
+        return versionIds.size();
+    }
+}
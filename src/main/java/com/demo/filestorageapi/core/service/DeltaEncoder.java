@@ -0,0 +1,131 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import com.demo.filestorageapi.core.storage.BinaryDelta;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.ContentDigests;
+import com.demo.filestorageapi.core.storage.DeltaInputStream;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.util.Optional;
+
+/**
+ * Delta encoder - stores new versions of large files as binary deltas from an earlier version.
+ *
+ * Deltas are always taken from a full snapshot, the newest version of the file stored whole, so rebuilding
+ * any version reads at most a delta and its snapshot. A version is stored whole, becoming the new snapshot,
+ * when its delta isn't much smaller than the version itself, e.g. after many edits.
+ *
+ * Every delta is decoded and checked against the digest of the version before it's stored
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class DeltaEncoder {
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final BlobStore blobStore;
+
+    @Value("${storage.delta.enabled:true}")
+    private boolean enabled;
+
+    // smaller files are stored whole, their deltas wouldn't save much
+    @Value("${storage.delta.min-size:1MB}")
+    private DataSize minSize;
+
+    // larger files are stored whole, so uploads don't wait for them to be encoded
+    @Value("${storage.delta.max-size:1GB}")
+    private DataSize maxSize;
+
+    // a delta is only kept when it's at most this fraction of the size of the version
+    @Value("${storage.delta.max-ratio:0.5}")
+    private double maxRatio;
+
+    @Autowired
+    public DeltaEncoder(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Checks whether content of a given size may be stored as a delta
+     *
+     * @param size Size of the content in bytes
+     * @return true if it's worth trying
+     */
+    public boolean accepts(long size) {
+        return enabled && size >= minSize.toBytes() && size <= maxSize.toBytes();
+    }
+
+    /**
+     * Encodes a blob as a delta from another one, and stores the delta in the blob store
+     *
+     * @param baseKey The key of the full snapshot the delta is taken from
+     * @param target The blob to encode
+     * @return the stored delta, or {@literal Optional#empty()} if the blob should be stored whole
+     */
+    public Optional<StoredBlob> encode(String baseKey, StoredBlob target) {
+        Path tmpFile = null;
+        try {
+            tmpFile = Files.createTempFile("delta-", ".tmp");
+            long deltaSize;
+            try (var base = blobStore.get(baseKey);
+                 var content = blobStore.get(target.getKey());
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+                deltaSize = BinaryDelta.encode(base, content, target.getSize(), out,
+                        (long) (target.getSize() * maxRatio));
+            }
+            if (deltaSize < 0 || !rebuildsTo(tmpFile, baseKey, target.getSha256())) {
+                return Optional.empty();
+            }
+
+            try (var delta = Files.newInputStream(tmpFile)) {
+                return Optional.of(blobStore.put(delta));
+            }
+        } catch (IOException | BlobStoreException e) {
+            // the version is stored whole instead
+            logger.warn(String.format("Could not encode blob '%s' as a delta from '%s'", target.getKey(), baseKey), e);
+            return Optional.empty();
+        } finally {
+            deleteQuietly(tmpFile);
+        }
+    }
+
+    // decodes the delta and compares the digest of the result with the digest of the version
+    private boolean rebuildsTo(Path deltaFile, String baseKey, String sha256) throws IOException {
+        var digest = ContentDigests.sha256();
+        try (var in = new DigestInputStream(new DeltaInputStream(Files.newInputStream(deltaFile),
+                (offset, length) -> blobStore.get(baseKey, offset, length)), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+
+        var rebuilt = ContentDigests.toHex(digest.digest());
+        if (!rebuilt.equals(sha256)) {
+            logger.warn(String.format("The delta from '%s' rebuilt '%s' instead of '%s'", baseKey, rebuilt, sha256));
+            return false;
+        }
+        return true;
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // it's in the system's temp dir, which is cleaned up eventually
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.exception.InvalidArgumentException;
+import com.demo.filestorageapi.core.model.UserFile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Position in the list of files of a user, which is ordered by filename and id. A page of files starts
+ * right after the cursor, so it is found with an index range scan instead of skipping the previous pages.
+ *
+ * Clients get it as an opaque string, e.g. "MTI6dGVzdC50eHQ" for the file "test.txt" with id 12
+ *
+ * @author Franklin Grassals
+ */
+public class FileCursor {
+    private final String filename;
+    private final Long id;
+
+    public FileCursor(String filename, Long id) {
+        this.filename = filename;
+        this.id = id;
+    }
+
+    /**
+     * @param file The last file of a page
+     * @return the cursor pointing right after the file
+     */
+    public static FileCursor after(UserFile file) {
+        return new FileCursor(file.getFilename(), file.getId());
+    }
+
+    /**
+     * @param value A cursor encoded with {@link #encode()}
+     * @return the decoded cursor
+     * @throws InvalidArgumentException if the value isn't a valid cursor
+     */
+    public static FileCursor decode(String value) {
+        try {
+            var decoded = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            // the id goes first, filenames may contain the separator
+            var separator = decoded.indexOf(':');
+            return new FileCursor(decoded.substring(separator + 1), Long.valueOf(decoded.substring(0, separator)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidArgumentException(String.format("Invalid cursor '%s'", value));
+        }
+    }
+
+    /**
+     * @return the cursor as an url safe string
+     */
+    public String encode() {
+        var value = id + ":" + filename;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FileCursor that = (FileCursor) o;
+        return filename.equals(that.filename) &&
+                id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(filename, id);
+    }
+}
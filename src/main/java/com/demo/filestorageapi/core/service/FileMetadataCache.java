@@ -0,0 +1,242 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.UserFile;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * File metadata cache - keeps the files and versions that are looked up often in memory, so they are found
+ * without querying the database. It never holds file contents.
+ *
+ * Metadata only changes through the {@link FileStorageService} and the {@link RetentionService}, which evict the
+ * files they change once their transaction commits. Files, version lists and versions are all kept under the id of
+ * their file and loaded atomically per file id, so a lookup that read the database before the change can't put
+ * a stale entry back after the eviction. Entries also expire after a while, which bounds how long a change made
+ * outside the api goes unnoticed.
+ *
+ * Versions whose content is stored inline aren't cached, their content is loaded lazily from the row
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class FileMetadataCache {
+    private final Cache<Long, UserFile> files;
+    private final Cache<Long, List<FileVersion>> versionLists;
+    // the versions looked up one at a time, by file id and then UUID
+    private final Cache<Long, Map<UUID, FileVersion>> versions;
+    private final boolean enabled;
+
+    @Autowired
+    public FileMetadataCache(@Value("${storage.metadata-cache.enabled:true}") boolean enabled,
+                             @Value("${storage.metadata-cache.max-size:10000}") long maxSize,
+                             @Value("${storage.metadata-cache.ttl:PT10M}") Duration ttl,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.files = build(maxSize, ttl);
+        this.versionLists = build(maxSize, ttl);
+        this.versions = Caffeine.newBuilder()
+                .maximumWeight(maxSize)
+                .<Long, Map<UUID, FileVersion>>weigher((fileId, versionsOfFile) -> versionsOfFile.size())
+                .expireAfter(expireAfterCreate(ttl))
+                .recordStats()
+                .build();
+        // hits, misses and evictions are published as the cache.* metrics with these cache tags
+        CaffeineCacheMetrics.monitor(meterRegistry, files, "files");
+        CaffeineCacheMetrics.monitor(meterRegistry, versionLists, "file-version-lists");
+        CaffeineCacheMetrics.monitor(meterRegistry, versions, "file-versions");
+    }
+
+    /**
+     * Gets a file through the cache
+     *
+     * @param fileId Id of the file
+     * @param userId Id of the user who owns the file
+     * @param loader Loads the file of the user from the database
+     * @return the file, or {@literal Optional#empty()} if the user has no such file
+     */
+    public Optional<UserFile> getFile(Long fileId, Long userId, Supplier<Optional<UserFile>> loader) {
+        if (!enabled || fileId == null) {
+            return loader.get();
+        }
+        return get(files, fileId, loader, file -> file.getStorageKey() != null)
+                .filter(file -> file.getUserId().equals(userId));
+    }
+
+    /**
+     * Gets the versions of a file through the cache
+     *
+     * @param fileId Id of the file
+     * @param userId Id of the user who owns the file
+     * @param loader Loads the versions of the file of the user from the database
+     * @return the versions, or an empty list if the user has no such file
+     */
+    public List<FileVersion> getVersions(Long fileId, Long userId, Supplier<List<FileVersion>> loader) {
+        if (!enabled || fileId == null) {
+            return loader.get();
+        }
+        // a file always has a version, so an empty list means there's no such file and is never cached
+        return get(versionLists, fileId, () -> Optional.of(loader.get()).filter(list -> !list.isEmpty()),
+                list -> list.stream().allMatch(version -> version.getStorageKey() != null))
+                .filter(list -> isOwnedBy(list.get(0), fileId, userId))
+                .map(Collections::unmodifiableList)
+                .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Gets a file version through the cache
+     *
+     * @param uuid UUID of the version
+     * @param fileId Id of the file that owns the version
+     * @param userId Id of the user who owns the file
+     * @param loader Loads the version of the file of the user from the database
+     * @return the version, or {@literal Optional#empty()} if the user has no such version
+     */
+    public Optional<FileVersion> getVersion(UUID uuid, Long fileId, Long userId,
+                                            Supplier<Optional<FileVersion>> loader) {
+        if (!enabled || uuid == null || fileId == null) {
+            return loader.get();
+        }
+        var cached = versions.getIfPresent(fileId);
+        if (cached != null && cached.containsKey(uuid)) {
+            return Optional.of(cached.get(uuid)).filter(version -> isOwnedBy(version, fileId, userId));
+        }
+        // the version is loaded while the entry of its file is locked, like the files and version lists are
+        var loaded = new AtomicReference<Optional<FileVersion>>(Optional.empty());
+        versions.asMap().compute(fileId, (id, versionsOfFile) -> {
+            if (versionsOfFile != null && versionsOfFile.containsKey(uuid)) {
+                loaded.set(Optional.of(versionsOfFile.get(uuid)));
+                return versionsOfFile;
+            }
+            var result = loader.get();
+            loaded.set(result);
+            var version = result
+                    .filter(v -> v.getStorageKey() != null && v.getFile().getId().equals(fileId))
+                    .orElse(null);
+            if (version == null) {
+                return versionsOfFile;
+            }
+            var updated = versionsOfFile != null
+                    ? new HashMap<>(versionsOfFile)
+                    : new HashMap<UUID, FileVersion>();
+            updated.put(uuid, version);
+            return Collections.unmodifiableMap(updated);
+        });
+        return loaded.get().filter(version -> isOwnedBy(version, fileId, userId));
+    }
+
+    /**
+     * Forgets a file and its versions once the current transaction commits, or right away if there is
+     * no transaction
+     *
+     * @param fileId Id of the file
+     */
+    public void evict(Long fileId) {
+        evict(Collections.singletonList(fileId));
+    }
+
+    /**
+     * Forgets many files and their versions, like {@link #evict(Long)} does with one
+     *
+     * @param fileIds Ids of the files
+     */
+    public void evict(Collection<Long> fileIds) {
+        if (!enabled || fileIds.isEmpty()) {
+            return;
+        }
+        var ids = new TreeSet<>(fileIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // evicting before the commit would let a lookup load the old metadata again meanwhile
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(ids);
+                }
+            });
+        } else {
+            evictNow(ids);
+        }
+    }
+
+    long size() {
+        files.cleanUp();
+        versionLists.cleanUp();
+        versions.cleanUp();
+        return files.estimatedSize() + versionLists.estimatedSize()
+                + versions.asMap().values().stream().mapToInt(Map::size).sum();
+    }
+
+    private void evictNow(Set<Long> fileIds) {
+        files.invalidateAll(fileIds);
+        versionLists.invalidateAll(fileIds);
+        versions.invalidateAll(fileIds);
+    }
+
+    // loads a value through the cache, values that can't be cached are returned without being kept
+    private static <K, V> Optional<V> get(Cache<K, V> cache, K key, Supplier<Optional<V>> loader,
+                                          Predicate<V> cacheable) {
+        var loaded = new AtomicReference<Optional<V>>(Optional.empty());
+        var value = cache.get(key, k -> {
+            var result = loader.get();
+            loaded.set(result);
+            return result.filter(cacheable).orElse(null);
+        });
+        return value != null ? Optional.of(value) : loaded.get();
+    }
+
+    // the file of a version and its owner are loaded with it, so they are available without a session
+    private static boolean isOwnedBy(FileVersion version, Long fileId, Long userId) {
+        var file = version.getFile();
+        return file.getId().equals(fileId) && file.getUser().getId().equals(userId);
+    }
+
+    // adding a version to the entry of a file doesn't keep the versions already in it for longer
+    private static <K, V> Expiry<K, V> expireAfterCreate(Duration ttl) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(K key, V value, long currentTime) {
+                return ttl.toNanos();
+            }
+
+            @Override
+            public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+
+            @Override
+            public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    private static <K, V> Cache<K, V> build(long maxSize, Duration ttl) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+}
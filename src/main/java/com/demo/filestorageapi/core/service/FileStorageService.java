@@ -8,46 +8,117 @@ import com.demo.filestorageapi.core.model.File;
 import com.demo.filestorageapi.core.model.FileVersion;
 import com.demo.filestorageapi.core.model.User;
 import com.demo.filestorageapi.core.model.UserFile;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.DeferredInputStream;
+import com.demo.filestorageapi.core.storage.DeltaInputStream;
+import com.demo.filestorageapi.core.storage.EncodedBlob;
+import com.demo.filestorageapi.core.storage.FileContent;
+import com.demo.filestorageapi.core.storage.LimitedInputStream;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 /**
- * File Storage Service - handles all the file storage operations
+ * File Storage Service - handles all the file storage operations. Every operation is timed in the
+ * {@code storage.operations} metric, tagged with the method and the exception thrown, if any
  *
  * @author Franklin Grassals
  */
 @Service
 public class FileStorageService {
+    private static final String OPERATIONS_TIMER = "storage.operations";
+    // inline content up to this size is copied out of the database in memory, larger content to a temporary file
+    // in chunks of this size
+    private static final long MAX_INLINE_COPY_IN_MEMORY = 1024 * 1024;
+
     private final FileRepository fileRepository;
     private final FileVersionRepository fileVersionRepository;
     private final UserFileRepository userFileRepository;
+    private final BlobStore blobStore;
+    private final BlobReferenceCounter blobReferenceCounter;
+    private final DeltaEncoder deltaEncoder;
+    private final ContentCompressor contentCompressor;
+    private final ContentCache contentCache;
+    private final FileMetadataCache metadataCache;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final DistributionSummary uploadSize;
+
+    @Value("${storage.listing.max-page-size:1000}")
+    private int maxPageSize;
+
+    @Value("${storage.delete.max-batch-size:1000}")
+    private int maxDeleteBatchSize;
 
     @Autowired
     public FileStorageService(FileRepository fileRepository,
                               FileVersionRepository fileVersionRepository,
-                              UserFileRepository userFileRepository) {
+                              UserFileRepository userFileRepository,
+                              BlobStore blobStore,
+                              BlobReferenceCounter blobReferenceCounter,
+                              DeltaEncoder deltaEncoder,
+                              ContentCompressor contentCompressor,
+                              ContentCache contentCache,
+                              FileMetadataCache metadataCache,
+                              TransactionTemplate transactionTemplate,
+                              EntityManager entityManager,
+                              MeterRegistry meterRegistry) {
         this.fileRepository = fileRepository;
         this.fileVersionRepository = fileVersionRepository;
         this.userFileRepository = userFileRepository;
+        this.blobStore = blobStore;
+        this.blobReferenceCounter = blobReferenceCounter;
+        this.deltaEncoder = deltaEncoder;
+        this.contentCompressor = contentCompressor;
+        this.contentCache = contentCache;
+        this.metadataCache = metadataCache;
+        this.transactionTemplate = transactionTemplate;
+        this.entityManager = entityManager;
+        this.uploadSize = DistributionSummary.builder("storage.upload.size")
+                .description("Size of the uploaded contents, before they are compressed")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
 
     /**
-     * Stores a file in the database
+     * Stores a file. The content goes to the blob store and the metadata to the database.
+     * Content that is already stored, by this or any other user, is not stored again.
+     * Content that compresses well is stored compressed, see {@link ContentCompressor}
      *
      * @param filename Filename of the file to store
      * @param stream The input stream pointing to the contents of the file
-     * @param size File content's size in bytes
+     * @param size File content's size in bytes as reported by the client. The stored size is the number of bytes read
      * @param contentType Content type of the file
      * @param user The owner of the file
      * @return The created {@link File}
      */
+    @Timed(OPERATIONS_TIMER)
     public File storeFile(String filename, InputStream stream, long size, String contentType, User user) {
         if (StringUtils.isEmpty(filename)) {
             throw new InvalidArgumentException("The filename cannot be empty");
@@ -56,26 +127,37 @@ public class FileStorageService {
             throw new InvalidArgumentException("The user cannot be null");
         }
 
+        var encoded = putContent(stream, contentType);
+        var blob = encoded.getBlob();
+        blobReferenceCounter.retain(blob);
         try {
             var file = new File(filename, getContentTypeOrDefault(contentType), user);
-            file.setVersions(Collections.singletonList(new FileVersion(stream, size, file)));
+            var version = buildVersion(encoded, file);
+            file.setVersions(Collections.singletonList(version));
+            file.setCurrentVersion(version);
 
             return fileRepository.save(file);
         } catch (DataIntegrityViolationException e) {
+            blobReferenceCounter.release(Collections.singletonList(blob.getKey()));
             throw new FileAlreadyExistsException(String.format("The filename '%s' already exists", filename));
+        } catch (RuntimeException e) {
+            blobReferenceCounter.release(Collections.singletonList(blob.getKey()));
+            throw e;
         }
     }
 
     /**
-     * Updates a file, adding a version
+     * Updates a file, adding a version. New versions of large files are stored as deltas from an earlier
+     * version when that saves space, see {@link DeltaEncoder}
      *
      * @param fileId Id of the file to be updated
      * @param user The owner of the file
      * @param stream The input stream pointing to the contents of the file
-     * @param size File content's size in bytes
+     * @param size File content's size in bytes as reported by the client. The stored size is the number of bytes read
      * @param contentType The content type of the file
      * @return The updated {@link File}
      */
+    @Timed(OPERATIONS_TIMER)
     public File updateFile(Long fileId, User user, InputStream stream, long size, String contentType) {
         var file = fileRepository
                 .findByIdAndUser(fileId, user)
@@ -88,81 +170,386 @@ public class FileStorageService {
             );
         }
 
-        fileVersionRepository.save(new FileVersion(stream, size, file));
+        var encoded = putContent(stream, contentType);
+        var blob = encoded.getBlob();
+        var shared = blobReferenceCounter.retain(blob);
+        var version = buildVersion(encoded, file);
+        try {
+            // content other versions already use costs nothing, a delta of it would only take more space.
+            // Compressed content is small already, and deltas of it would find nothing in common
+            if (!shared && !encoded.isEncoded()) {
+                encodeAsDelta(file.getId(), blob, version);
+            }
+            // the blob is already stored, so the transaction only lasts for the two statements
+            transactionTemplate.executeWithoutResult(status -> {
+                var saved = fileVersionRepository.save(version);
+                fileRepository.updateCurrentVersion(file.getId(), saved);
+            });
+            metadataCache.evict(file.getId());
+        } catch (RuntimeException e) {
+            var keys = new ArrayList<>(Collections.singletonList(blob.getKey()));
+            if (version.getDeltaBaseKey() != null) {
+                keys.add(version.getStorageKey());
+                keys.add(version.getDeltaBaseKey());
+            }
+            blobReferenceCounter.release(keys);
+            throw e;
+        }
 
+        // the version only references the delta and its snapshot, the full content isn't needed anymore
+        if (version.getDeltaBaseKey() != null) {
+            blobReferenceCounter.release(Collections.singletonList(blob.getKey()));
+        }
         return file;
     }
 
+    // streams an upload to the blob store, its size is recorded as uploaded
+    private EncodedBlob putContent(InputStream stream, String contentType) {
+        var encoded = contentCompressor.put(stream, contentType);
+        uploadSize.record(encoded.getSize());
+        return encoded;
+    }
+
+    private FileVersion buildVersion(EncodedBlob encoded, File file) {
+        var blob = encoded.getBlob();
+        var version = new FileVersion(blob.getKey(), encoded.getSize(), encoded.getSha256(), file);
+        if (encoded.isEncoded()) {
+            version.setContentEncoding(encoded.getContentEncoding());
+            version.setEncodedSize(blob.getSize());
+        }
+        return version;
+    }
+
+    // stores the content of the version as a delta from the newest snapshot of the file, if it's worth it
+    private void encodeAsDelta(Long fileId, StoredBlob blob, FileVersion version) {
+        if (!deltaEncoder.accepts(blob.getSize())) {
+            return;
+        }
+        var baseKey = fileVersionRepository.findSnapshotKeyByFileId(fileId).orElse(null);
+        if (baseKey == null || baseKey.equals(blob.getKey())) {
+            return;
+        }
+
+        deltaEncoder.encode(baseKey, blob).ifPresent(delta -> {
+            blobReferenceCounter.retain(delta);
+            try {
+                blobReferenceCounter.retainExisting(baseKey);
+            } catch (RuntimeException e) {
+                // the snapshot went away meanwhile, e.g. its versions were pruned, so the version is stored whole
+                blobReferenceCounter.release(Collections.singletonList(delta.getKey()));
+                return;
+            }
+            version.setStorageKey(delta.getKey());
+            version.setDeltaBaseKey(baseKey);
+        });
+    }
+
     /**
-     * Deletes a file
+     * Deletes a file. The file is tombstoned and disappears right away, its versions and their contents
+     * are deleted later in the background by the {@link DeletedFileReclaimer}
      *
      * @param fileId Id of the file to be deleted
      * @param user The owner of the file
      * @return The deleted {@link File}
      */
+    @Timed(OPERATIONS_TIMER)
+    @Transactional
     public File deleteFile(Long fileId, User user) {
         var file = fileRepository
                 .findByIdAndUser(fileId, user)
                 .orElseThrow(() -> new FileNotFoundException(fileId));
 
-        fileRepository.delete(file);
-
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+        metadataCache.evict(file.getId());
         return file;
     }
 
     /**
-     * Gets a list of files containing only the newest version information ordered by filename
+     * Deletes many files at once, like {@link #deleteFile(Long, User)} does with one
+     *
+     * @param fileIds Ids of the files to be deleted
+     * @param user The owner of the files
+     * @return The deleted {@link File} objects, ids that don't match a file of the user are skipped
+     */
+    @Timed(OPERATIONS_TIMER)
+    @Transactional
+    public List<File> deleteFiles(Collection<Long> fileIds, User user) {
+        if (fileIds == null || fileIds.isEmpty() || fileIds.size() > maxDeleteBatchSize) {
+            throw new InvalidArgumentException(
+                    String.format("Between 1 and %d files can be deleted at once", maxDeleteBatchSize));
+        }
+
+        var files = fileRepository.findAllByIdInAndUser(fileIds, user);
+        if (!files.isEmpty()) {
+            var ids = files.stream().map(File::getId).collect(Collectors.toList());
+            fileRepository.markDeleted(ids, LocalDateTime.now());
+            metadataCache.evict(ids);
+        }
+        return files;
+    }
+
+    /**
+     * Gets a page of files containing only the newest version information ordered by filename
      *
      * @param user The user who owns the files
+     * @param filenamePrefix Only files whose filename starts with it are returned, or null for all
+     * @param contentType Only files with this content type are returned, or null for all
+     * @param after The page starts after this cursor, or null for the first page
+     * @param limit The maximum number of files to return
      * @return List of {@link UserFile} objects
      */
-    public List<UserFile> getFiles(User user) {
-        return userFileRepository.findAllByUserIdAndRankOrderByFilenameAsc(getIdOrZero(user), 1);
+    @Timed(OPERATIONS_TIMER)
+    public List<UserFile> getFiles(User user, String filenamePrefix, String contentType, FileCursor after, int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidArgumentException(String.format("The limit must be between 1 and %d", maxPageSize));
+        }
+
+        var start = after != null ? after : new FileCursor("", 0L);
+        return userFileRepository.findPage(getIdOrZero(user), toFilenamePattern(filenamePrefix),
+                getContentTypeOrNull(contentType), start.getFilename(), start.getId(), PageRequest.of(0, limit));
+    }
+
+    /**
+     * Goes through all the files of a user ordered by filename, without loading them all in memory.
+     * The files are read from the db while the action runs, so it should be quick, e.g. writing the file
+     * to a response
+     *
+     * @param user The user who owns the files
+     * @param filenamePrefix Only files whose filename starts with it are given, or null for all
+     * @param contentType Only files with this content type are given, or null for all
+     * @param action The action to run for each {@link UserFile}
+     */
+    @Timed(OPERATIONS_TIMER)
+    @Transactional(readOnly = true)
+    public void forEachFile(User user, String filenamePrefix, String contentType, Consumer<UserFile> action) {
+        try (var files = userFileRepository.streamAll(getIdOrZero(user), toFilenamePattern(filenamePrefix),
+                getContentTypeOrNull(contentType))) {
+            files.forEach(file -> {
+                action.accept(file);
+                // otherwise the persistence context would keep every file read
+                entityManager.detach(file);
+            });
+        }
     }
 
     /**
-     * Gets a file containing only the newest version information
+     * Gets a file containing only the newest version information. It's read through the {@link FileMetadataCache}
      *
      * @param fileId Id of the file
      * @param user The user who owns the file
      * @return {@link UserFile} object
      */
+    @Timed(OPERATIONS_TIMER)
     public UserFile getFile(Long fileId, User user) {
-        return userFileRepository
-                .findByIdAndUserIdAndRank(fileId, getIdOrZero(user), 1)
+        var userId = getIdOrZero(user);
+        return metadataCache
+                .getFile(fileId, userId, () -> userFileRepository.findByIdAndUserId(fileId, userId))
                 .orElseThrow(() -> new FileNotFoundException(fileId));
     }
 
     /**
-     * Gets a list of file versions
+     * Gets a list of file versions. It's read through the {@link FileMetadataCache}
      *
      * @param fileId Id of the file
      * @param user The user who owns the files
      * @return List of {@link FileVersion} objects
      */
+    @Timed(OPERATIONS_TIMER)
     public List<FileVersion> getFileVersions(Long fileId, User user) {
-        return fileVersionRepository.findAllByFileIdAndFileUserOrderByCreatedAtDesc(fileId, user);
+        return metadataCache.getVersions(fileId, getIdOrZero(user),
+                () -> fileVersionRepository.findAllByFileIdAndFileUserOrderByCreatedAtDesc(fileId, user));
     }
 
     /**
-     * Gets a specific file version
+     * Gets a specific file version. It's read through the {@link FileMetadataCache}
      *
      * @param uuid UUID of the file version
      * @param fileId Id of the file that owns the version
      * @param user The user who owns the file
      * @return {@link FileVersion} object
      */
+    @Timed(OPERATIONS_TIMER)
     public FileVersion getFileVersion(UUID uuid, Long fileId, User user) {
-        return fileVersionRepository
-                .findByUuidAndFileIdAndFileUser(uuid, fileId, user)
+        return metadataCache
+                .getVersion(uuid, fileId, getIdOrZero(user),
+                        () -> fileVersionRepository.findByUuidAndFileIdAndFileUser(uuid, fileId, user))
                 .orElseThrow(() -> new FileVersionNotFoundException(uuid, fileId));
     }
 
+    /**
+     * Gets the content of the newest version of a file. Small contents are read through the {@link ContentCache}
+     *
+     * @param fileId Id of the file
+     * @param user The user who owns the file
+     * @return {@link FileContent} object
+     */
+    @Timed(OPERATIONS_TIMER)
+    public FileContent getFileContent(Long fileId, User user) {
+        var file = getFile(fileId, user);
+        return contentCache.cached(buildFileContent(file.getFilename(), file.getContentType(), file.getVersion(),
+                file.getContentHash(), file.getSizeInBytes(), file.getLastModifiedAt(), file.getStorageKey(),
+                file.getDeltaBaseKey(), file.getContentEncoding(), file.getEncodedSize()));
+    }
+
+    /**
+     * Gets the content of a specific file version. Small contents are read through the {@link ContentCache}
+     *
+     * @param uuid UUID of the file version
+     * @param fileId Id of the file that owns the version
+     * @param user The user who owns the file
+     * @return {@link FileContent} object
+     */
+    @Timed(OPERATIONS_TIMER)
+    public FileContent getFileVersionContent(UUID uuid, Long fileId, User user) {
+        var version = getFileVersion(uuid, fileId, user);
+        return contentCache.cached(buildFileContent(version.getFile().getFilename(), version.getFile().getContentType(),
+                version.getUuid(), version.getContentHash(), version.getSize(), version.getCreatedAt(),
+                version.getStorageKey(), version.getDeltaBaseKey(), version.getContentEncoding(),
+                version.getEncodedSize()));
+    }
+
+    // content in the blob store is read from there, versions that haven't been migrated are read from the database.
+    // Nothing is read until the content is opened, and no connection is needed to send it
+    private FileContent buildFileContent(String filename, String contentType, UUID version, String contentHash,
+                                         long size, LocalDateTime lastModifiedAt, String storageKey,
+                                         String deltaBaseKey, String contentEncoding, Long encodedSize) {
+        if (storageKey != null && deltaBaseKey != null) {
+            // the blob is a delta, so the content is rebuilt while it's streamed and can't be sent as a file
+            return new FileContent(filename, contentType, version, contentHash, size, lastModifiedAt, null,
+                    (offset, length) -> openDelta(storageKey, deltaBaseKey, offset, length));
+        }
+        if (storageKey != null && contentEncoding != null) {
+            // clients that accept the encoding get the stored content as is, the rest get it decompressed
+            var encoded = new FileContent.Encoded(contentEncoding, encodedSize, blobStore.getPath(storageKey).orElse(null),
+                    (offset, length) -> blobStore.get(storageKey, offset, length));
+            return new FileContent(filename, contentType, version, contentHash, size, lastModifiedAt, null,
+                    (offset, length) -> openCompressed(storageKey, offset, length), encoded);
+        }
+        if (storageKey != null) {
+            return new FileContent(filename, contentType, version, contentHash, size, lastModifiedAt,
+                    blobStore.getPath(storageKey).orElse(null),
+                    (offset, length) -> blobStore.get(storageKey, offset, length));
+        }
+        return new FileContent(filename, contentType, version, contentHash, size, lastModifiedAt, null,
+                (offset, length) -> openInline(version, offset, length));
+    }
+
+    // the database is only read when the content is, so the copy runs on the thread that sends it
+    // rather than holding up the request thread
+    private InputStream openInline(UUID version, long offset, long length) {
+        return new DeferredInputStream(() -> copyInline(version, offset, length));
+    }
+
+    // reads a range of content stored in the database in a short transaction, and copies it out so the connection
+    // is released before the content is sent. Only the range is selected, large ranges a chunk at a time, so the
+    // database never sends the whole blob. Large ranges are copied to a temporary file
+    private InputStream copyInline(UUID version, long offset, long length) {
+        return transactionTemplate.execute(status -> {
+            if (length <= MAX_INLINE_COPY_IN_MEMORY) {
+                return new ByteArrayInputStream(readInline(version, offset, (int) length));
+            }
+            try {
+                return spool(version, offset, length);
+            } catch (IOException e) {
+                throw new BlobStoreException("An error occurred while reading inline content", e);
+            }
+        });
+    }
+
+    private byte[] readInline(UUID version, long offset, int length) {
+        // content positions start at 1
+        return fileVersionRepository.findContentRangeByUuid(version, offset + 1, length)
+                .orElseThrow(() -> new BlobStoreException("The file version has no content"));
+    }
+
+    // the temporary file is deleted when the stream is closed
+    private InputStream spool(UUID version, long offset, long length) throws IOException {
+        var file = Files.createTempFile("inline-content-", ".tmp");
+        try {
+            try (var out = Files.newOutputStream(file)) {
+                for (long copied = 0; copied < length; ) {
+                    var chunk = readInline(version, offset + copied,
+                            (int) Math.min(MAX_INLINE_COPY_IN_MEMORY, length - copied));
+                    if (chunk.length == 0) {
+                        // the content ended before the range did
+                        break;
+                    }
+                    out.write(chunk);
+                    copied += chunk.length;
+                }
+            }
+            return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    // opens a range of the content rebuilt from a delta and its snapshot
+    private InputStream openDelta(String storageKey, String deltaBaseKey, long offset, long length) {
+        DeltaInputStream in = null;
+        try {
+            in = new DeltaInputStream(blobStore.get(storageKey),
+                    (baseOffset, baseLength) -> blobStore.get(deltaBaseKey, baseOffset, baseLength));
+            in.skipFully(offset);
+            return new LimitedInputStream(in, length);
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw new BlobStoreException(String.format("An error occurred while reading delta '%s'", storageKey), e);
+        }
+    }
+
+    // opens a range of the decompressed content, the bytes before it are decompressed and skipped
+    private InputStream openCompressed(String storageKey, long offset, long length) {
+        var stored = blobStore.get(storageKey);
+        try {
+            var in = new GZIPInputStream(stored, 64 * 1024);
+            var remaining = offset;
+            while (remaining > 0) {
+                var skipped = in.skip(remaining);
+                if (skipped <= 0) {
+                    // a blob shorter than its recorded size would otherwise send the wrong bytes for the range
+                    if (in.read() < 0) {
+                        throw new EOFException(String.format("The content ends before offset %d", offset));
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            return new LimitedInputStream(in, length);
+        } catch (IOException e) {
+            closeQuietly(stored);
+            throw new BlobStoreException(String.format("An error occurred while decompressing blob '%s'", storageKey), e);
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            in.close();
+        } catch (IOException ignored) {
+            // the read already failed
+        }
+    }
+
     // gets the generic "binary" file content type if none was provided
     private String getContentTypeOrDefault(String contentType) {
         return contentType == null ? "application/octet-stream" : contentType;
     }
 
+    // builds the like pattern matching the filenames that start with the prefix, "!" is the escape character
+    private String toFilenamePattern(String filenamePrefix) {
+        var prefix = filenamePrefix == null ? "" : filenamePrefix;
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    // gets null when no content type was provided, so files aren't filtered by it
+    private String getContentTypeOrNull(String contentType) {
+        return StringUtils.isEmpty(contentType) ? null : contentType;
+    }
+
     // gets the user id or 0 if null
     private Long getIdOrZero(User user) {
         return user != null ? user.getId() : 0L;
@@ -0,0 +1,113 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Inline content migrator - moves the content of file versions stored in the database
+ * (the file_versions.content column) to the blob store.
+ *
+ * Versions are migrated in small batches, each one in its own transaction, so the migration can be
+ * stopped and resumed at any time. Enable it with the {@code storage.migration.enabled} property
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class InlineContentMigrator {
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final FileVersionRepository fileVersionRepository;
+    private final BlobStore blobStore;
+    private final BlobReferenceCounter blobReferenceCounter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${storage.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.migration.batch-size:50}")
+    private int batchSize;
+
+    @Autowired
+    public InlineContentMigrator(FileVersionRepository fileVersionRepository,
+                                 BlobStore blobStore,
+                                 BlobReferenceCounter blobReferenceCounter,
+                                 TransactionTemplate transactionTemplate) {
+        this.fileVersionRepository = fileVersionRepository;
+        this.blobStore = blobStore;
+        this.blobReferenceCounter = blobReferenceCounter;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (enabled) {
+            var migrated = migrate();
+            logger.info(String.format("Moved the content of %d file versions to the blob store", migrated));
+        }
+    }
+
+    /**
+     * Moves all the inline content to the blob store
+     *
+     * @return the number of migrated versions
+     */
+    public long migrate() {
+        long migrated = 0;
+        long lastId = 0;
+        while (true) {
+            var fromId = lastId;
+            var batch = transactionTemplate.execute(status -> migrateBatch(fromId));
+            if (batch == null || batch.count == 0) {
+                return migrated;
+            }
+            migrated += batch.count;
+            lastId = batch.lastId;
+        }
+    }
+
+    // migrates a batch of versions after the given id, the changes are flushed when the transaction commits
+    private Batch migrateBatch(long fromId) {
+        var versions = fileVersionRepository
+                .findAllByStorageKeyIsNullAndIdGreaterThanOrderByIdAsc(fromId, PageRequest.of(0, batchSize));
+
+        var batch = new Batch();
+        for (FileVersion version : versions) {
+            if (version.getContent() != null) {
+                try (var stream = version.getContent().getBinaryStream()) {
+                    var blob = blobStore.put(stream);
+                    // joins the batch transaction, so the reference is only kept if the version is migrated
+                    blobReferenceCounter.retain(blob);
+                    version.setStorageKey(blob.getKey());
+                    version.setSize(blob.getSize());
+                    version.setContentHash(blob.getSha256());
+                    version.setContent(null);
+                } catch (SQLException | IOException e) {
+                    throw new BlobStoreException(
+                            String.format("An error occurred while migrating file version '%s'", version.getUuid()), e);
+                }
+            }
+            batch.count++;
+            batch.lastId = version.getId();
+        }
+        return batch;
+    }
+
+    private static class Batch {
+        int count;
+        long lastId;
+    }
+}
@@ -0,0 +1,273 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileRepository;
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.dao.UserRepository;
+import com.demo.filestorageapi.core.exception.FileNotFoundException;
+import com.demo.filestorageapi.core.exception.InvalidArgumentException;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.RetentionPolicy;
+import com.demo.filestorageapi.core.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Retention Service - manages the retention policies of users and files, and prunes the versions they don't keep.
+ *
+ * Versions are pruned in the background in small batches, each one in its own transaction with the file locked,
+ * like the {@link DeletedFileReclaimer} removes deleted files. The current version of a file is never pruned
+ *
+ * @author Franklin Grassals
+ */
+@Service
+public class RetentionService {
+    // versions are never created before this date, so it's used when the policy has no age limit
+    private static final LocalDateTime NO_AGE_LIMIT = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final UserRepository userRepository;
+    private final BlobReferenceCounter blobReferenceCounter;
+    private final FileMetadataCache metadataCache;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter prunedVersions;
+    private final Counter prunedBytes;
+
+    @Value("${storage.retention.batch-size:500}")
+    private int batchSize;
+
+    // pause between batches, so the pruner leaves room for the requests
+    @Value("${storage.retention.batch-delay:PT0.1S}")
+    private Duration batchDelay;
+
+    @Autowired
+    public RetentionService(FileRepository fileRepository,
+                            FileVersionRepository fileVersionRepository,
+                            UserRepository userRepository,
+                            BlobReferenceCounter blobReferenceCounter,
+                            FileMetadataCache metadataCache,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry) {
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.userRepository = userRepository;
+        this.blobReferenceCounter = blobReferenceCounter;
+        this.metadataCache = metadataCache;
+        this.transactionTemplate = transactionTemplate;
+        this.prunedVersions = Counter.builder("storage.retention.pruned.versions")
+                .description("File versions pruned by the retention policies")
+                .register(meterRegistry);
+        this.prunedBytes = Counter.builder("storage.retention.pruned.size")
+                .description("Size of the file versions pruned by the retention policies")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Gets the retention policy of a user
+     *
+     * @param user The user
+     * @return {@link RetentionPolicy} object, without limits if the user has none
+     */
+    public RetentionPolicy getUserPolicy(User user) {
+        return orEmpty(findUser(user).getRetentionPolicy());
+    }
+
+    /**
+     * Sets the retention policy of a user, it applies to all the files without a policy of their own
+     *
+     * @param user The user
+     * @param maxVersions The number of newest versions kept, or null for no limit
+     * @param maxAgeDays Versions older than this many days are pruned, or null for no limit
+     * @return The new {@link RetentionPolicy}
+     */
+    @Transactional
+    public RetentionPolicy setUserPolicy(User user, Integer maxVersions, Integer maxAgeDays) {
+        var policy = buildPolicy(maxVersions, maxAgeDays);
+        findUser(user).setRetentionPolicy(policy);
+        return policy;
+    }
+
+    /**
+     * Gets the retention policy of a file
+     *
+     * @param fileId Id of the file
+     * @param user The owner of the file
+     * @return {@link RetentionPolicy} object, without limits if the file has no policy of its own
+     */
+    public RetentionPolicy getFilePolicy(Long fileId, User user) {
+        return orEmpty(findFile(fileId, user).getRetentionPolicy());
+    }
+
+    /**
+     * Sets the retention policy of a file, replacing the policy of its user. A policy without limits
+     * removes the file's policy, so the user's applies again
+     *
+     * @param fileId Id of the file
+     * @param user The owner of the file
+     * @param maxVersions The number of newest versions kept, or null for no limit
+     * @param maxAgeDays Versions older than this many days are pruned, or null for no limit
+     * @return The new {@link RetentionPolicy}
+     */
+    @Transactional
+    public RetentionPolicy setFilePolicy(Long fileId, User user, Integer maxVersions, Integer maxAgeDays) {
+        var policy = buildPolicy(maxVersions, maxAgeDays);
+        findFile(fileId, user).setRetentionPolicy(policy);
+        return policy;
+    }
+
+    @Scheduled(fixedDelayString = "${storage.retention.interval:PT1H}")
+    public void pruneScheduled() {
+        var before = prunedVersions.count();
+        var pruned = prune();
+        if (pruned > 0) {
+            logger.info(String.format("Pruned %d file versions, %s reclaimed",
+                    (long) (prunedVersions.count() - before), DataSize.ofBytes(pruned)));
+        }
+    }
+
+    /**
+     * Prunes the versions of all the files with a retention policy
+     *
+     * @return the size of the pruned versions in bytes. Their contents are only deleted from the blob store
+     * when no other version uses them
+     */
+    public long prune() {
+        var pruned = 0L;
+        var lastId = 0L;
+        try {
+            while (true) {
+                var fileIds = fileRepository.findIdsWithRetentionPolicy(lastId, PageRequest.of(0, batchSize));
+                for (Long fileId : fileIds) {
+                    pruned += pruneFile(fileId);
+                }
+                if (fileIds.size() < batchSize) {
+                    return pruned;
+                }
+                lastId = fileIds.get(fileIds.size() - 1);
+            }
+        } catch (InterruptedException e) {
+            // the application is shutting down, the rest is pruned on the next run
+            Thread.currentThread().interrupt();
+            return pruned;
+        }
+    }
+
+    // prunes the versions of a file one batch at a time
+    private long pruneFile(Long fileId) throws InterruptedException {
+        var pruned = 0L;
+        try {
+            while (true) {
+                var batch = transactionTemplate.execute(status -> pruneBatch(fileId));
+                if (batch == null) {
+                    return pruned;
+                }
+                pruned += batch.size;
+                if (batch.count < batchSize) {
+                    return pruned;
+                }
+                Thread.sleep(batchDelay.toMillis());
+            }
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Could not prune the versions of file %d", fileId), e);
+            return pruned;
+        }
+    }
+
+    // deletes a batch of the versions the policy doesn't keep, the blobs are deleted when the transaction commits
+    private Batch pruneBatch(Long fileId) {
+        var batch = new Batch();
+        // the file stays locked until the batch commits, so its current version can't change meanwhile
+        var file = fileRepository.findByIdForUpdate(fileId).orElse(null);
+        if (file == null) {
+            return batch;
+        }
+        var policy = getEffectivePolicy(file);
+        if (policy.isEmpty()) {
+            return batch;
+        }
+
+        var minId = 0L;
+        if (policy.getMaxVersions() != null) {
+            var oldestKept = fileVersionRepository.findNewestIdsByFileId(fileId,
+                    PageRequest.of(policy.getMaxVersions() - 1, 1));
+            minId = oldestKept.isEmpty() ? 0L : oldestKept.get(0);
+        }
+        var minCreatedAt = policy.getMaxAgeDays() == null
+                ? NO_AGE_LIMIT
+                : LocalDateTime.now().minusDays(policy.getMaxAgeDays());
+
+        var versionIds = fileVersionRepository.findPrunableIds(fileId, minId, minCreatedAt,
+                PageRequest.of(0, batchSize));
+        if (versionIds.isEmpty()) {
+            return batch;
+        }
+        batch.count = versionIds.size();
+        batch.size = fileVersionRepository.sumSizeByIdIn(versionIds);
+        // one reference is released per version, and one more for the snapshot of each delta
+        var storageKeys = fileVersionRepository.findBlobKeysByIdIn(versionIds);
+        fileVersionRepository.deleteInBulkByIdIn(versionIds);
+        blobReferenceCounter.release(storageKeys);
+        // the pruned versions disappear from the cached version lists once the batch commits
+        metadataCache.evict(fileId);
+
+        prunedVersions.increment(batch.count);
+        prunedBytes.increment(batch.size);
+        return batch;
+    }
+
+    // the file's own policy, or its user's
+    private RetentionPolicy getEffectivePolicy(File file) {
+        var policy = file.getRetentionPolicy();
+        return policy != null && !policy.isEmpty() ? policy : orEmpty(file.getUser().getRetentionPolicy());
+    }
+
+    private RetentionPolicy buildPolicy(Integer maxVersions, Integer maxAgeDays) {
+        if (maxVersions != null && maxVersions < 1) {
+            throw new InvalidArgumentException("The maximum number of versions must be at least 1");
+        }
+        if (maxAgeDays != null && maxAgeDays < 1) {
+            throw new InvalidArgumentException("The maximum age of the versions must be at least 1 day");
+        }
+        return new RetentionPolicy(maxVersions, maxAgeDays);
+    }
+
+    private RetentionPolicy orEmpty(RetentionPolicy policy) {
+        return policy != null ? policy : new RetentionPolicy();
+    }
+
+    private User findUser(User user) {
+        if (user == null) {
+            throw new InvalidArgumentException("The user cannot be null");
+        }
+        return userRepository
+                .findById(user.getId())
+                .orElseThrow(() -> new InvalidArgumentException("The user does not exist"));
+    }
+
+    private File findFile(Long fileId, User user) {
+        return fileRepository
+                .findByIdAndUser(fileId, user)
+                .orElseThrow(() -> new FileNotFoundException(fileId));
+    }
+
+    private static class Batch {
+        int count;
+        long size;
+    }
+}
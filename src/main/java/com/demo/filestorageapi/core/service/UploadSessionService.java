@@ -0,0 +1,214 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileRepository;
+import com.demo.filestorageapi.core.dao.UploadSessionRepository;
+import com.demo.filestorageapi.core.exception.*;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.UploadSession;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.storage.UploadStagingArea;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.SortedMap;
+import java.util.UUID;
+
+/**
+ * Upload Session Service - handles files uploaded in chunks.
+ *
+ * A session is created with the size of the whole file, its chunks can then be sent in any order and sent again
+ * if they fail. Committing the session streams the chunks in order to the blob store as a new file or version,
+ * so the file is never held in memory. Sessions that aren't committed in time are deleted with their chunks
+ *
+ * @author Franklin Grassals
+ */
+@Service
+public class UploadSessionService {
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileRepository fileRepository;
+    private final FileStorageService fileStorageService;
+    private final UploadStagingArea uploadStagingArea;
+
+    @Value("${storage.upload.max-file-size:10GB}")
+    private DataSize maxFileSize;
+
+    @Value("${storage.upload.max-chunks:10000}")
+    private int maxChunks;
+
+    // sessions expire when no chunk was received for this long
+    @Value("${storage.upload.session-ttl:PT24H}")
+    private Duration sessionTtl;
+
+    @Autowired
+    public UploadSessionService(UploadSessionRepository uploadSessionRepository,
+                                FileRepository fileRepository,
+                                FileStorageService fileStorageService,
+                                UploadStagingArea uploadStagingArea) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.fileRepository = fileRepository;
+        this.fileStorageService = fileStorageService;
+        this.uploadStagingArea = uploadStagingArea;
+    }
+
+    /**
+     * Starts the upload of a file
+     *
+     * @param filename Filename of the new file, ignored when adding a version to an existing file
+     * @param contentType Content type of the file
+     * @param size Size of the whole file in bytes
+     * @param fileId Id of the file to add a version to, or null to create a new file
+     * @param user The owner of the file
+     * @return The created {@link UploadSession}
+     */
+    public UploadSession createSession(String filename, String contentType, long size, Long fileId, User user) {
+        if (user == null) {
+            throw new InvalidArgumentException("The user cannot be null");
+        }
+        if (size <= 0 || size > maxFileSize.toBytes()) {
+            throw new InvalidArgumentException(
+                    String.format("The size must be between 1 byte and %s", maxFileSize));
+        }
+
+        File file = null;
+        if (fileId != null) {
+            file = fileRepository
+                    .findByIdAndUser(fileId, user)
+                    .orElseThrow(() -> new FileNotFoundException(fileId));
+            if (!file.getContentType().equalsIgnoreCase(contentType)) {
+                throw new FileContentTypeMismatch(
+                        String.format("The uploaded file's content type '%s' does not match. It must be '%s'",
+                                contentType, file.getContentType())
+                );
+            }
+            filename = file.getFilename();
+        } else if (StringUtils.isEmpty(filename)) {
+            throw new InvalidArgumentException("The filename cannot be empty");
+        }
+
+        var contentTypeOrDefault = contentType == null ? "application/octet-stream" : contentType;
+        return uploadSessionRepository.save(
+                new UploadSession(filename, contentTypeOrDefault, size, user, file, getExpirationDate()));
+    }
+
+    /**
+     * Gets an upload session
+     *
+     * @param id Id of the upload session
+     * @param user The user who started the upload
+     * @return {@link UploadSession} object
+     */
+    public UploadSession getSession(UUID id, User user) {
+        return uploadSessionRepository
+                .findByIdAndUser(id, user)
+                .orElseThrow(() -> new UploadSessionNotFoundException(id));
+    }
+
+    /**
+     * Gets the chunks received for an upload session
+     *
+     * @param id Id of the upload session
+     * @param user The user who started the upload
+     * @return the sizes of the received chunks in bytes by chunk number
+     */
+    public SortedMap<Integer, Long> getChunks(UUID id, User user) {
+        return uploadStagingArea.getChunks(getSession(id, user).getId());
+    }
+
+    /**
+     * Stores a chunk of an upload, replacing it if it was already received
+     *
+     * @param id Id of the upload session
+     * @param number Number of the chunk, starting at 1
+     * @param stream The input stream pointing to the content of the chunk
+     * @param user The user who started the upload
+     * @return the size of the chunk in bytes
+     */
+    public long putChunk(UUID id, int number, InputStream stream, User user) {
+        var session = getSession(id, user);
+        if (number < 1 || number > maxChunks) {
+            throw new InvalidArgumentException(String.format("The chunk number must be between 1 and %d", maxChunks));
+        }
+
+        var size = uploadStagingArea.putChunk(session.getId(), number, stream);
+
+        session.setExpiresAt(getExpirationDate());
+        uploadSessionRepository.save(session);
+        return size;
+    }
+
+    /**
+     * Commits an upload once all of its chunks were received, creating the file or adding the version
+     *
+     * @param id Id of the upload session
+     * @param user The user who started the upload
+     * @return The created or updated {@link File}
+     */
+    public File commit(UUID id, User user) {
+        var session = getSession(id, user);
+        var chunks = uploadStagingArea.getChunks(session.getId());
+        var received = chunks.values().stream().mapToLong(Long::longValue).sum();
+        // chunks must go from 1 to N without gaps
+        if (chunks.isEmpty() || chunks.lastKey() != chunks.size() || received != session.getSize()) {
+            throw new InvalidArgumentException(String.format(
+                    "The upload is incomplete, %d chunks with %d of %d bytes were received",
+                    chunks.size(), received, session.getSize()));
+        }
+
+        File file;
+        try (var stream = uploadStagingArea.openChunks(session.getId(), chunks.size())) {
+            file = session.getFile() == null
+                    ? fileStorageService.storeFile(session.getFilename(), stream, session.getSize(),
+                            session.getContentType(), user)
+                    : fileStorageService.updateFile(session.getFile().getId(), user, stream, session.getSize(),
+                            session.getContentType());
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("An error occurred while reading the chunks of upload '%s'", id), e);
+        }
+
+        delete(session);
+        return file;
+    }
+
+    /**
+     * Cancels an upload, deleting the chunks received
+     *
+     * @param id Id of the upload session
+     * @param user The user who started the upload
+     */
+    public void cancel(UUID id, User user) {
+        delete(getSession(id, user));
+    }
+
+    /**
+     * Deletes the sessions that expired along with their chunks
+     */
+    @Scheduled(fixedDelayString = "${storage.upload.expiration-check-interval:PT1H}")
+    public void deleteExpiredSessions() {
+        var expired = uploadSessionRepository.findAllByExpiresAtBefore(LocalDateTime.now());
+        expired.forEach(this::delete);
+        if (!expired.isEmpty()) {
+            logger.info(String.format("Deleted %d expired upload sessions", expired.size()));
+        }
+    }
+
+    private void delete(UploadSession session) {
+        uploadSessionRepository.delete(session);
+        uploadStagingArea.delete(session.getId());
+    }
+
+    private LocalDateTime getExpirationDate() {
+        return LocalDateTime.now().plus(sessionTtl);
+    }
+}
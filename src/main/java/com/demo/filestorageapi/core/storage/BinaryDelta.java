@@ -0,0 +1,287 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary delta - encodes a content as its differences from a base content, in the style of rsync.
+ *
+ * The base is split in fixed size blocks, indexed by a rolling checksum and a strong hash. The content is then
+ * scanned byte by byte, the parts of it found among the blocks are encoded as copies from the base and the rest
+ * is inserted as is. Both contents are read once as streams, only the index of the base is kept in memory.
+ *
+ * A delta is a sequence of operations, read back by {@link DeltaInputStream}:
+ * COPY (offset and length in the base), INSERT (length and the bytes) and END
+ *
+ * @author Franklin Grassals
+ */
+public final class BinaryDelta {
+    static final int MAGIC = 0x46534431; // "FSD1"
+    static final byte END = 0;
+    static final byte COPY = 1;
+    static final byte INSERT = 2;
+
+    private static final int MIN_BLOCK_SIZE = 2048;
+    private static final int MAX_INSERT_SIZE = 64 * 1024;
+
+    private BinaryDelta() {
+    }
+
+    /**
+     * Encodes a content as a delta from a base
+     *
+     * @param base The input stream pointing to the base content. It is read until the end but not closed
+     * @param target The input stream pointing to the content to encode. It is read until the end but not closed
+     * @param targetSize Size of the content to encode in bytes, used to pick the size of the blocks
+     * @param out Where the delta is written. It is not closed
+     * @param maxDeltaSize The encoding stops once the delta is larger than this many bytes
+     * @return the size of the delta in bytes, or -1 if it was going to be larger than maxDeltaSize
+     * @throws IOException if a content couldn't be read or the delta written
+     */
+    public static long encode(InputStream base, InputStream target, long targetSize, OutputStream out,
+                              long maxDeltaSize) throws IOException {
+        return new Encoder(blockSize(targetSize), out, maxDeltaSize).encode(base, target);
+    }
+
+    // the square root of the size, as rsync does, so large contents don't need a huge index
+    static int blockSize(long size) {
+        var blockSize = MIN_BLOCK_SIZE;
+        while ((long) blockSize * blockSize < size) {
+            blockSize *= 2;
+        }
+        return blockSize;
+    }
+
+    private static class Encoder {
+        private final int blockSize;
+        private final CountingOutputStream counter;
+        private final DataOutputStream out;
+        private final long maxDeltaSize;
+        private final MessageDigest md5;
+
+        // blocks of the base by rolling checksum, and the strong hash of each block by block number
+        private final Map<Integer, List<Integer>> blocks = new HashMap<>();
+        private final List<Long> strongHashes = new ArrayList<>();
+
+        // a copy is held until the next operation, so copies of consecutive blocks become a single one
+        private long copyOffset;
+        private long copyLength;
+
+        Encoder(int blockSize, OutputStream out, long maxDeltaSize) {
+            this.blockSize = blockSize;
+            this.counter = new CountingOutputStream(out);
+            this.out = new DataOutputStream(counter);
+            this.maxDeltaSize = maxDeltaSize;
+            try {
+                this.md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        long encode(InputStream base, InputStream target) throws IOException {
+            index(base);
+            out.writeInt(MAGIC);
+
+            // the window being checked is buf[pos, pos + blockSize), the bytes from lit to pos weren't found in the base
+            var buf = new byte[Math.max(4 * blockSize, 256 * 1024)];
+            int pos = 0;
+            int lit = 0;
+            int end = 0;
+            var eof = false;
+            var checksum = new RollingChecksum(blockSize);
+            var checksumValid = false;
+
+            while (true) {
+                // keeps at least one byte after the window, so it can roll
+                if (end - pos <= blockSize && !eof) {
+                    if (!insert(buf, lit, pos)) {
+                        return -1;
+                    }
+                    System.arraycopy(buf, pos, buf, 0, end - pos);
+                    end -= pos;
+                    pos = 0;
+                    lit = 0;
+                    while (end < buf.length) {
+                        var read = target.read(buf, end, buf.length - end);
+                        if (read < 0) {
+                            eof = true;
+                            break;
+                        }
+                        end += read;
+                    }
+                }
+                if (end - pos < blockSize) {
+                    break;
+                }
+
+                if (!checksumValid) {
+                    checksum.reset(buf, pos);
+                    checksumValid = true;
+                }
+                var block = find(checksum.value(), buf, pos);
+                if (block >= 0) {
+                    if (!insert(buf, lit, pos)) {
+                        return -1;
+                    }
+                    copy((long) block * blockSize);
+                    pos += blockSize;
+                    lit = pos;
+                    checksumValid = false;
+                } else if (end - pos > blockSize) {
+                    checksum.roll(buf[pos], buf[pos + blockSize]);
+                    pos++;
+                } else {
+                    // the last bytes of the content, they don't match any block
+                    break;
+                }
+            }
+
+            if (!insert(buf, lit, end)) {
+                return -1;
+            }
+            flushCopy();
+            out.writeByte(END);
+            out.flush();
+            return counter.count > maxDeltaSize ? -1 : counter.count;
+        }
+
+        // indexes the full blocks of the base, a last partial block can't be matched anyway
+        private void index(InputStream base) throws IOException {
+            var block = new byte[blockSize];
+            var checksum = new RollingChecksum(blockSize);
+            var number = 0;
+            while (base.readNBytes(block, 0, blockSize) == blockSize) {
+                checksum.reset(block, 0);
+                blocks.computeIfAbsent(checksum.value(), key -> new ArrayList<>(1)).add(number++);
+                strongHashes.add(strongHash(block, 0));
+            }
+        }
+
+        // finds a block of the base equal to the window, the strong hash is only computed when the checksum matches
+        private int find(int checksum, byte[] buf, int pos) {
+            var candidates = blocks.get(checksum);
+            if (candidates == null) {
+                return -1;
+            }
+            var hash = strongHash(buf, pos);
+            for (int candidate : candidates) {
+                if (strongHashes.get(candidate) == hash) {
+                    return candidate;
+                }
+            }
+            return -1;
+        }
+
+        private long strongHash(byte[] buf, int pos) {
+            md5.update(buf, pos, blockSize);
+            var digest = md5.digest();
+            var hash = 0L;
+            for (var i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        }
+
+        private void copy(long offset) throws IOException {
+            if (copyLength > 0 && copyOffset + copyLength == offset) {
+                copyLength += blockSize;
+                return;
+            }
+            flushCopy();
+            copyOffset = offset;
+            copyLength = blockSize;
+        }
+
+        private void flushCopy() throws IOException {
+            if (copyLength > 0) {
+                out.writeByte(COPY);
+                out.writeLong(copyOffset);
+                out.writeLong(copyLength);
+                copyLength = 0;
+            }
+        }
+
+        // writes buf[from, to) as inserts, returns false once the delta is too large
+        private boolean insert(byte[] buf, int from, int to) throws IOException {
+            if (to > from) {
+                flushCopy();
+            }
+            for (var offset = from; offset < to; offset += MAX_INSERT_SIZE) {
+                var length = Math.min(MAX_INSERT_SIZE, to - offset);
+                out.writeByte(INSERT);
+                out.writeInt(length);
+                out.write(buf, offset, length);
+            }
+            return counter.count <= maxDeltaSize;
+        }
+    }
+
+    /**
+     * The weak checksum of rsync, it's updated in constant time when the window moves one byte
+     */
+    private static class RollingChecksum {
+        private final int blockSize;
+        private int a;
+        private int b;
+
+        RollingChecksum(int blockSize) {
+            this.blockSize = blockSize;
+        }
+
+        void reset(byte[] buf, int pos) {
+            a = 0;
+            b = 0;
+            for (var i = 0; i < blockSize; i++) {
+                var x = buf[pos + i] & 0xFF;
+                a += x;
+                b += (blockSize - i) * x;
+            }
+            a &= 0xFFFF;
+            b &= 0xFFFF;
+        }
+
+        void roll(byte out, byte in) {
+            a = (a - (out & 0xFF) + (in & 0xFF)) & 0xFFFF;
+            b = (b - blockSize * (out & 0xFF) + a) & 0xFFFF;
+        }
+
+        int value() {
+            return (b << 16) | a;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
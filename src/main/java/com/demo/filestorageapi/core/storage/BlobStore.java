@@ -0,0 +1,73 @@
+package com.demo.filestorageapi.core.storage;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Blob Store - stores the binary content of file versions outside of the database.
+ *
+ * Blobs are content addressed: the key of a blob is derived from its content, so storing
+ * the same content twice returns the same key
+ *
+ * @author Franklin Grassals
+ */
+public interface BlobStore {
+    /**
+     * Stores the content read from the given stream, computing its SHA-256 digest while it is written
+     *
+     * @param stream The input stream pointing to the content to store. It is read until the end but not closed
+     * @return a {@link StoredBlob} describing the stored content
+     * @throws BlobStoreException if the content couldn't be stored
+     */
+    StoredBlob put(InputStream stream);
+
+    /**
+     * Opens the content of a blob for reading
+     *
+     * @param key The key of the blob
+     * @return An input stream pointing to the blob content. The caller must close it
+     * @throws BlobStoreException if the blob doesn't exist or couldn't be opened
+     */
+    InputStream get(String key);
+
+    /**
+     * Opens a range of the content of a blob for reading, without reading the bytes before it
+     *
+     * @param key The key of the blob
+     * @param offset Position of the first byte to read
+     * @param length Number of bytes to read
+     * @return An input stream pointing to the requested range. The caller must close it
+     * @throws BlobStoreException if the blob doesn't exist or couldn't be opened
+     */
+    InputStream get(String key, long offset, long length);
+
+    /**
+     * Gets the path of a blob in the local filesystem, for backends that keep blobs there.
+     * Having the path lets callers hand the file to the OS (e.g. sendfile) instead of reading it through the heap
+     *
+     * @param key The key of the blob
+     * @return the path of the blob, or {@literal Optional#empty()} if the blob isn't a local file
+     */
+    default Optional<Path> getPath(String key) {
+        return Optional.empty();
+    }
+
+    /**
+     * Checks whether a blob exists
+     *
+     * @param key The key of the blob
+     * @return true if the blob exists
+     */
+    boolean exists(String key);
+
+    /**
+     * Deletes a blob. Deleting a blob that doesn't exist does nothing
+     *
+     * @param key The key of the blob
+     * @throws BlobStoreException if the blob couldn't be deleted
+     */
+    void delete(String key);
+}
@@ -0,0 +1,52 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream that reads the remaining bytes of a buffer, e.g. a direct buffer held outside of the heap
+ *
+ * @author Franklin Grassals
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    /**
+     * Creates an instance
+     * @param buffer The buffer to read, from its position to its limit. Its position moves as it's read, so it
+     *               shouldn't be shared, e.g. use a {@link ByteBuffer#duplicate()}
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        var read = Math.min(len, buffer.remaining());
+        buffer.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        var skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
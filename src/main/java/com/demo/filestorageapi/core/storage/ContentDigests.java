@@ -0,0 +1,40 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content digests - the SHA-256 digests that identify stored contents, hex encoded like the blob keys
+ *
+ * @author Franklin Grassals
+ */
+public final class ContentDigests {
+
+    private ContentDigests() {}
+
+    /**
+     * Creates a SHA-256 digest
+     * @return a new {@link MessageDigest}
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform supports it
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hex encodes a digest in lower case
+     * @param bytes The digest
+     * @return the hex encoded digest
+     */
+    public static String toHex(byte[] bytes) {
+        var sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
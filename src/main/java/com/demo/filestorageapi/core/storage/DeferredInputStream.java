@@ -0,0 +1,70 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+/**
+ * Input stream that only opens the underlying stream when it's first read, so opening it can happen on the thread
+ * that sends the content rather than on the one that hands it out. It may be closed from another thread while it
+ * opens, the stream it opened is closed then
+ *
+ * @author Franklin Grassals
+ */
+public class DeferredInputStream extends InputStream {
+    private final Supplier<InputStream> opener;
+    private volatile InputStream in;
+    private volatile boolean closed;
+
+    public DeferredInputStream(Supplier<InputStream> opener) {
+        this.opener = opener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return stream().read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        return stream().read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        return stream().skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+        // nothing is opened just to tell how much could be read without blocking
+        var opened = in;
+        return opened == null ? 0 : opened.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        var opened = in;
+        if (opened != null) {
+            opened.close();
+        }
+    }
+
+    private InputStream stream() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        var opened = in;
+        if (opened == null) {
+            opened = opener.get();
+            in = opened;
+            // a close that ran while it opened didn't see the stream, so it's closed here
+            if (closed) {
+                opened.close();
+                throw new IOException("Stream closed");
+            }
+        }
+        return opened;
+    }
+}
@@ -0,0 +1,156 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that rebuilds a content from a delta written by {@link BinaryDelta} and its base.
+ *
+ * The content is streamed as the delta is read, copies are read from ranges of the base, so the content
+ * is never held in memory. Skipping over copies doesn't read the base at all
+ *
+ * @author Franklin Grassals
+ */
+public class DeltaInputStream extends InputStream {
+    private final DataInputStream delta;
+    private final FileContent.Source base;
+
+    private byte operation = -1;
+    private long remaining; // bytes left in the current operation
+    private long copyOffset; // position in the base of the next byte to copy
+    private InputStream copy; // the range of the base being copied, opened on the first read
+
+    /**
+     * Creates an instance
+     * @param delta The input stream pointing to the delta, it is closed with this stream
+     * @param base Opens ranges of the base content
+     * @throws IOException if the delta couldn't be read or isn't a delta
+     */
+    public DeltaInputStream(InputStream delta, FileContent.Source base) throws IOException {
+        this.delta = new DataInputStream(delta);
+        this.base = base;
+        if (this.delta.readInt() != BinaryDelta.MAGIC) {
+            throw new IOException("The content is not a delta");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+
+        var length = (int) Math.min(len, remaining);
+        int read;
+        if (operation == BinaryDelta.COPY) {
+            if (copy == null) {
+                copy = base.open(copyOffset, remaining);
+            }
+            read = copy.read(b, off, length);
+            copyOffset += Math.max(read, 0);
+        } else {
+            read = delta.read(b, off, length);
+        }
+        if (read < 0) {
+            throw new EOFException("The delta or its base ended too soon");
+        }
+        consume(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || !next()) {
+            return 0;
+        }
+
+        var length = Math.min(n, remaining);
+        long skipped;
+        if (operation == BinaryDelta.COPY) {
+            // the base is opened again at the new offset when read
+            closeCopy();
+            copyOffset += length;
+            skipped = length;
+        } else {
+            skipped = delta.skip(length);
+        }
+        consume(skipped);
+        return skipped;
+    }
+
+    /**
+     * Skips exactly the given number of bytes, or until the end of the content
+     * @param n The number of bytes to skip
+     * @throws IOException if the delta or the base couldn't be read
+     */
+    public void skipFully(long n) throws IOException {
+        while (n > 0) {
+            var skipped = skip(n);
+            if (skipped == 0) {
+                if (read() == -1) {
+                    return;
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeCopy();
+        } finally {
+            delta.close();
+        }
+    }
+
+    // moves to the next operation with bytes left, returns false at the end of the delta
+    private boolean next() throws IOException {
+        while (remaining == 0) {
+            if (operation == BinaryDelta.END) {
+                return false;
+            }
+            operation = delta.readByte();
+            switch (operation) {
+                case BinaryDelta.COPY:
+                    copyOffset = delta.readLong();
+                    remaining = delta.readLong();
+                    break;
+                case BinaryDelta.INSERT:
+                    remaining = delta.readInt();
+                    break;
+                case BinaryDelta.END:
+                    return false;
+                default:
+                    throw new IOException(String.format("Invalid delta operation %d", operation));
+            }
+        }
+        return true;
+    }
+
+    private void consume(long bytes) throws IOException {
+        remaining -= bytes;
+        if (remaining == 0) {
+            closeCopy();
+        }
+    }
+
+    private void closeCopy() throws IOException {
+        if (copy != null) {
+            copy.close();
+            copy = null;
+        }
+    }
+}
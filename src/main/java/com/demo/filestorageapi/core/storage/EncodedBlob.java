@@ -0,0 +1,52 @@
+package com.demo.filestorageapi.core.storage;
+
+/**
+ * Encoded blob - describes content that may have been encoded, e.g. compressed, before it was written to
+ * a {@link BlobStore}
+ *
+ * @author Franklin Grassals
+ */
+public class EncodedBlob {
+    private final StoredBlob blob;
+    private final String contentEncoding; // null when the content was stored as is
+    private final long size; // size in bytes of the original content
+    private final String sha256; // hex encoded SHA-256 digest of the original content
+
+    public EncodedBlob(StoredBlob blob, String contentEncoding, long size, String sha256) {
+        this.blob = blob;
+        this.contentEncoding = contentEncoding;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * @param blob A blob stored as is
+     * @return an instance describing the blob
+     */
+    public static EncodedBlob identity(StoredBlob blob) {
+        return new EncodedBlob(blob, null, blob.getSize(), blob.getSha256());
+    }
+
+    /**
+     * @return the blob as written to the blob store
+     */
+    public StoredBlob getBlob() {
+        return blob;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public boolean isEncoded() {
+        return contentEncoding != null;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+}
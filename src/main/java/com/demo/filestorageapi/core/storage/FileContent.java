@@ -0,0 +1,174 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * File content - describes the downloadable content of a file version and knows how to read it,
+ * either whole or by ranges
+ *
+ * @author Franklin Grassals
+ */
+public class FileContent {
+    private final String filename;
+    private final String contentType;
+    private final UUID version;
+    private final String contentHash;
+    private final long size; // size in bytes
+    private final LocalDateTime lastModifiedAt;
+    private final Path path;
+    private final Source source;
+    private final Encoded encoded;
+
+    /**
+     * Opens a range of the content
+     */
+    @FunctionalInterface
+    public interface Source {
+        InputStream open(long offset, long length);
+    }
+
+    /**
+     * Creates an instance
+     * @param filename Filename of the file
+     * @param contentType Content type of the file
+     * @param version UUID of the version the content belongs to
+     * @param contentHash Hex encoded SHA-256 digest of the content, or null if unknown
+     * @param size Content's size in bytes
+     * @param lastModifiedAt When the version was created
+     * @param path Path of the content in the local filesystem, or null if it isn't a local file
+     * @param source Opens ranges of the content
+     */
+    public FileContent(String filename, String contentType, UUID version, String contentHash, long size,
+                       LocalDateTime lastModifiedAt, Path path, Source source) {
+        this(filename, contentType, version, contentHash, size, lastModifiedAt, path, source, null);
+    }
+
+    /**
+     * Creates an instance of content that is stored encoded, e.g. compressed
+     * @param filename Filename of the file
+     * @param contentType Content type of the file
+     * @param version UUID of the version the content belongs to
+     * @param contentHash Hex encoded SHA-256 digest of the content, or null if unknown
+     * @param size Content's size in bytes
+     * @param lastModifiedAt When the version was created
+     * @param path Path of the content in the local filesystem, or null if it isn't a local file
+     * @param source Opens ranges of the content, decoded
+     * @param encoded The content as stored, or null if it's stored as is
+     */
+    public FileContent(String filename, String contentType, UUID version, String contentHash, long size,
+                       LocalDateTime lastModifiedAt, Path path, Source source, Encoded encoded) {
+        this.filename = filename;
+        this.contentType = contentType;
+        this.version = version;
+        this.contentHash = contentHash;
+        this.size = size;
+        this.lastModifiedAt = lastModifiedAt;
+        this.path = path;
+        this.source = source;
+        this.encoded = encoded;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public UUID getVersion() {
+        return version;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public LocalDateTime getLastModifiedAt() {
+        return lastModifiedAt;
+    }
+
+    /**
+     * @return the path of the content in the local filesystem, or {@literal Optional#empty()} if it isn't a local file
+     */
+    public Optional<Path> getPath() {
+        return Optional.ofNullable(path);
+    }
+
+    /**
+     * @return the content as stored, or {@literal Optional#empty()} if it's stored as is
+     */
+    public Optional<Encoded> getEncoded() {
+        return Optional.ofNullable(encoded);
+    }
+
+    /**
+     * Opens the whole content
+     * @return An input stream pointing to the content. The caller must close it
+     */
+    public InputStream open() {
+        return source.open(0, size);
+    }
+
+    /**
+     * Opens a range of the content
+     * @param offset Position of the first byte to read
+     * @param length Number of bytes to read
+     * @return An input stream pointing to the range. The caller must close it
+     */
+    public InputStream open(long offset, long length) {
+        return source.open(offset, length);
+    }
+
+    /**
+     * The content as stored, when it's stored encoded. It can be sent as is to clients that accept the encoding
+     */
+    public static class Encoded {
+        private final String encoding;
+        private final long size; // size in bytes
+        private final Path path;
+        private final Source source;
+
+        /**
+         * Creates an instance
+         * @param encoding The encoding, as used in the Content-Encoding header, e.g. "gzip"
+         * @param size Encoded content's size in bytes
+         * @param path Path of the encoded content in the local filesystem, or null if it isn't a local file
+         * @param source Opens ranges of the encoded content
+         */
+        public Encoded(String encoding, long size, Path path, Source source) {
+            this.encoding = encoding;
+            this.size = size;
+            this.path = path;
+            this.source = source;
+        }
+
+        public String getEncoding() {
+            return encoding;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public Optional<Path> getPath() {
+            return Optional.ofNullable(path);
+        }
+
+        /**
+         * Opens the whole encoded content
+         * @return An input stream pointing to the encoded content. The caller must close it
+         */
+        public InputStream open() {
+            return source.open(0, size);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.demo.filestorageapi.core.storage;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.util.Optional;
+
+/**
+ * {@link BlobStore} implementation that keeps blobs in the local filesystem.
+ *
+ * Blobs are keyed by the SHA-256 hash of their content and sharded in two levels of directories
+ * using the first characters of the key, so no single directory grows too large,
+ * e.g. the blob with key "ab12cd..." is stored in "{root}/ab/12/ab12cd..."
+ *
+ * @author Franklin Grassals
+ */
+public class FileSystemBlobStore implements BlobStore {
+    private static final String TMP_DIR = "tmp";
+
+    private final Path rootDir;
+    private final Path tmpDir;
+    private final Timer writeTime;
+
+    public FileSystemBlobStore(Path rootDir, MeterRegistry meterRegistry) {
+        // every content is streamed to the blob store before the database is touched, so this is the time
+        // uploads spend outside of it
+        this.writeTime = Timer.builder("storage.blob.write")
+                .description("Time spent writing contents to the blob store")
+                .register(meterRegistry);
+        try {
+            Files.createDirectories(rootDir.resolve(TMP_DIR));
+            // the real path is used so the paths handed out by getPath are canonical, which tomcat's sendfile requires
+            this.rootDir = rootDir.toRealPath();
+            this.tmpDir = this.rootDir.resolve(TMP_DIR);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Could not create the blob store directory '%s'", rootDir), e);
+        }
+    }
+
+    @Override
+    public StoredBlob put(InputStream stream) {
+        return writeTime.record(() -> write(stream));
+    }
+
+    private StoredBlob write(InputStream stream) {
+        Path tmpFile = null;
+        try {
+            // the content is written to a temp file first because the key is only known after reading it all
+            tmpFile = Files.createTempFile(tmpDir, "upload-", ".tmp");
+            var digest = ContentDigests.sha256();
+            long size;
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tmpFile), digest)) {
+                size = stream.transferTo(out);
+            }
+
+            var key = ContentDigests.toHex(digest.digest());
+            var target = resolve(key);
+            if (Files.exists(target)) {
+                // the same content is already stored, the temp copy isn't needed. The move would replace it, since
+                // an atomic move is a rename, which overwrites the target
+                Files.delete(tmpFile);
+            } else {
+                Files.createDirectories(target.getParent());
+                // a concurrent upload of the same content may move it first, the content replaced is the same
+                Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            // the key is the digest itself
+            return new StoredBlob(key, size, key);
+        } catch (IOException e) {
+            deleteQuietly(tmpFile);
+            throw new BlobStoreException("An error occurred while writing to the blob store", e);
+        } catch (RuntimeException e) {
+            // e.g. the stream of an upload that went over the size limit
+            deleteQuietly(tmpFile);
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream get(String key) {
+        try {
+            return Files.newInputStream(resolve(key));
+        } catch (NoSuchFileException e) {
+            throw new BlobStoreException(String.format("Blob '%s' not found", key), e);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("An error occurred while reading blob '%s'", key), e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+            channel.position(offset);
+            return new LimitedInputStream(Channels.newInputStream(channel), length);
+        } catch (NoSuchFileException e) {
+            throw new BlobStoreException(String.format("Blob '%s' not found", key), e);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new BlobStoreException(String.format("An error occurred while reading blob '%s'", key), e);
+        }
+    }
+
+    @Override
+    public Optional<Path> getPath(String key) {
+        var path = resolve(key);
+        return Files.isRegularFile(path) ? Optional.of(path) : Optional.empty();
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("An error occurred while deleting blob '%s'", key), e);
+        }
+    }
+
+    // gets the sharded path of a blob
+    Path resolve(String key) {
+        if (key == null || key.length() < 4 || !key.chars().allMatch(Character::isLetterOrDigit)) {
+            throw new BlobStoreException(String.format("Invalid blob key '%s'", key));
+        }
+        return rootDir.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // the channel is discarded anyway
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // nothing else we can do, the temp dir can be cleaned up manually
+        }
+    }
+}
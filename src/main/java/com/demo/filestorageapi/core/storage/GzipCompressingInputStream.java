@@ -0,0 +1,93 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Input stream that reads another stream compressed in the gzip format (RFC 1952).
+ *
+ * It's the reading counterpart of {@link java.util.zip.GZIPOutputStream}, so compressed content can be handed
+ * to anything that reads a stream, e.g. {@link BlobStore#put(InputStream)}, while the original is being read
+ *
+ * @author Franklin Grassals
+ */
+public class GzipCompressingInputStream extends InputStream {
+    // magic number, deflate method, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final CheckedInputStream source;
+    private final Deflater deflater;
+    private final DeflaterInputStream body;
+    private InputStream current;
+    private int part; // 0 header, 1 body, 2 trailer, 3 end
+
+    /**
+     * Creates an instance
+     * @param in The input stream pointing to the content to compress, it is closed with this stream
+     * @param level The compression level, from 1 (fastest) to 9 (smallest)
+     */
+    public GzipCompressingInputStream(InputStream in, int level) {
+        this.source = new CheckedInputStream(in, new CRC32());
+        this.deflater = new Deflater(level, true);
+        this.body = new DeflaterInputStream(source, deflater, 64 * 1024);
+        this.current = new ByteArrayInputStream(HEADER);
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (part < 3) {
+            var read = current.read(b, off, len);
+            if (read > 0) {
+                return read;
+            }
+            if (read == 0) {
+                // the deflater needs more input, which it reads on the next call
+                continue;
+            }
+            next();
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            body.close();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void next() {
+        part++;
+        if (part == 1) {
+            current = body;
+        } else if (part == 2) {
+            // the crc and the size of the original content, both little endian
+            var trailer = new byte[8];
+            writeIntLE(trailer, 0, source.getChecksum().getValue());
+            writeIntLE(trailer, 4, deflater.getBytesRead());
+            current = new ByteArrayInputStream(trailer);
+        }
+    }
+
+    private static void writeIntLE(byte[] buf, int offset, long value) {
+        for (var i = 0; i < 4; i++) {
+            buf[offset + i] = (byte) (value >> (8 * i));
+        }
+    }
+}
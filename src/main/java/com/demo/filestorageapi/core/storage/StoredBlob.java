@@ -0,0 +1,47 @@
+package com.demo.filestorageapi.core.storage;
+
+import java.util.Objects;
+
+/**
+ * Stored blob - describes content written to a {@link BlobStore}
+ *
+ * @author Franklin Grassals
+ */
+public class StoredBlob {
+    private final String key;
+    private final long size; // size in bytes
+    private final String sha256; // hex encoded SHA-256 digest of the content
+
+    public StoredBlob(String key, long size, String sha256) {
+        this.key = key;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        StoredBlob that = (StoredBlob) o;
+        return size == that.size &&
+                key.equals(that.key) &&
+                Objects.equals(sha256, that.sha256);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, size, sha256);
+    }
+}
@@ -0,0 +1,160 @@
+package com.demo.filestorageapi.core.storage;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Upload staging area - keeps the chunks received for upload sessions in the local filesystem until
+ * the session is committed, e.g. chunk 3 of session "a1b2..." is stored in "{root}/a1b2.../3".
+ *
+ * Chunks are written to a temp file and moved into place once complete, so a chunk is either missing or whole,
+ * and sending a chunk again replaces it
+ *
+ * @author Franklin Grassals
+ */
+public class UploadStagingArea {
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path rootDir;
+
+    public UploadStagingArea(Path rootDir) {
+        try {
+            this.rootDir = Files.createDirectories(rootDir);
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("Could not create the upload staging directory '%s'", rootDir), e);
+        }
+    }
+
+    /**
+     * Stores a chunk of an upload session
+     *
+     * @param sessionId The id of the upload session
+     * @param number The number of the chunk
+     * @param stream The input stream pointing to the content of the chunk. It is read until the end but not closed
+     * @return the size of the chunk in bytes
+     */
+    public long putChunk(UUID sessionId, int number, InputStream stream) {
+        Path tmpFile = null;
+        try {
+            var sessionDir = Files.createDirectories(resolve(sessionId));
+            tmpFile = Files.createTempFile(sessionDir, "chunk-", TMP_SUFFIX);
+            long size;
+            try (var out = Files.newOutputStream(tmpFile)) {
+                size = stream.transferTo(out);
+            }
+            Files.move(tmpFile, sessionDir.resolve(String.valueOf(number)),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return size;
+        } catch (IOException e) {
+            deleteQuietly(tmpFile);
+            throw new BlobStoreException(
+                    String.format("An error occurred while writing chunk %d of upload '%s'", number, sessionId), e);
+        } catch (RuntimeException e) {
+            deleteQuietly(tmpFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the chunks received for an upload session
+     *
+     * @param sessionId The id of the upload session
+     * @return the sizes of the chunks in bytes by chunk number
+     */
+    public SortedMap<Integer, Long> getChunks(UUID sessionId) {
+        var chunks = new TreeMap<Integer, Long>();
+        try (var files = Files.list(resolve(sessionId))) {
+            files.filter(file -> !file.getFileName().toString().endsWith(TMP_SUFFIX))
+                    .forEach(file -> chunks.put(Integer.valueOf(file.getFileName().toString()), size(file)));
+        } catch (NoSuchFileException e) {
+            // no chunks received yet
+        } catch (IOException | UncheckedIOException e) {
+            throw new BlobStoreException(String.format("An error occurred while listing the chunks of upload '%s'", sessionId), e);
+        }
+        return chunks;
+    }
+
+    /**
+     * Opens the chunks of an upload session as a single stream. Each chunk is opened when the previous one was read,
+     * so only one file is open at a time
+     *
+     * @param sessionId The id of the upload session
+     * @param count The number of chunks, they are read from 1 to count
+     * @return an input stream pointing to the chunks. The caller must close it
+     */
+    public InputStream openChunks(UUID sessionId, int count) {
+        var sessionDir = resolve(sessionId);
+        return new SequenceInputStream(new Enumeration<>() {
+            private int next = 1;
+
+            @Override
+            public boolean hasMoreElements() {
+                return next <= count;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                var number = next++;
+                try {
+                    return Files.newInputStream(sessionDir.resolve(String.valueOf(number)));
+                } catch (IOException e) {
+                    throw new BlobStoreException(
+                            String.format("An error occurred while reading chunk %d of upload '%s'", number, sessionId), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes all the chunks of an upload session
+     *
+     * @param sessionId The id of the upload session
+     */
+    public void delete(UUID sessionId) {
+        var sessionDir = resolve(sessionId);
+        try (var files = Files.walk(sessionDir)) {
+            // the directory is deleted last
+            files.sorted(Comparator.reverseOrder()).forEach(UploadStagingArea::deleteQuietly);
+        } catch (NoSuchFileException e) {
+            // nothing to delete
+        } catch (IOException e) {
+            throw new BlobStoreException(String.format("An error occurred while deleting the chunks of upload '%s'", sessionId), e);
+        }
+    }
+
+    private Path resolve(UUID sessionId) {
+        return rootDir.resolve(sessionId.toString());
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // leftovers are removed again when the session expires
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.demo.filestorageapi.security;
+
+import java.time.Instant;
+
+/**
+ * A signed access token issued by the {@link TokenService}
+ *
+ * @author Franklin Grassals
+ */
+public class AccessToken {
+    private final String value;
+    private final Instant expiresAt;
+
+    public AccessToken(String value, Instant expiresAt) {
+        this.value = value;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
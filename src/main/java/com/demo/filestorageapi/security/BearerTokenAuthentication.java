@@ -0,0 +1,30 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+
+/**
+ * Authentication of a request made with an access token issued by the {@link TokenService}
+ *
+ * @author Franklin Grassals
+ */
+public class BearerTokenAuthentication extends AbstractAuthenticationToken {
+    private final User user;
+
+    public BearerTokenAuthentication(User user) {
+        super(user.getAuthorities());
+        this.user = user;
+        setAuthenticated(true);
+    }
+
+    @Override
+    public Object getCredentials() {
+        // the token isn't needed once it's verified
+        return null;
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return user;
+    }
+}
@@ -0,0 +1,57 @@
+package com.demo.filestorageapi.security;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Authenticates requests that send an access token in the "Authorization: Bearer ..." header. Requests without one
+ * go on to the next filters, so basic authentication still works. Requests with an invalid or expired token
+ * are rejected with a 401 right away
+ *
+ * @author Franklin Grassals
+ */
+public class BearerTokenAuthenticationFilter extends OncePerRequestFilter {
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final TokenService tokenService;
+    private final WebAuthenticationDetailsSource authenticationDetailsSource = new WebAuthenticationDetailsSource();
+
+    public BearerTokenAuthenticationFilter(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        var header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header == null || !header.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        try {
+            var user = tokenService.verify(header.substring(BEARER_PREFIX.length()).trim());
+            var authentication = new BearerTokenAuthentication(user);
+            authentication.setDetails(authenticationDetailsSource.buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        } catch (AuthenticationException e) {
+            SecurityContextHolder.clearContext();
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE,
+                    String.format("Bearer error=\"invalid_token\", error_description=\"%s\"", e.getMessage()));
+            response.sendError(HttpStatus.UNAUTHORIZED.value(), e.getMessage());
+            return;
+        }
+
+        chain.doFilter(request, response);
+    }
+}
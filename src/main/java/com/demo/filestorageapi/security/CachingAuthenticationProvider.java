@@ -0,0 +1,50 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Authentication provider that checks the {@link CredentialsCache} before verifying the credentials with
+ * the given provider, and caches the credentials that the provider accepts. Rejected credentials are never cached
+ *
+ * @author Franklin Grassals
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+    private final AuthenticationProvider delegate;
+    private final CredentialsCache credentialsCache;
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, CredentialsCache credentialsCache) {
+        this.delegate = delegate;
+        this.credentialsCache = credentialsCache;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) {
+        var username = authentication.getName();
+        var password = authentication.getCredentials() == null ? null : authentication.getCredentials().toString();
+        if (password == null) {
+            return delegate.authenticate(authentication);
+        }
+
+        var cachedUser = credentialsCache.get(username, password);
+        if (cachedUser.isPresent()) {
+            var user = cachedUser.get();
+            var result = new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+            result.setDetails(authentication.getDetails());
+            return result;
+        }
+
+        var result = delegate.authenticate(authentication);
+        if (result != null && result.getPrincipal() instanceof User) {
+            credentialsCache.put(username, password, (User) result.getPrincipal());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+}
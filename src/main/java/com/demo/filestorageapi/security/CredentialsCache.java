@@ -0,0 +1,98 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Credentials cache - remembers the users that recently authenticated with a username and password,
+ * so repeated requests skip the BCrypt check and the users query.
+ *
+ * Entries are keyed by an HMAC of the credentials with a random key generated on startup, so the cache never
+ * holds plain passwords and its keys are useless outside this process. The cache is bounded in size and
+ * entries expire after a while, which also bounds how long a password changed outside the api keeps working
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class CredentialsCache {
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final Cache<String, User> cache;
+    private final SecretKeySpec key;
+
+    @Autowired
+    public CredentialsCache(@Value("${security.credentials-cache.max-size:10000}") long maxSize,
+                            @Value("${security.credentials-cache.ttl:PT5M}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        // hits, misses and evictions are published as the cache.* metrics with the tag cache=credentials
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "credentials");
+
+        var keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        this.key = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+    }
+
+    /**
+     * @param username The username sent by the client
+     * @param password The password sent by the client
+     * @return the user that authenticated with these credentials, or {@literal Optional#empty()} if not cached
+     */
+    public Optional<User> get(String username, String password) {
+        return Optional.ofNullable(cache.getIfPresent(toKey(username, password)));
+    }
+
+    /**
+     * Remembers credentials that were just verified
+     * @param username The username sent by the client
+     * @param password The password sent by the client
+     * @param user The authenticated user
+     */
+    public void put(String username, String password, User user) {
+        cache.put(toKey(username, password), user);
+    }
+
+    /**
+     * Forgets all the credentials of a user, e.g. when the password changes
+     * @param userId Id of the user
+     */
+    public void evict(Long userId) {
+        cache.asMap().values().removeIf(user -> user.getId().equals(userId));
+    }
+
+    long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    // the username is included in the mac, and separated by a character not allowed in basic auth usernames
+    private String toKey(String username, String password) {
+        try {
+            var mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            var digest = mac.doFinal((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * JPA entity listener that evicts the cached credentials of a user when it's updated (e.g. its password changes)
+ * or deleted. Hibernate gets it from the spring context, the cache is optional so the listener
+ * also works in contexts without it, like repository tests
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class CredentialsCacheEvictionListener {
+    private final ObjectProvider<CredentialsCache> credentialsCache;
+
+    @Autowired
+    public CredentialsCacheEvictionListener(ObjectProvider<CredentialsCache> credentialsCache) {
+        this.credentialsCache = credentialsCache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void evict(User user) {
+        credentialsCache.ifAvailable(cache -> cache.evict(user.getId()));
+    }
+}
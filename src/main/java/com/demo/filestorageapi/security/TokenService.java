@@ -0,0 +1,148 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+
+/**
+ * Token service - issues and verifies the access tokens clients can use instead of sending their password
+ * on every request.
+ *
+ * Tokens are JWTs signed with HMAC-SHA256 that carry the id and username of the user, so they are verified
+ * without going to the db, and any node sharing the secret accepts them. They can't be revoked, so they are
+ * short-lived and the client gets a new one with its credentials once it expires
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class TokenService {
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_LENGTH = 32;
+    // the only header accepted, so the algorithm can't be picked by whoever sends the token
+    private static final String HEADER = encode("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SecretKeySpec key;
+    private final Duration ttl;
+
+    @Autowired
+    public TokenService(@Value("${security.token.secret:}") String secret,
+                        @Value("${security.token.ttl:PT15M}") Duration ttl) {
+        byte[] keyBytes;
+        if (StringUtils.isEmpty(secret)) {
+            // fine for a single node, but tokens stop working on restart and aren't accepted by other nodes
+            logger.warn("No security.token.secret configured, access tokens are signed with a random key");
+            keyBytes = new byte[MIN_SECRET_LENGTH];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = Base64.getDecoder().decode(secret);
+            if (keyBytes.length < MIN_SECRET_LENGTH) {
+                throw new IllegalArgumentException(
+                        String.format("The token secret must be at least %d bytes long", MIN_SECRET_LENGTH));
+            }
+        }
+        this.key = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+        this.ttl = ttl;
+    }
+
+    /**
+     * Issues an access token for a user
+     *
+     * @param user The authenticated user
+     * @return the signed {@link AccessToken}
+     */
+    public AccessToken issue(User user) {
+        var issuedAt = Instant.now();
+        var expiresAt = issuedAt.plus(ttl);
+
+        var claims = new LinkedHashMap<String, Object>();
+        claims.put("sub", user.getId().toString());
+        claims.put("name", user.getUsername());
+        claims.put("iat", issuedAt.getEpochSecond());
+        claims.put("exp", expiresAt.getEpochSecond());
+
+        try {
+            var content = HEADER + "." + encode(objectMapper.writeValueAsBytes(claims));
+            return new AccessToken(content + "." + encode(sign(content)), expiresAt);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Verifies an access token
+     *
+     * @param token The token sent by the client
+     * @return the {@link User} the token was issued to. It only has its id and username set
+     * @throws BadCredentialsException if the token is malformed or its signature is not valid
+     * @throws CredentialsExpiredException if the token expired
+     */
+    public User verify(String token) {
+        var parts = token.split("\\.", -1);
+        if (parts.length != 3 || !HEADER.equals(parts[0])) {
+            throw new BadCredentialsException("Invalid access token");
+        }
+
+        JsonNode claims;
+        try {
+            var signature = Base64.getUrlDecoder().decode(parts[2]);
+            // constant time comparison, so the signature can't be guessed byte by byte
+            if (!MessageDigest.isEqual(signature, sign(parts[0] + "." + parts[1]))) {
+                throw new BadCredentialsException("Invalid access token");
+            }
+            claims = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+        } catch (IllegalArgumentException | IOException e) {
+            throw new BadCredentialsException("Invalid access token", e);
+        }
+
+        if (!claims.path("sub").isTextual() || !claims.path("name").isTextual() || !claims.path("exp").canConvertToLong()) {
+            throw new BadCredentialsException("Invalid access token");
+        }
+        if (Instant.now().getEpochSecond() >= claims.get("exp").asLong()) {
+            throw new CredentialsExpiredException("The access token expired");
+        }
+
+        try {
+            return new User(Long.valueOf(claims.get("sub").asText()), claims.get("name").asText(), null);
+        } catch (NumberFormatException e) {
+            throw new BadCredentialsException("Invalid access token", e);
+        }
+    }
+
+    private byte[] sign(String content) {
+        try {
+            var mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(content.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
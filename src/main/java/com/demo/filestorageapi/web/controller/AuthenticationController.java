@@ -0,0 +1,51 @@
+package com.demo.filestorageapi.web.controller;
+
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.security.BearerTokenAuthentication;
+import com.demo.filestorageapi.security.TokenService;
+import com.demo.filestorageapi.web.response.AccessTokenResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Authentication REST API - issues access tokens, so clients don't have to send their password on every request
+ *
+ * @author Franklin Grassals
+ */
+@RestController
+@RequestMapping("/auth")
+public class AuthenticationController {
+    private final TokenService tokenService;
+
+    @Autowired
+    public AuthenticationController(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    /**
+     * API method to get an access token. It must be called with basic authentication
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link AccessTokenResponse}
+     */
+    @PostMapping("/token")
+    public ResponseEntity<AccessTokenResponse> createToken(Authentication authentication) {
+        // otherwise a token could be renewed forever without checking the password again
+        if (authentication instanceof BearerTokenAuthentication) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN,
+                    "Access tokens can only be requested with a username and password");
+        }
+
+        var token = tokenService.issue((User) authentication.getPrincipal());
+        return ResponseEntity
+                .ok()
+                .cacheControl(CacheControl.noStore())
+                .body(new AccessTokenResponse(token));
+    }
+}
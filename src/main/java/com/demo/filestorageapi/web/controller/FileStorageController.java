@@ -1,29 +1,47 @@
 package com.demo.filestorageapi.web.controller;
 
+import com.demo.filestorageapi.bulkhead.Transfer;
+import com.demo.filestorageapi.core.model.FileVersion;
 import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.service.FileCursor;
 import com.demo.filestorageapi.core.service.FileStorageService;
-import com.demo.filestorageapi.web.exception.ReadFileForDownloadException;
+import com.demo.filestorageapi.web.download.DownloadResponseFactory;
+import com.demo.filestorageapi.web.download.EntityTags;
 import com.demo.filestorageapi.web.exception.UploadedFileAccessException;
 import com.demo.filestorageapi.web.response.*;
+import com.demo.filestorageapi.web.upload.UploadedBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.sql.SQLException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.stream.Collectors.toList;
 
@@ -35,11 +53,28 @@ import static java.util.stream.Collectors.toList;
 @RestController
 @RequestMapping("/files")
 public class FileStorageController {
+    // clients may keep responses, but must check with the api that they are still valid before using them
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+    // the content of a version never changes, so it can be kept without checking
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate();
+    // newline delimited json, one object per line
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final FileStorageService fileStorageService;
+    private final DownloadResponseFactory downloadResponseFactory;
+    private final ObjectMapper objectMapper;
+
+    // uploads streamed in the request body have the same limit as multipart uploads
+    @Value("${spring.servlet.multipart.max-file-size}")
+    private DataSize maxFileSize;
 
     @Autowired
-    public FileStorageController(FileStorageService fileStorageService) {
+    public FileStorageController(FileStorageService fileStorageService,
+                                 DownloadResponseFactory downloadResponseFactory,
+                                 ObjectMapper objectMapper) {
         this.fileStorageService = fileStorageService;
+        this.downloadResponseFactory = downloadResponseFactory;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -48,7 +83,8 @@ public class FileStorageController {
      * @param authentication Spring security's authentication object (injected at runtime)
      * @return {@link CreatedFileResponse} describing
      */
-    @PostMapping
+    @Transfer
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<BaseFileActionResponse> createFile(@RequestParam MultipartFile file, Authentication authentication) {
         validateUploadedFile(file);
         try {
@@ -71,7 +107,8 @@ public class FileStorageController {
      * @param authentication Spring security's authentication object (injected at runtime)
      * @return {@link UpdatedFileResponse}
      */
-    @PatchMapping("/{fileId}")
+    @Transfer
+    @PatchMapping(path = "/{fileId}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<BaseFileActionResponse> updateFile(@PathVariable Long fileId,
                                                              @RequestParam MultipartFile file,
                                                              Authentication authentication) {
@@ -87,6 +124,61 @@ public class FileStorageController {
         }
     }
 
+    /**
+     * API method to create a new file from the request body. The body is streamed straight to the storage
+     * while it's read, without being buffered in a temp file first as multipart uploads are. It's read on
+     * a transfer thread, so slow clients don't hold a request thread
+     * @param filename Filename of the new file
+     * @param request The current request, its body is the content of the file and its Content-Type the file's
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link CreatedFileResponse} describing
+     */
+    @Transfer
+    @PostMapping(consumes = "!" + MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Callable<ResponseEntity<BaseFileActionResponse>> createFileFromBody(@RequestParam String filename,
+                                                                               HttpServletRequest request,
+                                                                               Authentication authentication) {
+        if (StringUtils.isEmpty(filename)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Please upload a valid file");
+        }
+        // the current request isn't available on the transfer thread
+        var contextPath = ServletUriComponentsBuilder.fromCurrentContextPath();
+        return () -> {
+            var storedFile = fileStorageService.storeFile(filename, UploadedBody.open(request, maxFileSize.toBytes()),
+                    request.getContentLengthLong(), UploadedBody.getContentType(request),
+                    getCurrentUser(authentication));
+
+            var uri = buildURI(contextPath, String.valueOf(storedFile.getId()));
+            return ResponseEntity
+                    .created(uri)
+                    .body(new CreatedFileResponse(storedFile, uri));
+        };
+    }
+
+    /**
+     * API method to add a new version to a file from the request body. The body is streamed straight
+     * to the storage while it's read, on a transfer thread
+     * @param fileId The Id of the file
+     * @param request The current request, its body is the content of the file and its Content-Type the file's
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link UpdatedFileResponse}
+     */
+    @Transfer
+    @PatchMapping(path = "/{fileId}", consumes = "!" + MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Callable<ResponseEntity<BaseFileActionResponse>> updateFileFromBody(@PathVariable Long fileId,
+                                                                               HttpServletRequest request,
+                                                                               Authentication authentication) {
+        var contextPath = ServletUriComponentsBuilder.fromCurrentContextPath();
+        return () -> {
+            var updatedFile = fileStorageService.updateFile(fileId, getCurrentUser(authentication),
+                    UploadedBody.open(request, maxFileSize.toBytes()), request.getContentLengthLong(),
+                    UploadedBody.getContentType(request));
+
+            var uri = buildURI(contextPath, String.valueOf(updatedFile.getId()));
+            return ResponseEntity.ok(new UpdatedFileResponse(updatedFile, uri));
+        };
+    }
+
     /**
      * API method to delete a file
      * @param fileId The Id of the file to be deleted
@@ -102,19 +194,91 @@ public class FileStorageController {
     }
 
     /**
-     * API method to get a list of files owned by the authenticated user
+     * API method to delete many files at once, e.g. DELETE /files?id=1&amp;id=2 or DELETE /files?id=1,2
+     * @param fileIds The Ids of the files to be deleted
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return List of {@link DeletedFileResponse} objects, ids that don't match a file are left out
+     */
+    @DeleteMapping
+    public ResponseEntity<List<BaseFileActionResponse>> deleteFiles(@RequestParam("id") List<Long> fileIds,
+                                                                    Authentication authentication) {
+        var deletedFiles = fileStorageService.deleteFiles(fileIds, getCurrentUser(authentication));
+
+        return ResponseEntity.ok(deletedFiles.stream()
+                .map(file -> new DeletedFileResponse(file, buildURI(String.valueOf(file.getId()))))
+                .collect(toList()));
+    }
+
+    /**
+     * API method to get a page of the files owned by the authenticated user. When there are more files,
+     * the Link header points to the next page
+     * @param prefix Only files whose filename starts with it are returned
+     * @param contentType Only files with this content type are returned
+     * @param after The cursor of the page, as given in the Link header of the previous one
+     * @param limit The maximum number of files to return
      * @param authentication Spring security's authentication object (injected at runtime)
      * @return List of {@link FileResponse} objects
      */
     @GetMapping
-    public ResponseEntity<List<FileResponse>> getFiles(Authentication authentication) {
+    public ResponseEntity<List<FileResponse>> getFiles(@RequestParam(required = false) String prefix,
+                                                       @RequestParam(required = false) String contentType,
+                                                       @RequestParam(required = false) String after,
+                                                       @RequestParam(defaultValue = "100") int limit,
+                                                       Authentication authentication) {
+        var cursor = StringUtils.isEmpty(after) ? null : FileCursor.decode(after);
+        var files = fileStorageService.getFiles(getCurrentUser(authentication), prefix, contentType, cursor, limit);
+
+        var response = ResponseEntity.ok();
+        // a full page means there may be more files
+        if (files.size() == limit) {
+            var next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", FileCursor.after(files.get(files.size() - 1)).encode())
+                    .build().toUri();
+            response.header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", next));
+        }
+
         // convert the UserFile Objects to FileResponse
-        var files = fileStorageService.getFiles(getCurrentUser(authentication))
-                .stream()
+        return response.body(files.stream()
                 .map(FileResponse::new)
-                .collect(toList());
+                .collect(toList()));
+    }
+
+    /**
+     * API method to export all the files owned by the authenticated user as newline delimited json, for clients
+     * that send "Accept: application/x-ndjson". Each file is written to the response as it's read from the db,
+     * so the list is never held in memory
+     * @param prefix Only files whose filename starts with it are returned
+     * @param contentType Only files with this content type are returned
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @param response The current response
+     * @throws IOException if the response can't be written
+     */
+    @Transfer
+    @GetMapping(produces = APPLICATION_NDJSON_VALUE)
+    public void exportFiles(@RequestParam(required = false) String prefix,
+                            @RequestParam(required = false) String contentType,
+                            Authentication authentication,
+                            HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
 
-        return ResponseEntity.ok(files);
+        // the response is flushed when its buffer fills up, not after every file
+        var writer = objectMapper.writerFor(FileResponse.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (var generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            // each file goes on its own line, without the space jackson writes between values
+            generator.setRootValueSeparator(null);
+            fileStorageService.forEachFile(getCurrentUser(authentication), prefix, contentType, file -> {
+                try {
+                    writer.writeValue(generator, new FileResponse(file));
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    // e.g. the client went away
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     /**
@@ -126,25 +290,28 @@ public class FileStorageController {
     @GetMapping("/{fileId}")
     public ResponseEntity<FileResponse> getFile(@PathVariable Long fileId, Authentication authentication)  {
         var file = fileStorageService.getFile(fileId, getCurrentUser(authentication));
-        return ResponseEntity.ok(new FileResponse(file));
+        // a new version changes the metadata, conditional requests are answered with 304 by spring
+        return ResponseEntity.ok()
+                .eTag(EntityTags.forVersion(file.getVersion()))
+                .lastModified(toZonedDateTime(file.getLastModifiedAt()))
+                .cacheControl(REVALIDATE)
+                .body(new FileResponse(file));
     }
 
     /**
-     * Downloads the content of the newest version of a file
+     * Downloads the content of the newest version of a file, or the ranges of it given in the Range header
      * @param fileId The Id of the file
      * @param authentication Spring security's authentication object (injected at runtime)
-     * @return a {@link Resource} stream with the file contents
+     * @param request The current request
+     * @return the file contents, streamed on a transfer thread
      */
+    @Transfer
     @GetMapping("/{fileId}/download")
-    public ResponseEntity<Resource> downloadFile(@PathVariable Long fileId, Authentication authentication)  {
-        var file = fileStorageService.getFile(fileId, getCurrentUser(authentication));
-        try {
-            // the file contents will be streamed to the caller
-            var resource = new InputStreamResource(file.getContent().getBinaryStream());
-            return buildDownloadResponseEntity(file.getFilename(), file.getContentType(), resource);
-        } catch (SQLException e) {
-            throw new ReadFileForDownloadException(e);
-        }
+    public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable Long fileId,
+                                                              Authentication authentication,
+                                                              HttpServletRequest request)  {
+        var content = fileStorageService.getFileContent(fileId, getCurrentUser(authentication));
+        return downloadResponseFactory.build(request, content, REVALIDATE);
     }
 
     /**
@@ -156,13 +323,14 @@ public class FileStorageController {
     @GetMapping("/{fileId}/versions")
     public ResponseEntity<List<FileVersionResponse>> getFileVersions(@PathVariable Long fileId,
                                                                      Authentication authentication)  {
-        var versions = fileStorageService
-                .getFileVersions(fileId, getCurrentUser(authentication))
-                .stream()
-                .map(FileVersionResponse::new)
-                .collect(toList());
-
-        return ResponseEntity.ok(versions);
+        var versions = fileStorageService.getFileVersions(fileId, getCurrentUser(authentication));
+        // no Last-Modified, pruning or deleting a version changes the list without adding a newer one
+        return ResponseEntity.ok()
+                .eTag(EntityTags.forVersions(versions.stream().map(FileVersion::getUuid).collect(toList())))
+                .cacheControl(REVALIDATE)
+                .body(versions.stream()
+                        .map(FileVersionResponse::new)
+                        .collect(toList()));
     }
 
     /**
@@ -177,35 +345,34 @@ public class FileStorageController {
                                                                @PathVariable UUID versionUUID,
                                                                Authentication authentication)  {
         var version = fileStorageService.getFileVersion(versionUUID, fileId, getCurrentUser(authentication));
-        return ResponseEntity.ok(new FileVersionResponse(version));
+        return ResponseEntity.ok()
+                .eTag(EntityTags.forVersion(version.getUuid()))
+                .lastModified(toZonedDateTime(version.getCreatedAt()))
+                .cacheControl(REVALIDATE)
+                .body(new FileVersionResponse(version));
     }
 
     /**
-     * Downloads the content for a specific version of a file
+     * Downloads the content for a specific version of a file, or the ranges of it given in the Range header
      * @param fileId The Id of the file
      * @param versionUUID The UUID of the file version
      * @param authentication Spring security's authentication object (injected at runtime)
-     * @return a {@link Resource} stream with the file contents
+     * @param request The current request
+     * @return the file contents, streamed on a transfer thread
      */
+    @Transfer
     @GetMapping("/{fileId}/versions/{versionUUID}/download")
-    public ResponseEntity<Resource> downloadFileVersion(@PathVariable Long fileId,
-                                                        @PathVariable UUID versionUUID,
-                                                        Authentication authentication)  {
-        var version = fileStorageService.getFileVersion(versionUUID, fileId, getCurrentUser(authentication));
-        try {
-            var resource = new InputStreamResource(version.getContent().getBinaryStream());
-            return buildDownloadResponseEntity(version.getFile().getFilename(), version.getFile().getContentType(), resource);
-        } catch (SQLException e) {
-            throw new ReadFileForDownloadException(e);
-        }
+    public ResponseEntity<StreamingResponseBody> downloadFileVersion(@PathVariable Long fileId,
+                                                                     @PathVariable UUID versionUUID,
+                                                                     Authentication authentication,
+                                                                     HttpServletRequest request)  {
+        var content = fileStorageService.getFileVersionContent(versionUUID, fileId, getCurrentUser(authentication));
+        return downloadResponseFactory.build(request, content, IMMUTABLE);
     }
 
-    // builds a response entity containing a file resource to download
-    private ResponseEntity<Resource> buildDownloadResponseEntity(String filename, String contentType, Resource resource) {
-        return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", filename))
-                .body(resource);
+    // dates are stored in the server's time zone
+    private ZonedDateTime toZonedDateTime(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault());
     }
 
     // gets the current authenticated user
@@ -222,8 +389,11 @@ public class FileStorageController {
 
     // returns the url for a given resource specified in path
     private URI buildURI(String path) {
-        return ServletUriComponentsBuilder
-                .fromCurrentContextPath()
+        return buildURI(ServletUriComponentsBuilder.fromCurrentContextPath(), path);
+    }
+
+    private URI buildURI(UriComponentsBuilder contextPath, String path) {
+        return contextPath
                 .path(String.format("/files/%s", path))
                 .build().toUri();
     }
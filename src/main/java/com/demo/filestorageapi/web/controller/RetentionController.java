@@ -0,0 +1,87 @@
+package com.demo.filestorageapi.web.controller;
+
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.service.RetentionService;
+import com.demo.filestorageapi.web.response.RetentionPolicyResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Retention policies REST API - limits the versions kept of the files of a user, or of a single file
+ *
+ * @author Franklin Grassals
+ */
+@RestController
+public class RetentionController {
+    private final RetentionService retentionService;
+
+    @Autowired
+    public RetentionController(RetentionService retentionService) {
+        this.retentionService = retentionService;
+    }
+
+    /**
+     * API method to get the retention policy of the authenticated user
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link RetentionPolicyResponse}
+     */
+    @GetMapping("/retention")
+    public ResponseEntity<RetentionPolicyResponse> getUserPolicy(Authentication authentication) {
+        var policy = retentionService.getUserPolicy(getCurrentUser(authentication));
+        return ResponseEntity.ok(new RetentionPolicyResponse(policy));
+    }
+
+    /**
+     * API method to set the retention policy of the authenticated user, it applies to all their files
+     * without a policy of their own. Leaving out both limits removes the policy
+     * @param maxVersions The number of newest versions kept of each file
+     * @param maxAgeDays Versions older than this many days are pruned
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link RetentionPolicyResponse}
+     */
+    @PutMapping("/retention")
+    public ResponseEntity<RetentionPolicyResponse> setUserPolicy(@RequestParam(required = false) Integer maxVersions,
+                                                                 @RequestParam(required = false) Integer maxAgeDays,
+                                                                 Authentication authentication) {
+        var policy = retentionService.setUserPolicy(getCurrentUser(authentication), maxVersions, maxAgeDays);
+        return ResponseEntity.ok(new RetentionPolicyResponse(policy));
+    }
+
+    /**
+     * API method to get the retention policy of a file
+     * @param fileId The Id of the file
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link RetentionPolicyResponse}
+     */
+    @GetMapping("/files/{fileId}/retention")
+    public ResponseEntity<RetentionPolicyResponse> getFilePolicy(@PathVariable Long fileId,
+                                                                 Authentication authentication) {
+        var policy = retentionService.getFilePolicy(fileId, getCurrentUser(authentication));
+        return ResponseEntity.ok(new RetentionPolicyResponse(policy));
+    }
+
+    /**
+     * API method to set the retention policy of a file, replacing the user's. Leaving out both limits
+     * removes the policy, so the user's applies again
+     * @param fileId The Id of the file
+     * @param maxVersions The number of newest versions kept
+     * @param maxAgeDays Versions older than this many days are pruned
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link RetentionPolicyResponse}
+     */
+    @PutMapping("/files/{fileId}/retention")
+    public ResponseEntity<RetentionPolicyResponse> setFilePolicy(@PathVariable Long fileId,
+                                                                 @RequestParam(required = false) Integer maxVersions,
+                                                                 @RequestParam(required = false) Integer maxAgeDays,
+                                                                 Authentication authentication) {
+        var policy = retentionService.setFilePolicy(fileId, getCurrentUser(authentication), maxVersions, maxAgeDays);
+        return ResponseEntity.ok(new RetentionPolicyResponse(policy));
+    }
+
+    // gets the current authenticated user
+    private User getCurrentUser(Authentication authentication) {
+        return (User) authentication.getPrincipal();
+    }
+}
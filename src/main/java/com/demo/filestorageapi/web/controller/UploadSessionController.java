@@ -0,0 +1,150 @@
+package com.demo.filestorageapi.web.controller;
+
+import com.demo.filestorageapi.bulkhead.Transfer;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.service.UploadSessionService;
+import com.demo.filestorageapi.web.response.BaseFileActionResponse;
+import com.demo.filestorageapi.web.response.CreatedFileResponse;
+import com.demo.filestorageapi.web.response.UpdatedFileResponse;
+import com.demo.filestorageapi.web.response.UploadSessionResponse;
+import com.demo.filestorageapi.web.upload.UploadedBody;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.net.URI;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Chunked uploads REST API - uploads files too large for a single request in numbered chunks
+ *
+ * @author Franklin Grassals
+ */
+@RestController
+@RequestMapping("/uploads")
+public class UploadSessionController {
+    private final UploadSessionService uploadSessionService;
+
+    @Value("${storage.upload.max-chunk-size:50MB}")
+    private DataSize maxChunkSize;
+
+    @Autowired
+    public UploadSessionController(UploadSessionService uploadSessionService) {
+        this.uploadSessionService = uploadSessionService;
+    }
+
+    /**
+     * API method to start a chunked upload
+     * @param filename Filename of the new file, not needed when adding a version
+     * @param contentType Content type of the file
+     * @param size Size of the whole file in bytes
+     * @param fileId Id of the file to add a version to, or none to create a new file
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link UploadSessionResponse}
+     */
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> createUpload(@RequestParam(required = false) String filename,
+                                                              @RequestParam(required = false) String contentType,
+                                                              @RequestParam long size,
+                                                              @RequestParam(required = false) Long fileId,
+                                                              Authentication authentication) {
+        var session = uploadSessionService.createSession(filename, contentType, size, fileId,
+                getCurrentUser(authentication));
+
+        var uri = buildURI(String.format("/uploads/%s", session.getId()));
+        return ResponseEntity
+                .created(uri)
+                .body(new UploadSessionResponse(session, Collections.emptySortedMap(), uri));
+    }
+
+    /**
+     * API method to get the state of a chunked upload, e.g. to know which chunks to send again after a failure
+     * @param uploadId The Id of the upload
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link UploadSessionResponse}
+     */
+    @GetMapping("/{uploadId}")
+    public ResponseEntity<UploadSessionResponse> getUpload(@PathVariable UUID uploadId, Authentication authentication) {
+        var user = getCurrentUser(authentication);
+        var session = uploadSessionService.getSession(uploadId, user);
+        var chunks = uploadSessionService.getChunks(uploadId, user);
+
+        return ResponseEntity.ok(new UploadSessionResponse(session, chunks, buildURI(String.format("/uploads/%s", uploadId))));
+    }
+
+    /**
+     * API method to upload a chunk as the request body. Chunks can be sent in any order, or in parallel.
+     * The body is read on a transfer thread, so slow clients don't hold a request thread
+     * @param uploadId The Id of the upload
+     * @param number The number of the chunk, starting at 1
+     * @param request The current request, its body is the content of the chunk
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return an empty response
+     */
+    @Transfer
+    @PutMapping("/{uploadId}/chunks/{number}")
+    public Callable<ResponseEntity<Void>> putChunk(@PathVariable UUID uploadId,
+                                                   @PathVariable int number,
+                                                   HttpServletRequest request,
+                                                   Authentication authentication) {
+        return () -> {
+            uploadSessionService.putChunk(uploadId, number, UploadedBody.open(request, maxChunkSize.toBytes()),
+                    getCurrentUser(authentication));
+            return ResponseEntity.noContent().build();
+        };
+    }
+
+    /**
+     * API method to finish a chunked upload once all the chunks were sent
+     * @param uploadId The Id of the upload
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return {@link CreatedFileResponse} or {@link UpdatedFileResponse} when adding a version
+     */
+    @Transfer
+    @PostMapping("/{uploadId}/commit")
+    public ResponseEntity<BaseFileActionResponse> commitUpload(@PathVariable UUID uploadId, Authentication authentication) {
+        var user = getCurrentUser(authentication);
+        var session = uploadSessionService.getSession(uploadId, user);
+        var file = uploadSessionService.commit(uploadId, user);
+
+        var uri = buildURI(String.format("/files/%s", file.getId()));
+        if (session.getFile() != null) {
+            return ResponseEntity.ok(new UpdatedFileResponse(file, uri));
+        }
+        return ResponseEntity
+                .created(uri)
+                .body(new CreatedFileResponse(file, uri));
+    }
+
+    /**
+     * API method to cancel a chunked upload
+     * @param uploadId The Id of the upload
+     * @param authentication Spring security's authentication object (injected at runtime)
+     * @return an empty response
+     */
+    @DeleteMapping("/{uploadId}")
+    public ResponseEntity<Void> cancelUpload(@PathVariable UUID uploadId, Authentication authentication) {
+        uploadSessionService.cancel(uploadId, getCurrentUser(authentication));
+        return ResponseEntity.noContent().build();
+    }
+
+    // gets the current authenticated user
+    private User getCurrentUser(Authentication authentication) {
+        return (User) authentication.getPrincipal();
+    }
+
+    // returns the url for a given path
+    private URI buildURI(String path) {
+        return ServletUriComponentsBuilder
+                .fromCurrentContextPath()
+                .path(path)
+                .build().toUri();
+    }
+}
@@ -0,0 +1,449 @@
+package com.demo.filestorageapi.web.download;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import com.demo.filestorageapi.core.storage.FileContent;
+import com.demo.filestorageapi.web.exception.ReadFileForDownloadException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the responses of the download endpoints.
+ *
+ * Supports conditional requests (RFC 7232): responses carry an {@code ETag} based on the content digest and a
+ * {@code Last-Modified} date, and {@code If-None-Match}/{@code If-Modified-Since} return a 304 response without
+ * opening the content.
+ *
+ * Supports range requests (RFC 7233): a {@code Range} header returns a 206 response with only the requested
+ * ranges, read by seeking within the stored content, and {@code If-Range} makes sure the ranges are only used
+ * when the content hasn't changed. Content stored in the local filesystem is sent with sendfile when the
+ * connector supports it.
+ *
+ * Content stored compressed is sent as stored, with a {@code Content-Encoding} header, to clients whose
+ * {@code Accept-Encoding} allows it, and decompressed on the fly for the rest and for range requests.
+ *
+ * Bodies are {@link StreamingResponseBody}s, so they are written on a transfer thread once the request thread
+ * is released (see {@link com.demo.filestorageapi.config.TransferConfig}). The content is opened before, so
+ * errors opening it still get an error response, except for content kept in the database or small content that
+ * isn't in the {@link com.demo.filestorageapi.core.service.ContentCache} yet, which are only read once the body
+ * runs so the request thread doesn't wait for them. A body may never run, e.g. when the client goes away or the
+ * request times out while it waits for a transfer thread, so its content is also closed when the request completes.
+ *
+ * The bytes sent and the bodies being streamed are published as the {@code storage.download.*} metrics
+ *
+ * @author Franklin Grassals
+ */
+@Component
+public class DownloadResponseFactory {
+    // request attributes used by tomcat to send a file with sendfile once the request has been processed
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private static final String BYTES_UNIT = "bytes";
+
+    // key of the interceptor that closes the content of a body once the async request completes
+    static final String CLOSE_CONTENT_INTERCEPTOR = DownloadResponseFactory.class.getName() + ".closeContent";
+
+    private final Counter streamedBytes;
+    private final Counter sendfileBytes;
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    @Value("${storage.download.sendfile.enabled:true}")
+    private boolean sendfileEnabled;
+
+    @Autowired
+    public DownloadResponseFactory(MeterRegistry meterRegistry) {
+        this.streamedBytes = downloadedBytes(meterRegistry, "stream");
+        this.sendfileBytes = downloadedBytes(meterRegistry, "sendfile");
+        Gauge.builder("storage.download.active", activeStreams, AtomicInteger::get)
+                .description("Download bodies being streamed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds a response entity containing the content to download, or the requested ranges of it
+     * @param request The current request
+     * @param content The content to download
+     * @param cacheControl The caching policy of the content
+     * @return the response entity
+     */
+    public ResponseEntity<StreamingResponseBody> build(HttpServletRequest request, FileContent content,
+                                                       CacheControl cacheControl) {
+        var encoded = content.getEncoded()
+                .filter(e -> acceptsEncoding(request.getHeader(HttpHeaders.ACCEPT_ENCODING), e.getEncoding()));
+        if (isNotModified(request, content)) {
+            var response = buildHeaders(ResponseEntity.status(HttpStatus.NOT_MODIFIED), content, cacheControl);
+            encoded.ifPresent(e -> response.eTag(EntityTags.forEncodedContent(content, e.getEncoding())));
+            return response.build();
+        }
+
+        var rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null || !isIfRangeSatisfied(request, content)) {
+            return buildFullResponse(request, content, encoded, cacheControl);
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // invalid range headers are ignored, as recommended by the spec
+            return buildFullResponse(request, content, encoded, cacheControl);
+        }
+
+        var satisfiableRanges = getSatisfiableRanges(ranges, content.getSize());
+        if (satisfiableRanges.isEmpty() || getTotalLength(satisfiableRanges) > content.getSize()) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, String.format("%s */%d", BYTES_UNIT, content.getSize()))
+                    .build();
+        }
+
+        if (satisfiableRanges.size() == 1) {
+            return buildSingleRangeResponse(request, content, cacheControl, satisfiableRanges.get(0));
+        }
+        return buildMultipleRangesResponse(request, content, cacheControl, satisfiableRanges);
+    }
+
+    private ResponseEntity<StreamingResponseBody> buildFullResponse(HttpServletRequest request, FileContent content,
+                                                                    Optional<FileContent.Encoded> encoded,
+                                                                    CacheControl cacheControl) {
+        if (encoded.isPresent()) {
+            return buildEncodedResponse(request, content, encoded.get(), cacheControl);
+        }
+        var response = buildHeaders(ResponseEntity.ok(), content, cacheControl)
+                .contentType(MediaType.parseMediaType(content.getContentType()))
+                .contentLength(content.getSize());
+
+        if (content.getPath().isPresent() && prepareSendfile(request, content.getPath().get(), 0, content.getSize())) {
+            // the body is written by tomcat after the request has been processed
+            return response.build();
+        }
+        return response.body(body(request, open(content, 0, content.getSize())));
+    }
+
+    // the stored content is sent as is, it's a different representation so it gets its own entity tag.
+    // Ranges always refer to the decoded content, so they are served from it
+    private ResponseEntity<StreamingResponseBody> buildEncodedResponse(HttpServletRequest request,
+                                                                       FileContent content,
+                                                                       FileContent.Encoded encoded,
+                                                                       CacheControl cacheControl) {
+        var response = buildHeaders(ResponseEntity.ok(), content, cacheControl)
+                .eTag(EntityTags.forEncodedContent(content, encoded.getEncoding()))
+                .header(HttpHeaders.CONTENT_ENCODING, encoded.getEncoding())
+                .contentType(MediaType.parseMediaType(content.getContentType()))
+                .contentLength(encoded.getSize());
+
+        if (encoded.getPath().isPresent() && prepareSendfile(request, encoded.getPath().get(), 0, encoded.getSize())) {
+            return response.build();
+        }
+        try {
+            return response.body(body(request, encoded.open()));
+        } catch (BlobStoreException e) {
+            throw new ReadFileForDownloadException(e);
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> buildSingleRangeResponse(HttpServletRequest request,
+                                                                           FileContent content,
+                                                                           CacheControl cacheControl, Range range) {
+        var response = buildHeaders(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), content, cacheControl)
+                .contentType(MediaType.parseMediaType(content.getContentType()))
+                .contentLength(range.getLength())
+                .header(HttpHeaders.CONTENT_RANGE, range.toContentRange(content.getSize()));
+
+        if (content.getPath().isPresent() && prepareSendfile(request, content.getPath().get(), range.start, range.end + 1)) {
+            return response.build();
+        }
+        return response.body(body(request, open(content, range.start, range.getLength())));
+    }
+
+    // the ranges are sent as a multipart/byteranges body, each range is only opened when the previous one was sent
+    private ResponseEntity<StreamingResponseBody> buildMultipleRangesResponse(HttpServletRequest request,
+                                                                              FileContent content,
+                                                                              CacheControl cacheControl,
+                                                                              List<Range> ranges) {
+        var boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        var parts = new ArrayList<PartSource>();
+        long contentLength = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            var range = ranges.get(i);
+            var partHeader = String.format("%s--%s\r\n%s: %s\r\n%s: %s\r\n\r\n",
+                    i == 0 ? "" : "\r\n", boundary,
+                    HttpHeaders.CONTENT_TYPE, content.getContentType(),
+                    HttpHeaders.CONTENT_RANGE, range.toContentRange(content.getSize())).getBytes(StandardCharsets.US_ASCII);
+            parts.add(() -> new ByteArrayInputStream(partHeader));
+            parts.add(() -> open(content, range.start, range.getLength()));
+            contentLength += partHeader.length + range.getLength();
+        }
+        var end = String.format("\r\n--%s--\r\n", boundary).getBytes(StandardCharsets.US_ASCII);
+        parts.add(() -> new ByteArrayInputStream(end));
+        contentLength += end.length;
+
+        var partsIterator = parts.iterator();
+        return buildHeaders(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), content, cacheControl)
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .contentLength(contentLength)
+                .body(body(request, new SequenceInputStream(new Enumeration<>() {
+                    @Override
+                    public boolean hasMoreElements() {
+                        return partsIterator.hasNext();
+                    }
+
+                    @Override
+                    public InputStream nextElement() {
+                        return partsIterator.next().open();
+                    }
+                })));
+    }
+
+    private ResponseEntity.BodyBuilder buildHeaders(ResponseEntity.BodyBuilder builder, FileContent content,
+                                                    CacheControl cacheControl) {
+        builder.header(HttpHeaders.CONTENT_DISPOSITION, String.format("attachment; filename=\"%s\"", content.getFilename()))
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT)
+                .eTag(EntityTags.forContent(content))
+                .cacheControl(cacheControl);
+        if (content.getLastModifiedAt() != null) {
+            builder.lastModified(content.getLastModifiedAt().atZone(ZoneId.systemDefault()));
+        }
+        if (content.getEncoded().isPresent()) {
+            // caches must not hand the compressed content to clients that don't accept it
+            builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        return builder;
+    }
+
+    // checks an Accept-Encoding header, codings listed with q=0 are refused
+    private boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        var wildcard = false;
+        for (String coding : acceptEncoding.split(",")) {
+            var parts = coding.split(";");
+            var name = parts[0].trim();
+            var accepted = true;
+            for (var i = 1; i < parts.length; i++) {
+                var param = parts[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(encoding)) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+
+    // ranges are only honored if the If-Range validator matches the current content, or if there is no If-Range
+    private boolean isIfRangeSatisfied(HttpServletRequest request, FileContent content) {
+        var ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("W/")) {
+            // weak entity tags can't be used for ranges
+            return false;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(EntityTags.forContent(content));
+        }
+        if (content.getLastModifiedAt() == null) {
+            return false;
+        }
+        try {
+            // http dates have a precision of seconds
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == getLastModifiedEpochSecond(content);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // If-None-Match takes precedence over If-Modified-Since, as the spec requires
+    private boolean isNotModified(HttpServletRequest request, FileContent content) {
+        var ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            return EntityTags.matches(ifNoneMatch, EntityTags.forContent(content)) || content.getEncoded()
+                    .map(encoded -> EntityTags.matches(ifNoneMatch,
+                            EntityTags.forEncodedContent(content, encoded.getEncoding())))
+                    .orElse(false);
+        }
+        if (content.getLastModifiedAt() == null) {
+            return false;
+        }
+        try {
+            var ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+            return ifModifiedSince != -1 && getLastModifiedEpochSecond(content) <= ifModifiedSince / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private long getLastModifiedEpochSecond(FileContent content) {
+        return content.getLastModifiedAt().atZone(ZoneId.systemDefault()).toEpochSecond();
+    }
+
+    // ranges that start after the end of the content are left out
+    private List<Range> getSatisfiableRanges(List<HttpRange> ranges, long size) {
+        var satisfiable = new ArrayList<Range>();
+        for (HttpRange range : ranges) {
+            try {
+                satisfiable.add(new Range(range.getRangeStart(size), range.getRangeEnd(size)));
+            } catch (IllegalArgumentException e) {
+                // not satisfiable
+            }
+        }
+        satisfiable.removeIf(range -> range.start > range.end);
+        return satisfiable;
+    }
+
+    private long getTotalLength(List<Range> ranges) {
+        return ranges.stream().mapToLong(Range::getLength).sum();
+    }
+
+    // asks tomcat to copy the file straight from the page cache to the socket, without going through the heap
+    private boolean prepareSendfile(HttpServletRequest request, Path path, long start, long end) {
+        if (!sendfileEnabled || start == end || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_FILENAME_ATTR, path.toString());
+        request.setAttribute(SENDFILE_START_ATTR, start);
+        request.setAttribute(SENDFILE_END_ATTR, end);
+        // tomcat doesn't report the bytes it sends, so they are counted as if they were sent in full
+        sendfileBytes.increment(end - start);
+        return true;
+    }
+
+    private StreamingResponseBody body(HttpServletRequest request, InputStream in) {
+        var stream = new MeteredInputStream(in);
+        // closing it again once the body has run does nothing
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(CLOSE_CONTENT_INTERCEPTOR,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) throws Exception {
+                        stream.close();
+                    }
+                });
+        return out -> {
+            activeStreams.incrementAndGet();
+            try (stream) {
+                stream.transferTo(out);
+            } finally {
+                activeStreams.decrementAndGet();
+            }
+        };
+    }
+
+    private static Counter downloadedBytes(MeterRegistry meterRegistry, String transfer) {
+        return Counter.builder("storage.download.size")
+                .description("Bytes sent by the downloads, its rate is the download throughput")
+                .baseUnit("bytes")
+                .tag("transfer", transfer)
+                .register(meterRegistry);
+    }
+
+    private InputStream open(FileContent content, long offset, long length) {
+        try {
+            return content.open(offset, length);
+        } catch (BlobStoreException e) {
+            throw new ReadFileForDownloadException(e);
+        }
+    }
+
+    // counts the bytes read by the response. It's closed by the body or when the request completes, whichever is first
+    private class MeteredInputStream extends FilterInputStream {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        MeteredInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            var b = super.read();
+            if (b >= 0) {
+                streamedBytes.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            var read = super.read(b, off, len);
+            if (read > 0) {
+                streamedBytes.increment(read);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed.compareAndSet(false, true)) {
+                super.close();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface PartSource {
+        InputStream open();
+    }
+
+    // an inclusive byte range
+    private static class Range {
+        final long start;
+        final long end;
+
+        Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        long getLength() {
+            return end - start + 1;
+        }
+
+        String toContentRange(long size) {
+            return String.format("%s %d-%d/%d", BYTES_UNIT, start, end, size);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.demo.filestorageapi.web.download;
+
+import com.demo.filestorageapi.core.storage.FileContent;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Builds the entity tags (ETag header values) of the API responses.
+ *
+ * File versions are immutable, so the digest of the content identifies a download and the version UUID
+ * identifies the metadata of a version
+ *
+ * @author Franklin Grassals
+ */
+public final class EntityTags {
+    private EntityTags() {
+    }
+
+    /**
+     * @param content The downloaded content
+     * @return the strong entity tag of the content, based on its SHA-256 digest when known
+     */
+    public static String forContent(FileContent content) {
+        return content.getContentHash() != null ? quote(content.getContentHash()) : forVersion(content.getVersion());
+    }
+
+    /**
+     * @param content The downloaded content
+     * @param encoding The encoding the content is sent with, e.g. "gzip"
+     * @return the strong entity tag of the encoded content, which must differ from the tag of the content
+     */
+    public static String forEncodedContent(FileContent content, String encoding) {
+        var tag = forContent(content);
+        return tag.substring(0, tag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    /**
+     * @param version UUID of a file version
+     * @return the entity tag of the metadata of the version
+     */
+    public static String forVersion(UUID version) {
+        return quote(version.toString());
+    }
+
+    /**
+     * @param versions UUIDs of a list of file versions
+     * @return the entity tag of the list
+     */
+    public static String forVersions(List<UUID> versions) {
+        var joined = new StringBuilder();
+        versions.forEach(uuid -> joined.append(uuid).append(','));
+        return quote(DigestUtils.md5DigestAsHex(joined.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * Checks whether an entity tag is listed in an If-None-Match or If-Range header, using the weak comparison
+     * @param header The header value, may be null
+     * @param etag The entity tag
+     * @return true if the header contains the entity tag or "*"
+     */
+    public static boolean matches(String header, String etag) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || stripWeakPrefix(candidate).equals(stripWeakPrefix(etag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+}
@@ -4,11 +4,17 @@ import com.demo.filestorageapi.core.exception.FileAlreadyExistsException;
 import com.demo.filestorageapi.core.exception.FileContentTypeMismatch;
 import com.demo.filestorageapi.core.exception.FileNotFoundException;
 import com.demo.filestorageapi.core.exception.FileVersionNotFoundException;
+import com.demo.filestorageapi.core.exception.InvalidArgumentException;
+import com.demo.filestorageapi.core.exception.UploadSessionNotFoundException;
 import com.demo.filestorageapi.web.controller.FileStorageController;
+import com.demo.filestorageapi.web.controller.UploadSessionController;
 import com.demo.filestorageapi.web.response.ErrorResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.TypeMismatchException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -22,10 +28,11 @@ import org.springframework.web.servlet.NoHandlerFoundException;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 /**
- * Handles exceptions for {@link FileStorageController}
+ * Handles exceptions for {@link FileStorageController} and {@link UploadSessionController}
  *
  * To keep things simple, this will override the default handler {@link ResponseEntityExceptionHandler} and any
- * unhandled exception will return a 500 code with a generic message
+ * unhandled exception will return a 500 code with a generic message. Every handled exception is counted
+ * in the {@code storage.errors} metric, tagged with its type and the response status
  *
  * @author Franklin Grassals
  */
@@ -33,9 +40,16 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 public class FileStorageExceptionHandler {
     protected final Log logger = LogFactory.getLog(getClass());
 
+    private final MeterRegistry meterRegistry;
+
     @Value("${spring.servlet.multipart.max-file-size}")
     private String maxFileSize;
 
+    @Autowired
+    public FileStorageExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     /**
      * Handles exceptions returning an {@link ErrorResponse} object with the exception information
      * @param e The exception thrown
@@ -46,6 +60,8 @@ public class FileStorageExceptionHandler {
             FileAlreadyExistsException.class,
             FileNotFoundException.class,
             FileVersionNotFoundException.class,
+            UploadSessionNotFoundException.class,
+            InvalidArgumentException.class,
             TypeMismatchException.class,
             NoHandlerFoundException.class,
             FileContentTypeMismatch.class,
@@ -57,12 +73,14 @@ public class FileStorageExceptionHandler {
     public ResponseEntity<ErrorResponse> handleException(Exception e, WebRequest request) {
         var message = e.getMessage();
         HttpStatus httpStatus;
-        if (e instanceof FileNotFoundException || e instanceof FileVersionNotFoundException) {
+        if (e instanceof FileNotFoundException || e instanceof FileVersionNotFoundException
+                || e instanceof UploadSessionNotFoundException) {
             httpStatus = HttpStatus.NOT_FOUND;
         } else if (e instanceof NoHandlerFoundException) {
             httpStatus = HttpStatus.NOT_FOUND;
             message = "Resource not found";
-        } else if (e instanceof FileAlreadyExistsException || e instanceof FileContentTypeMismatch) {
+        } else if (e instanceof FileAlreadyExistsException || e instanceof FileContentTypeMismatch
+                || e instanceof InvalidArgumentException) {
             httpStatus = HttpStatus.BAD_REQUEST;
         } else if (e instanceof TypeMismatchException) {
             httpStatus = HttpStatus.BAD_REQUEST;
@@ -84,6 +102,12 @@ public class FileStorageExceptionHandler {
             logger.error(e.getMessage(), e);
         }
 
+        Counter.builder("storage.errors")
+                .description("Exceptions handled by the api")
+                .tag("exception", e.getClass().getSimpleName())
+                .tag("status", String.valueOf(httpStatus.value()))
+                .register(meterRegistry)
+                .increment();
         return new ResponseEntity<>(new ErrorResponse(httpStatus, message), httpStatus);
     }
 }
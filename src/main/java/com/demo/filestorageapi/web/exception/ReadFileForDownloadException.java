@@ -1,8 +1,8 @@
 package com.demo.filestorageapi.web.exception;
 
 /**
- * Read file for download exception - thrown when trying to open and read the binary stream from the database
- * raises a {@link java.sql.SQLException}
+ * Read file for download exception - thrown when trying to open the content of a file raises a
+ * {@link com.demo.filestorageapi.core.exception.BlobStoreException}
  *
  * @author Franklin Grassals
  */
@@ -0,0 +1,48 @@
+package com.demo.filestorageapi.web.response;
+
+import com.demo.filestorageapi.security.AccessToken;
+
+import java.time.Instant;
+
+/**
+ * Contains an access token to send in the "Authorization: Bearer ..." header of the next requests
+ *
+ * @author Franklin Grassals
+ */
+public class AccessTokenResponse {
+    private String accessToken;
+    private String tokenType;
+    private Long expiresIn; // seconds
+
+    public AccessTokenResponse() {}
+
+    public AccessTokenResponse(AccessToken token) {
+        this.accessToken = token.getValue();
+        this.tokenType = "Bearer";
+        this.expiresIn = Math.max(0, token.getExpiresAt().getEpochSecond() - Instant.now().getEpochSecond());
+    }
+
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    public void setAccessToken(String accessToken) {
+        this.accessToken = accessToken;
+    }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    public void setTokenType(String tokenType) {
+        this.tokenType = tokenType;
+    }
+
+    public Long getExpiresIn() {
+        return expiresIn;
+    }
+
+    public void setExpiresIn(Long expiresIn) {
+        this.expiresIn = expiresIn;
+    }
+}
@@ -0,0 +1,36 @@
+package com.demo.filestorageapi.web.response;
+
+import com.demo.filestorageapi.core.model.RetentionPolicy;
+
+/**
+ * Contains the retention policy of a user or a file, null limits mean the versions aren't limited by them
+ *
+ * @author Franklin Grassals
+ */
+public class RetentionPolicyResponse {
+    private Integer maxVersions;
+    private Integer maxAgeDays;
+
+    public RetentionPolicyResponse() {}
+
+    public RetentionPolicyResponse(RetentionPolicy policy) {
+        this.maxVersions = policy.getMaxVersions();
+        this.maxAgeDays = policy.getMaxAgeDays();
+    }
+
+    public Integer getMaxVersions() {
+        return maxVersions;
+    }
+
+    public void setMaxVersions(Integer maxVersions) {
+        this.maxVersions = maxVersions;
+    }
+
+    public Integer getMaxAgeDays() {
+        return maxAgeDays;
+    }
+
+    public void setMaxAgeDays(Integer maxAgeDays) {
+        this.maxAgeDays = maxAgeDays;
+    }
+}
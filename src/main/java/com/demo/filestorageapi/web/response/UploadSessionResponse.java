@@ -0,0 +1,101 @@
+package com.demo.filestorageapi.web.response;
+
+import com.demo.filestorageapi.core.model.UploadSession;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.SortedMap;
+import java.util.UUID;
+
+/**
+ * Contains information about an upload session and the chunks received so far
+ *
+ * @author Franklin Grassals
+ */
+public class UploadSessionResponse {
+    private UUID id;
+    private String filename;
+    private String contentType;
+    private Long sizeInBytes;
+    private Long receivedBytes;
+    private SortedMap<Integer, Long> chunks; // sizes in bytes by chunk number
+    private LocalDateTime expiresAt;
+    private String uri;
+
+    public UploadSessionResponse() {}
+
+    public UploadSessionResponse(UploadSession session, SortedMap<Integer, Long> chunks, URI uri) {
+        this.id = session.getId();
+        this.filename = session.getFilename();
+        this.contentType = session.getContentType();
+        this.sizeInBytes = session.getSize();
+        this.receivedBytes = chunks.values().stream().mapToLong(Long::longValue).sum();
+        this.chunks = chunks;
+        this.expiresAt = session.getExpiresAt();
+        this.uri = uri.toString();
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public void setSizeInBytes(Long sizeInBytes) {
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public Long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public void setReceivedBytes(Long receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+
+    public SortedMap<Integer, Long> getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(SortedMap<Integer, Long> chunks) {
+        this.chunks = chunks;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    public void setUri(String uri) {
+        this.uri = uri;
+    }
+}
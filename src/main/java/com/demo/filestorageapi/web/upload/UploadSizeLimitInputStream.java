@@ -0,0 +1,61 @@
+package com.demo.filestorageapi.web.upload;
+
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream over an upload request body that fails with a {@link MaxUploadSizeExceededException}
+ * as soon as more than the allowed number of bytes is read, so oversized uploads are rejected
+ * even when the client doesn't send a Content-Length
+ *
+ * @author Franklin Grassals
+ */
+public class UploadSizeLimitInputStream extends FilterInputStream {
+    private final long maxSize;
+    private long read;
+
+    public UploadSizeLimitInputStream(InputStream in, long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        var n = super.read(b, off, len);
+        if (n != -1) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        var skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(long n) {
+        read += n;
+        if (read > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.demo.filestorageapi.web.upload;
+
+import com.demo.filestorageapi.web.exception.UploadedFileAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads uploads sent as the raw request body instead of a multipart form, so they can be streamed
+ * straight to the storage
+ *
+ * @author Franklin Grassals
+ */
+public final class UploadedBody {
+    private UploadedBody() {
+    }
+
+    /**
+     * Validates an upload sent in the request body and opens it. The body may be sent chunked without a Content-Length
+     * @param request The current request
+     * @param maxSize The maximum size of the body in bytes
+     * @return an input stream that fails with a {@link MaxUploadSizeExceededException} if the body is too large
+     */
+    public static InputStream open(HttpServletRequest request, long maxSize) {
+        var contentLength = request.getContentLengthLong();
+        if (contentLength == 0 || isFormContent(request)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Please upload a valid file");
+        }
+        if (contentLength > maxSize) {
+            throw new MaxUploadSizeExceededException(maxSize);
+        }
+        try {
+            return new UploadSizeLimitInputStream(request.getInputStream(), maxSize);
+        } catch (IOException e) {
+            throw new UploadedFileAccessException(e);
+        }
+    }
+
+    /**
+     * Gets the content type of an upload sent in the request body without its parameters (e.g. charset),
+     * as multipart uploads send it
+     * @param request The current request
+     * @return the content type, or null if the request has none
+     */
+    public static String getContentType(HttpServletRequest request) {
+        if (request.getContentType() == null) {
+            return null;
+        }
+        var mediaType = MediaType.parseMediaType(request.getContentType());
+        return new MediaType(mediaType.getType(), mediaType.getSubtype()).toString();
+    }
+
+    // the servlet container reads form bodies to get the request parameters, so they can't be uploaded
+    private static boolean isFormContent(HttpServletRequest request) {
+        return request.getContentType() != null &&
+                MediaType.APPLICATION_FORM_URLENCODED.includes(MediaType.parseMediaType(request.getContentType()));
+    }
+}
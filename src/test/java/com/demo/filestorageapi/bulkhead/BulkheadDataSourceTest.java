@@ -0,0 +1,117 @@
+package com.demo.filestorageapi.bulkhead;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BulkheadDataSource}
+ *
+ * @author Franklin Grassals
+ */
+@ExtendWith(MockitoExtension.class)
+class BulkheadDataSourceTest {
+
+    @Mock
+    DataSource targetMock;
+
+    @Mock
+    Connection connectionMock;
+
+    ConnectionBulkhead metadataBulkhead;
+    ConnectionBulkhead transferBulkhead;
+    BulkheadDataSource dataSource;
+    SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        this.metadataBulkhead = new ConnectionBulkhead(RequestClass.METADATA, 2, Duration.ofMillis(50));
+        this.transferBulkhead = new ConnectionBulkhead(RequestClass.TRANSFER, 1, Duration.ofMillis(50));
+        this.dataSource = new BulkheadDataSource(targetMock, List.of(metadataBulkhead, transferBulkhead));
+        this.meterRegistry = new SimpleMeterRegistry();
+        metadataBulkhead.bindTo(meterRegistry);
+        transferBulkhead.bindTo(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestClassHolder.clear();
+    }
+
+    @Test
+    void getConnection_classConnectionsInUse_shouldTimeOut() throws Exception {
+        when(targetMock.getConnection()).thenReturn(connectionMock);
+        RequestClassHolder.set(RequestClass.TRANSFER);
+
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+        assertEquals(1, meterRegistry.get("storage.bulkhead.connections.timeout").tag("class", "transfer")
+                .functionCounter().count());
+        assertEquals(1, meterRegistry.get("storage.bulkhead.connections.active").tag("class", "transfer")
+                .gauge().value());
+    }
+
+    @Test
+    void getConnection_otherClassConnectionsInUse_shouldNotWait() throws Exception {
+        when(targetMock.getConnection()).thenReturn(connectionMock);
+        RequestClassHolder.set(RequestClass.TRANSFER);
+        dataSource.getConnection();
+
+        RequestClassHolder.set(RequestClass.METADATA);
+        dataSource.getConnection();
+        dataSource.getConnection();
+
+        assertEquals(2, meterRegistry.get("storage.bulkhead.connections.active").tag("class", "metadata")
+                .gauge().value());
+    }
+
+    @Test
+    void getConnection_connectionClosed_shouldReleaseItOnce() throws Exception {
+        when(targetMock.getConnection()).thenReturn(connectionMock);
+        RequestClassHolder.set(RequestClass.TRANSFER);
+
+        var connection = dataSource.getConnection();
+        connection.close();
+        connection.close();
+
+        verify(connectionMock, times(2)).close();
+        assertEquals(0, meterRegistry.get("storage.bulkhead.connections.active").tag("class", "transfer")
+                .gauge().value());
+        dataSource.getConnection();
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+    }
+
+    @Test
+    void getConnection_poolFails_shouldReleaseTheConnection() throws Exception {
+        when(targetMock.getConnection()).thenThrow(new SQLTransientConnectionException("pool exhausted"));
+        RequestClassHolder.set(RequestClass.TRANSFER);
+
+        assertThrows(SQLTransientConnectionException.class, () -> dataSource.getConnection());
+
+        assertEquals(0, meterRegistry.get("storage.bulkhead.connections.active").tag("class", "transfer")
+                .gauge().value());
+    }
+
+    @Test
+    void getConnection_outsideOfRequests_shouldNotBeLimited() throws Exception {
+        when(targetMock.getConnection()).thenReturn(connectionMock);
+
+        for (var i = 0; i < 5; i++) {
+            assertSame(connectionMock, dataSource.getConnection());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.demo.filestorageapi.bulkhead;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RequestClassInterceptor}
+ *
+ * @author Franklin Grassals
+ */
+class RequestClassInterceptorTest {
+
+    RequestClassInterceptor interceptor = new RequestClassInterceptor();
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @AfterEach
+    void tearDown() {
+        RequestClassHolder.clear();
+    }
+
+    @Test
+    void preHandle_transferHandler_shouldSetTransferClass() throws Exception {
+        interceptor.preHandle(request, response, new HandlerMethod(new Handlers(), "download"));
+
+        assertEquals(Optional.of(RequestClass.TRANSFER), RequestClassHolder.get());
+    }
+
+    @Test
+    void preHandle_otherHandler_shouldSetMetadataClass() throws Exception {
+        interceptor.preHandle(request, response, new HandlerMethod(new Handlers(), "getFile"));
+
+        assertEquals(Optional.of(RequestClass.METADATA), RequestClassHolder.get());
+    }
+
+    @Test
+    void afterConcurrentHandlingStarted_shouldClearClass() throws Exception {
+        var handler = new HandlerMethod(new Handlers(), "download");
+        interceptor.preHandle(request, response, handler);
+
+        interceptor.afterConcurrentHandlingStarted(request, response, handler);
+
+        assertEquals(Optional.empty(), RequestClassHolder.get());
+    }
+
+    @Test
+    void preProcess_asyncTask_shouldSetTransferClassUntilPostProcess() throws Exception {
+        interceptor.preProcess(null, () -> null);
+        assertEquals(Optional.of(RequestClass.TRANSFER), RequestClassHolder.get());
+
+        interceptor.postProcess(null, () -> null, null);
+        assertEquals(Optional.empty(), RequestClassHolder.get());
+    }
+
+    static class Handlers {
+        @Transfer
+        public void download() {
+        }
+
+        public void getFile() {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.demo.filestorageapi.core.dao;
+
+import com.demo.filestorageapi.core.model.BlobReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests to verify the interaction of the custom repository methods
+ * of {@link BlobReferenceRepository} and the database
+ *
+ * @author Franklin Grassals
+ */
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+class BlobReferenceRepositoryTest {
+
+    @Autowired
+    private BlobReferenceRepository blobReferenceRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    static final String STORAGE_KEY = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+    @BeforeEach
+    void setUp() {
+        blobReferenceRepository.saveAndFlush(new BlobReference(STORAGE_KEY, 11));
+    }
+
+    @Test
+    void incrementRefCount_existingKeyGiven_shouldAddReference() {
+        assertEquals(1, blobReferenceRepository.incrementRefCount(STORAGE_KEY));
+        assertEquals(2, getRefCount());
+    }
+
+    @Test
+    void incrementRefCount_nonExistingKeyGiven_shouldUpdateNothing() {
+        assertEquals(0, blobReferenceRepository.incrementRefCount("missing"));
+    }
+
+    @Test
+    void decrementRefCount_existingKeyGiven_shouldRemoveReference() {
+        assertEquals(1, blobReferenceRepository.decrementRefCount(STORAGE_KEY));
+        assertEquals(0, getRefCount());
+    }
+
+    @Test
+    void decrementRefCount_noReferencesLeft_shouldNotGoBelowZero() {
+        blobReferenceRepository.decrementRefCount(STORAGE_KEY);
+        assertEquals(0, blobReferenceRepository.decrementRefCount(STORAGE_KEY));
+        assertEquals(0, getRefCount());
+    }
+
+    @Test
+    void findForUpdate_existingKeyGiven_shouldReturnOptionalOfBlobReference() {
+        assertEquals(Optional.of(new BlobReference(STORAGE_KEY, 11)), blobReferenceRepository.findForUpdate(STORAGE_KEY));
+    }
+
+    @Test
+    void findUnreferencedKeys_unreferencedBlobGiven_shouldReturnItsKey() {
+        blobReferenceRepository.saveAndFlush(new BlobReference("referenced", 1));
+        blobReferenceRepository.decrementRefCount(STORAGE_KEY);
+        assertEquals(Collections.singletonList(STORAGE_KEY),
+                blobReferenceRepository.findUnreferencedKeys("", PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void findUnreferencedKeys_lastKeyGiven_shouldReturnEmptyList() {
+        blobReferenceRepository.decrementRefCount(STORAGE_KEY);
+        assertEquals(Collections.emptyList(),
+                blobReferenceRepository.findUnreferencedKeys(STORAGE_KEY, PageRequest.of(0, 10)));
+    }
+
+    // the bulk updates skip the persistence context, so the entity is read again from the database
+    private int getRefCount() {
+        entityManager.clear();
+        //noinspection OptionalGetWithoutIsPresent
+        return blobReferenceRepository.findById(STORAGE_KEY).get().getRefCount();
+    }
+}
@@ -8,9 +8,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import static org.junit.jupiter.api.Assertions.*;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Optional;
 
@@ -27,6 +30,9 @@ class FileRepositoryTest {
     @Autowired
     private FileRepository fileRepository;
 
+    @Autowired
+    private FileVersionRepository fileVersionRepository;
+
     @Autowired
     private UserRepository userRepository;
 
@@ -41,7 +47,9 @@ class FileRepositoryTest {
         var filename = "FileRepositoryTest.class";
         var testFileStream = this.getClass().getResourceAsStream(filename);
         var file = new File(filename, "application/octet-stream", user);
-        file.setVersions(Collections.singletonList(new FileVersion(testFileStream, 50, file)));
+        var version = new FileVersion(testFileStream, 50, file);
+        file.setVersions(Collections.singletonList(version));
+        file.setCurrentVersion(version);
         this.file = fileRepository.save(file);
     }
 
@@ -60,4 +68,56 @@ class FileRepositoryTest {
         assertEquals(Optional.empty(), fileRepository.findByIdAndUser(file.getId(), null));
     }
 
-}
\ No newline at end of file
+    @Test
+    void updateCurrentVersion_newerVersionGiven_shouldUpdateFile() {
+        var version = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        assertEquals(1, fileRepository.updateCurrentVersion(file.getId(), version));
+    }
+
+    @Test
+    void updateCurrentVersion_olderVersionGiven_shouldNotUpdateFile() {
+        var older = file.getCurrentVersion();
+        var newer = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        fileRepository.updateCurrentVersion(file.getId(), newer);
+        assertEquals(0, fileRepository.updateCurrentVersion(file.getId(), older));
+    }
+
+    @Test
+    void findByIdAndUser_deletedFileGiven_shouldReturnEmptyOptional() {
+        assertEquals(1, fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now()));
+        assertEquals(Optional.empty(), fileRepository.findByIdAndUser(file.getId(), user));
+    }
+
+    @Test
+    void markDeleted_deletedFileGiven_shouldUpdateNothing() {
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+        assertEquals(0, fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now()));
+    }
+
+    @Test
+    void markDeleted_deletedFileGiven_shouldLetTheFilenameBeUsedAgain() {
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+        var newFile = new File(file.getFilename(), "application/octet-stream", user);
+        assertNotNull(fileRepository.saveAndFlush(newFile).getId());
+    }
+
+    @Test
+    void findAllByIdInAndUser_deletedFileGiven_shouldReturnOnlyOtherFiles() {
+        var other = fileRepository.save(new File("other.txt", "text/plain", user));
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+        assertEquals(Collections.singletonList(other),
+                fileRepository.findAllByIdInAndUser(Arrays.asList(file.getId(), other.getId()), user));
+    }
+
+    @Test
+    void findDeletedIds_deletedFileGiven_shouldReturnItsId() {
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+        assertEquals(Collections.singletonList(file.getId()), fileRepository.findDeletedIds(0L, PageRequest.of(0, 10)));
+        assertEquals(Collections.emptyList(), fileRepository.findDeletedIds(file.getId(), PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void deleteTombstone_fileNotDeletedGiven_shouldDeleteNothing() {
+        assertEquals(0, fileRepository.deleteTombstone(file.getId()));
+    }
+}
@@ -8,8 +8,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Optional;
 import java.util.UUID;
@@ -91,4 +95,56 @@ class FileVersionRepositoryTest {
     void findByUuidAndFileIdAndFileUser_nullUserGiven_shouldReturnEmptyOptional() {
         assertEquals(Optional.empty(), fileVersionRepository.findByUuidAndFileIdAndFileUser(uuid, file.getId(), null));
     }
-}
\ No newline at end of file
+
+    @Test
+    void findAllByFileIdAndFileUserOrderByCreatedAtDesc_deletedFileGiven_shouldReturnEmptyList() {
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+        assertEquals(Collections.emptyList(),
+                fileVersionRepository.findAllByFileIdAndFileUserOrderByCreatedAtDesc(file.getId(), user));
+    }
+
+    @Test
+    void findIdsByFileId_pageGiven_shouldReturnTheFirstIdsInOrder() {
+        var second = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        assertEquals(Arrays.asList(fileVersion.getId(), second.getId()),
+                fileVersionRepository.findIdsByFileId(file.getId(), PageRequest.of(0, 2)));
+    }
+
+    @Test
+    void findStorageKeysByIdIn_versionsGiven_shouldReturnOneKeyPerVersionInBlobStore() {
+        var first = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        var second = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        assertEquals(Arrays.asList("key", "key"), fileVersionRepository.findStorageKeysByIdIn(
+                Arrays.asList(fileVersion.getId(), first.getId(), second.getId())));
+    }
+
+    @Test
+    void deleteInBulkByIdIn_versionsGiven_shouldDeleteOnlyThoseVersions() {
+        var version = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        assertEquals(1, fileVersionRepository.deleteInBulkByIdIn(Collections.singletonList(version.getId())));
+        assertEquals(Collections.singletonList(fileVersion.getId()),
+                fileVersionRepository.findIdsByFileId(file.getId(), PageRequest.of(0, 10)));
+    }
+
+    @Test
+    void findContentRangeByUuid_inlineVersionGiven_shouldReturnOnlyTheRange() throws IOException {
+        byte[] stored;
+        try (var in = this.getClass().getResourceAsStream("FileRepositoryTest.class")) {
+            stored = in.readNBytes(50);
+        }
+        assertArrayEquals(Arrays.copyOfRange(stored, 10, 30),
+                fileVersionRepository.findContentRangeByUuid(uuid, 11, 20).orElseThrow());
+    }
+
+    @Test
+    void findContentRangeByUuid_rangePastTheEndGiven_shouldReturnTheBytesLeft() {
+        assertEquals(5, fileVersionRepository.findContentRangeByUuid(uuid, 46, 20).orElseThrow().length);
+    }
+
+    @Test
+    void findContentRangeByUuid_versionInBlobStoreGiven_shouldReturnEmptyOptional() {
+        var version = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        assertEquals(Optional.empty(), fileVersionRepository.findContentRangeByUuid(version.getUuid(), 1, 20));
+    }
+}
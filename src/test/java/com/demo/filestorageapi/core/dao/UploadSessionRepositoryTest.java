@@ -0,0 +1,68 @@
+package com.demo.filestorageapi.core.dao;
+
+import com.demo.filestorageapi.core.model.UploadSession;
+import com.demo.filestorageapi.core.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests to verify the interaction of the custom repository methods
+ * of {@link UploadSessionRepository} and the database
+ *
+ * @author Franklin Grassals
+ */
+@DataJpaTest
+@ExtendWith(SpringExtension.class)
+class UploadSessionRepositoryTest {
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    User user;
+    UploadSession session;
+    LocalDateTime expiresAt;
+
+    @BeforeEach
+    void setUp() {
+        //noinspection OptionalGetWithoutIsPresent
+        this.user = userRepository.findByUsername("test").get();
+        this.expiresAt = LocalDateTime.now().plusHours(1);
+        this.session = uploadSessionRepository.save(
+                new UploadSession("big.bin", "application/octet-stream", 5_000_000_000L, user, null, expiresAt));
+    }
+
+    @Test
+    void findByIdAndUser_correctParametersGiven_shouldReturnOptionalOfUploadSession() {
+        assertEquals(Optional.of(session), uploadSessionRepository.findByIdAndUser(session.getId(), user));
+    }
+
+    @Test
+    void findByIdAndUser_otherUserGiven_shouldReturnEmptyOptional() {
+        //noinspection OptionalGetWithoutIsPresent
+        var otherUser = userRepository.findByUsername("test2").get();
+        assertEquals(Optional.empty(), uploadSessionRepository.findByIdAndUser(session.getId(), otherUser));
+    }
+
+    @Test
+    void findAllByExpiresAtBefore_expiredSessionGiven_shouldReturnListOfUploadSession() {
+        assertEquals(Collections.singletonList(session), uploadSessionRepository.findAllByExpiresAtBefore(expiresAt.plusMinutes(1)));
+    }
+
+    @Test
+    void findAllByExpiresAtBefore_activeSessionGiven_shouldReturnEmptyList() {
+        assertEquals(Collections.emptyList(), uploadSessionRepository.findAllByExpiresAtBefore(expiresAt.minusMinutes(1)));
+    }
+}
@@ -9,10 +9,14 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,6 +33,9 @@ class UserFileRepositoryTest {
     @Autowired
     private FileRepository fileRepository;
 
+    @Autowired
+    private FileVersionRepository fileVersionRepository;
+
     @Autowired
     private UserFileRepository userFileRepository;
 
@@ -38,7 +45,6 @@ class UserFileRepositoryTest {
     File file;
     User user;
     UserFile userFile;
-    int rank = 1;
 
     @BeforeEach
     void setUp() {
@@ -48,46 +54,94 @@ class UserFileRepositoryTest {
         var filename = "FileRepositoryTest.class";
         var testFileStream = this.getClass().getResourceAsStream(filename);
         var file = new File(filename, "application/octet-stream", user);
-        file.setVersions(Collections.singletonList(new FileVersion(testFileStream, 50, file)));
+        var version = new FileVersion(testFileStream, 50, file);
+        file.setVersions(Collections.singletonList(version));
+        file.setCurrentVersion(version);
         this.file = fileRepository.save(file);
         this.userFile = userFileRepository.findAll().get(0);
     }
 
     @Test
-    void findAllByUserIdAndRankOrderByFilenameAsc_correctParametersGiven_shouldReturnListOfUserFile() {
+    void findPage_correctParametersGiven_shouldReturnListOfUserFile() {
         assertEquals(Collections.singletonList(userFile),
-                userFileRepository.findAllByUserIdAndRankOrderByFilenameAsc(user.getId(), rank));
+                userFileRepository.findPage(user.getId(), "%", null, "", 0L, PageRequest.of(0, 10)));
     }
 
     @Test
-    void findAllByUserIdAndRankOrderByFilenameAsc_nullUserIdGiven_shouldReturnEmptyList() {
+    void findPage_nullUserIdGiven_shouldReturnEmptyList() {
         assertEquals(Collections.emptyList(),
-                userFileRepository.findAllByUserIdAndRankOrderByFilenameAsc(null, rank));
+                userFileRepository.findPage(null, "%", null, "", 0L, PageRequest.of(0, 10)));
     }
 
     @Test
-    void findAllByUserIdAndRankOrderByFilenameAsc_nonExistingRankGiven_shouldReturnEmptyList() {
-        assertEquals(Collections.emptyList(),
-                userFileRepository.findAllByUserIdAndRankOrderByFilenameAsc(user.getId(), -1));
+    void findPage_newVersionGiven_shouldReturnOnlyTheNewVersion() {
+        var version = fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        fileRepository.updateCurrentVersion(file.getId(), version);
+        var files = userFileRepository.findPage(user.getId(), "%", null, "", 0L, PageRequest.of(0, 10));
+        assertEquals(1, files.size());
+        assertEquals(version.getUuid(), files.get(0).getVersion());
+    }
+
+    @Test
+    void findPage_lastFileOfPreviousPageGiven_shouldReturnTheNextFilesInOrder() {
+        var c = saveFile("c.txt", "text/plain");
+        var b = saveFile("b.txt", "text/plain");
+        var d = saveFile("d.txt", "text/plain");
+
+        var firstPage = userFileRepository.findPage(user.getId(), "%", null, "", 0L, PageRequest.of(0, 2));
+        assertEquals(Arrays.asList(userFile.getId(), b.getId()), ids(firstPage));
+
+        var secondPage = userFileRepository.findPage(user.getId(), "%", null, "b.txt", b.getId(), PageRequest.of(0, 2));
+        assertEquals(Arrays.asList(c.getId(), d.getId()), ids(secondPage));
     }
 
     @Test
-    void findByIdAndUserIdAndRank_correctParametersGiven_shouldReturnOptionalOfUserFile() {
-        assertEquals(Optional.of(userFile), userFileRepository.findByIdAndUserIdAndRank(file.getId(), user.getId(), rank));
+    void findPage_filtersGiven_shouldReturnOnlyMatchingFiles() {
+        var report = saveFile("report_2020.pdf", "application/pdf");
+        saveFile("report-2020.txt", "text/plain");
+        saveFile("reports.txt", "text/plain");
+
+        assertEquals(Collections.singletonList(report.getId()),
+                ids(userFileRepository.findPage(user.getId(), "report!_%", null, "", 0L, PageRequest.of(0, 10))));
+        assertEquals(Collections.singletonList(report.getId()),
+                ids(userFileRepository.findPage(user.getId(), "%", "application/pdf", "", 0L, PageRequest.of(0, 10))));
     }
 
     @Test
-    void findByIdAndUserIdAndRank_nullFileIdGiven_shouldReturnEmptyOptional() {
-        assertEquals(Optional.empty(), userFileRepository.findByIdAndUserIdAndRank(null, user.getId(), rank));
+    void streamAll_filtersGiven_shouldStreamMatchingFilesInOrder() {
+        var b = saveFile("b.txt", "text/plain");
+        var a = saveFile("a.txt", "text/plain");
+        saveFile("c.pdf", "application/pdf");
+
+        try (var files = userFileRepository.streamAll(user.getId(), "%", "text/plain")) {
+            assertEquals(Arrays.asList(a.getId(), b.getId()), files.map(UserFile::getId).collect(Collectors.toList()));
+        }
     }
 
     @Test
-    void findByIdAndUserIdAndRank_nullUserIdGiven_shouldReturnEmptyOptional() {
-        assertEquals(Optional.empty(), userFileRepository.findByIdAndUserIdAndRank(file.getId(), null, rank));
+    void findByIdAndUserId_correctParametersGiven_shouldReturnOptionalOfUserFile() {
+        assertEquals(Optional.of(userFile), userFileRepository.findByIdAndUserId(file.getId(), user.getId()));
     }
 
     @Test
-    void findByIdAndUserIdAndRank_nonExistingRankGiven_shouldReturnEmptyOptional() {
-        assertEquals(Optional.empty(), userFileRepository.findByIdAndUserIdAndRank(file.getId(), user.getId(), -1));
+    void findByIdAndUserId_nullFileIdGiven_shouldReturnEmptyOptional() {
+        assertEquals(Optional.empty(), userFileRepository.findByIdAndUserId(null, user.getId()));
+    }
+
+    @Test
+    void findByIdAndUserId_nullUserIdGiven_shouldReturnEmptyOptional() {
+        assertEquals(Optional.empty(), userFileRepository.findByIdAndUserId(file.getId(), null));
+    }
+
+    private File saveFile(String filename, String contentType) {
+        var file = new File(filename, contentType, user);
+        var version = new FileVersion("key", 0, "hash", file);
+        file.setVersions(Collections.singletonList(version));
+        file.setCurrentVersion(version);
+        return fileRepository.save(file);
+    }
+
+    private List<Long> ids(List<UserFile> files) {
+        return files.stream().map(UserFile::getId).collect(Collectors.toList());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,157 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.BlobReferenceRepository;
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import com.demo.filestorageapi.core.model.BlobReference;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BlobReferenceCounter}
+ *
+ * @author Franklin Grassals
+ */
+@ExtendWith(MockitoExtension.class)
+class BlobReferenceCounterTest {
+
+    @Mock
+    BlobReferenceRepository blobReferenceRepositoryMock;
+
+    @Mock
+    BlobStore blobStoreMock;
+
+    @Mock
+    PlatformTransactionManager transactionManagerMock;
+
+    BlobReferenceCounter blobReferenceCounter;
+
+    static final String KEY = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+    static final StoredBlob BLOB = new StoredBlob(KEY, 11, KEY);
+
+    @BeforeEach
+    void setUp() {
+        this.blobReferenceCounter = new BlobReferenceCounter(blobReferenceRepositoryMock, blobStoreMock,
+                new TransactionTemplate(transactionManagerMock));
+    }
+
+    @Test
+    void retain_alreadyReferencedBlobGiven_shouldIncrementRefCount() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(1);
+        when(blobStoreMock.exists(KEY)).thenReturn(true);
+        blobReferenceCounter.retain(BLOB);
+        verify(blobReferenceRepositoryMock, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void retain_newBlobGiven_shouldInsertReference() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(0);
+        when(blobStoreMock.exists(KEY)).thenReturn(true);
+        blobReferenceCounter.retain(BLOB);
+        verify(blobReferenceRepositoryMock).saveAndFlush(new BlobReference(KEY, 11));
+    }
+
+    @Test
+    void retain_concurrentInsertGiven_shouldIncrementInsertedRow() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(0).thenReturn(1);
+        when(blobReferenceRepositoryMock.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("duplicate"));
+        when(blobStoreMock.exists(KEY)).thenReturn(true);
+        assertTrue(blobReferenceCounter.retain(BLOB));
+        verify(blobReferenceRepositoryMock, times(2)).incrementRefCount(KEY);
+    }
+
+    @Test
+    void retain_deadlockOnConcurrentInsertGiven_shouldIncrementInsertedRow() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(0).thenReturn(1);
+        when(blobReferenceRepositoryMock.saveAndFlush(any()))
+                .thenThrow(new DeadlockLoserDataAccessException("deadlock", null));
+        when(blobStoreMock.exists(KEY)).thenReturn(true);
+        assertTrue(blobReferenceCounter.retain(BLOB));
+        verify(blobReferenceRepositoryMock, times(2)).incrementRefCount(KEY);
+    }
+
+    @Test
+    void retain_deletedBlobGiven_shouldThrowBlobStoreException() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(1);
+        when(blobStoreMock.exists(KEY)).thenReturn(false);
+        assertThrows(BlobStoreException.class, () -> blobReferenceCounter.retain(BLOB));
+    }
+
+    @Test
+    void retain_alreadyReferencedBlobGiven_shouldReturnTrue() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(1);
+        when(blobStoreMock.exists(KEY)).thenReturn(true);
+        assertTrue(blobReferenceCounter.retain(BLOB));
+    }
+
+    @Test
+    void retainExisting_referencedBlobGiven_shouldIncrementRefCount() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(1);
+        when(blobStoreMock.exists(KEY)).thenReturn(true);
+        blobReferenceCounter.retainExisting(KEY);
+        verify(blobReferenceRepositoryMock).incrementRefCount(KEY);
+    }
+
+    @Test
+    void retainExisting_unreferencedBlobGiven_shouldThrowBlobStoreException() {
+        when(blobReferenceRepositoryMock.incrementRefCount(KEY)).thenReturn(0);
+        assertThrows(BlobStoreException.class, () -> blobReferenceCounter.retainExisting(KEY));
+        verify(blobReferenceRepositoryMock, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void release_lastReferenceGiven_shouldDeleteBlob() {
+        var reference = new BlobReference(KEY, 11);
+        reference.setRefCount(0);
+        when(blobReferenceRepositoryMock.findForUpdate(KEY)).thenReturn(Optional.of(reference));
+        blobReferenceCounter.release(Collections.singletonList(KEY));
+        verify(blobReferenceRepositoryMock).decrementRefCount(KEY);
+        verify(blobStoreMock).delete(KEY);
+        verify(blobReferenceRepositoryMock).delete(reference);
+    }
+
+    @Test
+    void release_sharedBlobGiven_shouldKeepBlob() {
+        when(blobReferenceRepositoryMock.findForUpdate(KEY)).thenReturn(Optional.of(new BlobReference(KEY, 11)));
+        blobReferenceCounter.release(Collections.singletonList(KEY));
+        verify(blobStoreMock, never()).delete(KEY);
+    }
+
+    @Test
+    void release_sameKeyTwiceGiven_shouldRemoveTwoReferences() {
+        when(blobReferenceRepositoryMock.findForUpdate(KEY)).thenReturn(Optional.empty());
+        blobReferenceCounter.release(Arrays.asList(KEY, KEY));
+        verify(blobReferenceRepositoryMock, times(2)).decrementRefCount(KEY);
+        verify(blobReferenceRepositoryMock, times(1)).findForUpdate(KEY);
+    }
+
+    @Test
+    void reclaimUnreferenced_unreferencedBlobsGiven_shouldDeleteThemPageByPage() {
+        var reference = new BlobReference(KEY, 11);
+        reference.setRefCount(0);
+        when(blobReferenceRepositoryMock.findUnreferencedKeys("", PageRequest.of(0, 1)))
+                .thenReturn(Collections.singletonList(KEY));
+        when(blobReferenceRepositoryMock.findUnreferencedKeys(KEY, PageRequest.of(0, 1)))
+                .thenReturn(Collections.emptyList());
+        when(blobReferenceRepositoryMock.findForUpdate(KEY)).thenReturn(Optional.of(reference));
+        blobReferenceCounter.reclaimUnreferenced(1);
+        verify(blobStoreMock).delete(KEY);
+        verify(blobReferenceRepositoryMock).delete(reference);
+    }
+}
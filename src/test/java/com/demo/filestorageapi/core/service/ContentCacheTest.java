@@ -0,0 +1,104 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.storage.FileContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ContentCache}
+ *
+ * @author Franklin Grassals
+ */
+class ContentCacheTest {
+
+    ContentCache contentCache;
+    SimpleMeterRegistry meterRegistry;
+    AtomicInteger reads;
+
+    static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @BeforeEach
+    void setUp() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.contentCache = new ContentCache(true, DataSize.ofBytes(25), DataSize.ofBytes(10), meterRegistry);
+        this.reads = new AtomicInteger();
+    }
+
+    @Test
+    void cached_smallContentGiven_shouldReadTheSourceOnce() throws IOException {
+        var version = UUID.randomUUID();
+        assertEquals("0123456789", read(contentCache.cached(content(version, CONTENT)).open()));
+        assertEquals("234", read(contentCache.cached(content(version, CONTENT)).open(2, 3)));
+        assertEquals(1, reads.get());
+        assertEquals(10, contentCache.size());
+    }
+
+    @Test
+    void cached_smallContentGiven_shouldNotUseSendfile() {
+        assertTrue(contentCache.cached(content(UUID.randomUUID(), CONTENT)).getPath().isEmpty());
+    }
+
+    @Test
+    void cached_largeContentGiven_shouldReturnSameContent() {
+        var content = content(UUID.randomUUID(), "01234567890".getBytes(StandardCharsets.US_ASCII));
+        assertSame(content, contentCache.cached(content));
+    }
+
+    @Test
+    void cached_contentNotOpenedGiven_shouldNotReadTheSource() {
+        contentCache.cached(content(UUID.randomUUID(), CONTENT));
+        assertEquals(0, reads.get());
+        assertEquals(0, contentCache.size());
+    }
+
+    @Test
+    void cached_contentOpenedButNotReadGiven_shouldNotReadTheSource() throws IOException {
+        contentCache.cached(content(UUID.randomUUID(), CONTENT)).open().close();
+        assertEquals(0, reads.get());
+        assertEquals(0, contentCache.size());
+    }
+
+    @Test
+    void cached_contentsOverMaxSizeGiven_shouldEvictSome() throws IOException {
+        for (var i = 0; i < 5; i++) {
+            read(contentCache.cached(content(UUID.randomUUID(), CONTENT)).open());
+        }
+        assertTrue(contentCache.size() <= 25);
+    }
+
+    @Test
+    void cached_contentReadTwiceGiven_shouldRecordHitRatio() throws IOException {
+        var version = UUID.randomUUID();
+        read(contentCache.cached(content(version, CONTENT)).open());
+        read(contentCache.cached(content(version, CONTENT)).open());
+        assertEquals(0.5, meterRegistry.get("storage.content-cache.hit.ratio").gauge().value());
+        assertEquals(10, meterRegistry.get("storage.content-cache.size").gauge().value());
+    }
+
+    private FileContent content(UUID version, byte[] bytes) {
+        return new FileContent("test.txt", "text/plain", version, null, bytes.length, LocalDateTime.now(),
+                Path.of("test.txt"), (offset, length) -> {
+                    reads.incrementAndGet();
+                    return new ByteArrayInputStream(bytes, (int) offset, (int) length);
+                });
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link ContentCompressor}
+ *
+ * @author Franklin Grassals
+ */
+@ExtendWith(MockitoExtension.class)
+class ContentCompressorTest {
+
+    @Mock
+    BlobStore blobStoreMock;
+
+    ContentCompressor contentCompressor;
+
+    // what was written to the blob store
+    ByteArrayOutputStream stored;
+
+    static final StoredBlob BLOB = new StoredBlob("key", 10, "key");
+    static final byte[] TEXT = "2020-07-16 23:38:33 INFO a line of a log file\n".repeat(5000).getBytes();
+
+    @BeforeEach
+    void setUp() {
+        this.contentCompressor = new ContentCompressor(blobStoreMock);
+        ReflectionTestUtils.setField(contentCompressor, "enabled", true);
+        ReflectionTestUtils.setField(contentCompressor, "level", 6);
+        ReflectionTestUtils.setField(contentCompressor, "sampleSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(contentCompressor, "minSize", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(contentCompressor, "maxRatio", 0.8);
+        ReflectionTestUtils.setField(contentCompressor, "excludedTypes", List.of("image/*", "application/zip"));
+        this.stored = new ByteArrayOutputStream();
+    }
+
+    @Test
+    void put_textGiven_shouldStoreItCompressed() throws IOException {
+        stubPut();
+        var encoded = contentCompressor.put(new ByteArrayInputStream(TEXT), "text/plain; charset=utf-8");
+        assertEquals("gzip", encoded.getContentEncoding());
+        assertEquals(TEXT.length, encoded.getSize());
+        assertEquals(BLOB, encoded.getBlob());
+        assertTrue(stored.size() < TEXT.length / 10);
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(stored.toByteArray()))) {
+            assertArrayEquals(TEXT, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void put_textGiven_shouldReturnDigestOfOriginalContent() {
+        stubPut();
+        var encoded = contentCompressor.put(new ByteArrayInputStream(TEXT), "text/plain");
+        assertEquals(sha256(TEXT), encoded.getSha256());
+    }
+
+    @Test
+    void put_excludedContentTypeGiven_shouldStoreItAsIs() {
+        stubPut();
+        var encoded = contentCompressor.put(new ByteArrayInputStream(TEXT), "image/png");
+        assertFalse(encoded.isEncoded());
+        assertArrayEquals(TEXT, stored.toByteArray());
+    }
+
+    @Test
+    void put_incompressibleContentGiven_shouldStoreItAsIs() {
+        stubPut();
+        var content = new byte[200 * 1024];
+        new Random(1).nextBytes(content);
+        var encoded = contentCompressor.put(new ByteArrayInputStream(content), "text/plain");
+        assertFalse(encoded.isEncoded());
+        assertArrayEquals(content, stored.toByteArray());
+    }
+
+    @Test
+    void put_smallContentGiven_shouldStoreItAsIs() {
+        stubPut();
+        assertFalse(contentCompressor.put(new ByteArrayInputStream("hello".getBytes()), "text/plain").isEncoded());
+        assertEquals("hello", stored.toString());
+    }
+
+    private void stubPut() {
+        when(blobStoreMock.put(any(InputStream.class))).thenAnswer(a -> {
+            a.<InputStream>getArgument(0).transferTo(stored);
+            return BLOB;
+        });
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(content);
+            var sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileRepository;
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.dao.UserRepository;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration tests for {@link DeletedFileReclaimer}
+ *
+ * @author Franklin Grassals
+ */
+@DataJpaTest(properties = {"storage.reclaim.batch-size=2", "storage.reclaim.batch-delay=PT0S"})
+@ExtendWith(SpringExtension.class)
+@Import(DeletedFileReclaimer.class)
+class DeletedFileReclaimerTest {
+
+    @MockBean
+    BlobReferenceCounter blobReferenceCounterMock;
+
+    @Autowired
+    DeletedFileReclaimer deletedFileReclaimer;
+
+    @Autowired
+    FileRepository fileRepository;
+
+    @Autowired
+    FileVersionRepository fileVersionRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    User user;
+
+    @BeforeEach
+    void setUp() {
+        //noinspection OptionalGetWithoutIsPresent
+        this.user = userRepository.findByUsername("test").get();
+    }
+
+    @Test
+    void reclaim_deletedFileGiven_shouldDeleteTheVersionsInBatches() {
+        var file = saveFile("deleted.txt", 5);
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+
+        assertEquals(1, deletedFileReclaimer.reclaim());
+        // batches of 2, 2 and 1 versions
+        verify(blobReferenceCounterMock, times(2)).release(argThat(keys -> keys.size() == 2));
+        verify(blobReferenceCounterMock).release(argThat(keys -> keys.size() == 1));
+        assertEquals(Collections.emptyList(), fileVersionRepository.findIdsByFileId(file.getId(), PageRequest.of(0, 10)));
+        assertFalse(fileRepository.existsById(file.getId()));
+    }
+
+    @Test
+    void reclaim_fileNotDeletedGiven_shouldKeepIt() {
+        var file = saveFile("kept.txt", 3);
+
+        assertEquals(0, deletedFileReclaimer.reclaim());
+        verify(blobReferenceCounterMock, never()).release(any());
+        assertEquals(3, fileVersionRepository.findIdsByFileId(file.getId(), PageRequest.of(0, 10)).size());
+    }
+
+    @Test
+    void reclaim_noDeletedFilesGiven_shouldStillReclaimUnreferencedBlobs() {
+        deletedFileReclaimer.reclaim();
+        verify(blobReferenceCounterMock).reclaimUnreferenced(2);
+    }
+
+    // saves a file with the given number of versions, and clears the persistence context as a new request would
+    private File saveFile(String filename, int versions) {
+        var file = new File(filename, "text/plain", user);
+        var version = new FileVersion("key", 0, "hash", file);
+        file.setVersions(Collections.singletonList(version));
+        file.setCurrentVersion(version);
+        fileRepository.save(file);
+        for (var i = 1; i < versions; i++) {
+            fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return file;
+    }
+}
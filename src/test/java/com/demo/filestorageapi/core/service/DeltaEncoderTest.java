@@ -0,0 +1,109 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link DeltaEncoder}
+ *
+ * @author Franklin Grassals
+ */
+@ExtendWith(MockitoExtension.class)
+class DeltaEncoderTest {
+
+    @Mock
+    BlobStore blobStoreMock;
+
+    DeltaEncoder deltaEncoder;
+
+    byte[] base;
+    byte[] target;
+
+    static final String BASE_KEY = "base";
+    static final String TARGET_KEY = "target";
+    static final StoredBlob DELTA = new StoredBlob("delta", 100, "delta");
+
+    @BeforeEach
+    void setUp() {
+        this.deltaEncoder = new DeltaEncoder(blobStoreMock);
+        ReflectionTestUtils.setField(deltaEncoder, "enabled", true);
+        ReflectionTestUtils.setField(deltaEncoder, "minSize", DataSize.ofKilobytes(64));
+        ReflectionTestUtils.setField(deltaEncoder, "maxSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(deltaEncoder, "maxRatio", 0.5);
+
+        this.base = new byte[256 * 1024];
+        new Random(1).nextBytes(base);
+        this.target = base.clone();
+        target[1000] ^= 1;
+    }
+
+    @Test
+    void accepts_sizeOutOfRangeGiven_shouldReturnFalse() {
+        assertFalse(deltaEncoder.accepts(1024));
+        assertFalse(deltaEncoder.accepts(DataSize.ofMegabytes(2).toBytes()));
+        assertTrue(deltaEncoder.accepts(base.length));
+    }
+
+    @Test
+    void encode_similarContentGiven_shouldStoreDelta() {
+        stubContents();
+        when(blobStoreMock.put(any(InputStream.class))).thenReturn(DELTA);
+        assertEquals(DELTA, deltaEncoder.encode(BASE_KEY, blob(target, sha256(target))).orElseThrow());
+    }
+
+    @Test
+    void encode_wrongDigestGiven_shouldNotStoreDelta() {
+        stubContents();
+        assertTrue(deltaEncoder.encode(BASE_KEY, blob(target, sha256(base))).isEmpty());
+        verify(blobStoreMock, never()).put(any(InputStream.class));
+    }
+
+    @Test
+    void encode_unrelatedContentGiven_shouldNotStoreDelta() {
+        new Random(2).nextBytes(target);
+        when(blobStoreMock.get(BASE_KEY)).thenReturn(new ByteArrayInputStream(base));
+        when(blobStoreMock.get(TARGET_KEY)).thenReturn(new ByteArrayInputStream(target));
+        assertTrue(deltaEncoder.encode(BASE_KEY, blob(target, sha256(target))).isEmpty());
+        verify(blobStoreMock, never()).put(any(InputStream.class));
+    }
+
+    private void stubContents() {
+        when(blobStoreMock.get(BASE_KEY)).thenReturn(new ByteArrayInputStream(base));
+        when(blobStoreMock.get(TARGET_KEY)).thenReturn(new ByteArrayInputStream(target));
+        when(blobStoreMock.get(eq(BASE_KEY), anyLong(), anyLong())).thenAnswer(a -> new ByteArrayInputStream(base,
+                (int) (long) a.getArgument(1), (int) (long) a.getArgument(2)));
+    }
+
+    private static StoredBlob blob(byte[] content, String sha256) {
+        return new StoredBlob(TARGET_KEY, content.length, sha256);
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(content);
+            var sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
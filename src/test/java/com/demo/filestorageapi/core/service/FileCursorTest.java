@@ -0,0 +1,31 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.exception.InvalidArgumentException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link FileCursor}
+ *
+ * @author Franklin Grassals
+ */
+class FileCursorTest {
+
+    @Test
+    void decode_encodedCursorGiven_shouldReturnSameCursor() {
+        var cursor = new FileCursor("notes: 2020/ñandú.txt", 12L);
+        assertEquals(cursor, FileCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void encode_cursorGiven_shouldReturnUrlSafeString() {
+        assertEquals("MTI6dGVzdC50eHQ", new FileCursor("test.txt", 12L).encode());
+    }
+
+    @Test
+    void decode_invalidCursorGiven_shouldThrowInvalidArgumentException() {
+        assertThrows(InvalidArgumentException.class, () -> FileCursor.decode("not a cursor"));
+        assertThrows(InvalidArgumentException.class, () -> FileCursor.decode("dGVzdC50eHQ"));
+    }
+}
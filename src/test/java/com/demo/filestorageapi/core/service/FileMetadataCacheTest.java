@@ -0,0 +1,211 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.model.UserFile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link FileMetadataCache}
+ *
+ * @author Franklin Grassals
+ */
+class FileMetadataCacheTest {
+
+    FileMetadataCache metadataCache;
+    SimpleMeterRegistry meterRegistry;
+    AtomicInteger loads;
+    UserFile userFile;
+    FileVersion version;
+
+    @BeforeEach
+    void setUp() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.metadataCache = new FileMetadataCache(true, 100, Duration.ofMinutes(10), meterRegistry);
+        this.loads = new AtomicInteger();
+
+        var user = new User(1L, "test", "hash");
+        var file = new File("test.txt", "text/plain", user);
+        file.setId(1L);
+        this.userFile = new UserFile();
+        this.userFile.setId(1L);
+        this.userFile.setUserId(1L);
+        this.userFile.setStorageKey("key");
+        this.version = new FileVersion("key", 0, "hash", file);
+    }
+
+    @Test
+    void getFile_cachedFileGiven_shouldNotLoadItAgain() {
+        assertEquals(Optional.of(userFile), getFile(1L));
+        assertEquals(Optional.of(userFile), getFile(1L));
+        assertEquals(1, loads.get());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "files").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void getFile_otherUserGiven_shouldReturnEmptyOptional() {
+        getFile(1L);
+        assertEquals(Optional.empty(), getFile(2L));
+    }
+
+    @Test
+    void getFile_inlineContentGiven_shouldNotCacheIt() {
+        userFile.setStorageKey(null);
+        assertEquals(Optional.of(userFile), getFile(1L));
+        assertEquals(Optional.of(userFile), getFile(1L));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getFile_fileNotFound_shouldNotCacheIt() {
+        assertEquals(Optional.empty(), metadataCache.getFile(1L, 1L, this::loadNothing));
+        assertEquals(Optional.of(userFile), getFile(1L));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getFile_disabledCacheGiven_shouldAlwaysLoadIt() {
+        metadataCache = new FileMetadataCache(false, 100, Duration.ofMinutes(10), meterRegistry);
+        getFile(1L);
+        getFile(1L);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getVersions_cachedVersionsGiven_shouldNotLoadThemAgain() {
+        assertEquals(Collections.singletonList(version), getVersions(1L, 1L));
+        assertEquals(Collections.singletonList(version), getVersions(1L, 1L));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getVersions_otherUserGiven_shouldReturnEmptyList() {
+        getVersions(1L, 1L);
+        assertEquals(Collections.emptyList(), getVersions(1L, 2L));
+    }
+
+    @Test
+    void getVersions_cachedVersionsGiven_shouldNotBeModifiable() {
+        var versions = getVersions(1L, 1L);
+        assertThrows(UnsupportedOperationException.class, () -> versions.add(version));
+    }
+
+    @Test
+    void getVersion_cachedVersionGiven_shouldNotLoadItAgain() {
+        assertEquals(Optional.of(version), getVersion(1L));
+        assertEquals(Optional.of(version), getVersion(1L));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getVersion_otherFileGiven_shouldReturnEmptyOptional() {
+        getVersion(1L);
+        assertEquals(Optional.empty(), getVersion(2L));
+    }
+
+    @Test
+    void getVersion_inlineContentGiven_shouldNotCacheIt() {
+        version = new FileVersion(InputStream.nullInputStream(), 0, version.getFile());
+        getVersion(1L);
+        getVersion(1L);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evict_fileGiven_shouldForgetItAndItsVersions() {
+        getFile(1L);
+        getVersions(1L, 1L);
+        getVersion(1L);
+        metadataCache.evict(1L);
+        assertEquals(0, metadataCache.size());
+    }
+
+    @Test
+    void evict_otherFileGiven_shouldKeepTheCachedFile() {
+        getFile(1L);
+        getVersion(1L);
+        metadataCache.evict(2L);
+        assertEquals(2, metadataCache.size());
+    }
+
+    @Test
+    void evict_versionLoadingGiven_shouldNotLetItPutTheVersionBack() throws InterruptedException {
+        var loading = new CountDownLatch(1);
+        var loaded = new CountDownLatch(1);
+        // the lookup read the version before it was deleted, and caches it after the eviction ran
+        var lookup = new Thread(() -> metadataCache.getVersion(version.getUuid(), 1L, 1L, () -> {
+            loading.countDown();
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.of(version);
+        }));
+        lookup.start();
+        loading.await();
+        var eviction = new Thread(() -> metadataCache.evict(1L));
+        eviction.start();
+        eviction.join(200);
+        loaded.countDown();
+        lookup.join();
+        eviction.join();
+        assertEquals(0, metadataCache.size());
+    }
+
+    @Test
+    void evict_activeTransactionGiven_shouldForgetTheFileAfterCommit() {
+        getFile(1L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            metadataCache.evict(1L);
+            assertEquals(1, metadataCache.size());
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(0, metadataCache.size());
+    }
+
+    private Optional<UserFile> getFile(Long userId) {
+        return metadataCache.getFile(1L, userId, () -> {
+            loads.incrementAndGet();
+            return Optional.of(userFile);
+        });
+    }
+
+    private List<FileVersion> getVersions(Long fileId, Long userId) {
+        return metadataCache.getVersions(fileId, userId, () -> {
+            loads.incrementAndGet();
+            return new ArrayList<>(Collections.singletonList(version));
+        });
+    }
+
+    private Optional<FileVersion> getVersion(Long fileId) {
+        return metadataCache.getVersion(version.getUuid(), fileId, 1L, () -> {
+            loads.incrementAndGet();
+            return Optional.of(version);
+        });
+    }
+
+    private <T> Optional<T> loadNothing() {
+        loads.incrementAndGet();
+        return Optional.empty();
+    }
+}
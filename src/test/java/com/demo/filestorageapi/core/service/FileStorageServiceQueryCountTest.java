@@ -0,0 +1,122 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileRepository;
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.dao.UserRepository;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManager;
+import java.io.InputStream;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration tests that count the statements {@link FileStorageService} runs against the database,
+ * so updating or deleting a file doesn't get slower as the file gets more versions
+ *
+ * @author Franklin Grassals
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@ExtendWith(SpringExtension.class)
+@Import({FileStorageService.class, ContentCompressor.class, ContentCache.class, FileMetadataCache.class,
+        SimpleMeterRegistry.class})
+class FileStorageServiceQueryCountTest {
+
+    @MockBean
+    BlobStore blobStoreMock;
+
+    @MockBean
+    BlobReferenceCounter blobReferenceCounterMock;
+
+    @MockBean
+    DeltaEncoder deltaEncoderMock;
+
+    @Autowired
+    FileStorageService fileStorageService;
+
+    @Autowired
+    FileRepository fileRepository;
+
+    @Autowired
+    FileVersionRepository fileVersionRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    Statistics statistics;
+    User user;
+
+    @BeforeEach
+    void setUp() {
+        this.statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        //noinspection OptionalGetWithoutIsPresent
+        this.user = userRepository.findByUsername("test").get();
+        when(blobStoreMock.put(Mockito.any(InputStream.class))).thenReturn(new StoredBlob("new", 0, "new"));
+    }
+
+    @Test
+    void updateFile_fileWithManyVersionsGiven_shouldNotLoadTheVersions() {
+        var file = saveFile("many.txt", 500);
+        // select the file, select its user, insert the version, update the current version
+        assertEquals(4, countStatements(() ->
+                fileStorageService.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, "text/plain")));
+        assertEquals(0, countLoadedVersions());
+    }
+
+    @Test
+    void deleteFile_fileWithManyVersionsGiven_shouldOnlyTombstoneTheFile() {
+        var file = saveFile("many.txt", 500);
+        // select the file, select its user, tombstone the file. The versions are left to the reclaimer
+        assertEquals(3, countStatements(() -> fileStorageService.deleteFile(file.getId(), user)));
+        assertEquals(0, countLoadedVersions());
+        verifyNoInteractions(blobReferenceCounterMock);
+    }
+
+    // saves a file with the given number of versions, and clears the persistence context as a new request would
+    private File saveFile(String filename, int versions) {
+        var file = new File(filename, "text/plain", user);
+        var version = new FileVersion("key", 0, "hash", file);
+        file.setVersions(Collections.singletonList(version));
+        file.setCurrentVersion(version);
+        fileRepository.save(file);
+        for (var i = 1; i < versions; i++) {
+            fileVersionRepository.save(new FileVersion("key", 0, "hash", file));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return file;
+    }
+
+    // counts the statements run by the action, including the ones run when the changes are flushed
+    private long countStatements(Runnable action) {
+        statistics.clear();
+        action.run();
+        entityManager.flush();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private long countLoadedVersions() {
+        return statistics.getEntityStatistics(FileVersion.class.getName()).getLoadCount();
+    }
+}
@@ -8,18 +8,33 @@ import com.demo.filestorageapi.core.model.File;
 import com.demo.filestorageapi.core.model.FileVersion;
 import com.demo.filestorageapi.core.model.User;
 import com.demo.filestorageapi.core.model.UserFile;
+import com.demo.filestorageapi.core.storage.BinaryDelta;
+import com.demo.filestorageapi.core.storage.BlobStore;
+import com.demo.filestorageapi.core.storage.EncodedBlob;
+import com.demo.filestorageapi.core.storage.StoredBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.dao.DataIntegrityViolationException;
-
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -41,8 +56,26 @@ class FileStorageServiceTest {
     @Mock
     UserFileRepository userFileRepositoryMock;
 
-    @InjectMocks
+    @Mock
+    BlobStore blobStoreMock;
+
+    @Mock
+    BlobReferenceCounter blobReferenceCounterMock;
+
+    @Mock
+    DeltaEncoder deltaEncoderMock;
+
+    @Mock
+    ContentCompressor contentCompressorMock;
+
+    @Mock
+    PlatformTransactionManager transactionManagerMock;
+
+    @Mock
+    EntityManager entityManagerMock;
+
     FileStorageService fileStorageService;
+    SimpleMeterRegistry meterRegistry;
 
     User user;
     File file;
@@ -54,9 +87,24 @@ class FileStorageServiceTest {
 
     static final String CONTENT_TYPE = "text/plain";
     static final String FILENAME = "test.txt";
+    static final String SHA256 = "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    static final StoredBlob BLOB = new StoredBlob(SHA256, 0, SHA256);
+    static final String BASE_KEY = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+    static final StoredBlob DELTA =
+            new StoredBlob("2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae", 0, null);
 
     @BeforeEach
     void setUp() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.fileStorageService = new FileStorageService(fileRepositoryMock, fileVersionRepositoryMock,
+                userFileRepositoryMock, blobStoreMock, blobReferenceCounterMock, deltaEncoderMock,
+                contentCompressorMock, new ContentCache(false, DataSize.ofMegabytes(1), DataSize.ofKilobytes(1),
+                new SimpleMeterRegistry()), new FileMetadataCache(false, 100, Duration.ofMinutes(10),
+                new SimpleMeterRegistry()), new TransactionTemplate(transactionManagerMock), entityManagerMock,
+                meterRegistry);
+        ReflectionTestUtils.setField(fileStorageService, "maxPageSize", 1000);
+        ReflectionTestUtils.setField(fileStorageService, "maxDeleteBatchSize", 2);
+
         this.user = new User(1L, "test", "test");
         this.file = new File(FILENAME, CONTENT_TYPE, user);
         this.file.setId(1L);
@@ -69,7 +117,6 @@ class FileStorageServiceTest {
         this.userFile.setCreatedAt(LocalDateTime.now());
         this.userFile.setFilename(FILENAME);
         this.userFile.setVersion(this.uuid);
-        this.userFile.setRank(1);
         this.userFile.setSizeInBytes(0L);
         this.userFile.setUserId(1L);
         this.userFile.setLastModifiedAt(LocalDateTime.now());
@@ -83,10 +130,39 @@ class FileStorageServiceTest {
 
     @Test
     void storeFile_correctParametersGiven_shouldReturnFile() {
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
         when(fileRepositoryMock.save(Mockito.any(File.class))).thenReturn(file);
         assertEquals(file, fileStorageService.storeFile(FILENAME, InputStream.nullInputStream(), 0, CONTENT_TYPE, user));
     }
 
+    @Test
+    void storeFile_correctParametersGiven_shouldRecordUploadSize() {
+        var blob = new StoredBlob(BASE_KEY, 11, BASE_KEY);
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(blob));
+        when(fileRepositoryMock.save(Mockito.any(File.class))).thenReturn(file);
+        fileStorageService.storeFile(FILENAME, InputStream.nullInputStream(), 11, CONTENT_TYPE, user);
+        var uploadSize = meterRegistry.get("storage.upload.size").summary();
+        assertEquals(1, uploadSize.count());
+        assertEquals(11, uploadSize.totalAmount());
+    }
+
+    @Test
+    void storeFile_correctParametersGiven_shouldRetainBlob() {
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
+        when(fileRepositoryMock.save(Mockito.any(File.class))).thenReturn(file);
+        fileStorageService.storeFile(FILENAME, InputStream.nullInputStream(), 0, CONTENT_TYPE, user);
+        verify(blobReferenceCounterMock).retain(BLOB);
+        verify(blobReferenceCounterMock, never()).release(Mockito.any());
+    }
+
+    @Test
+    void storeFile_correctParametersGiven_shouldMakeTheVersionCurrent() {
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
+        when(fileRepositoryMock.save(Mockito.any(File.class))).thenAnswer(a -> a.getArgument(0));
+        var stored = fileStorageService.storeFile(FILENAME, InputStream.nullInputStream(), 0, CONTENT_TYPE, user);
+        assertEquals(stored.getVersions().get(0), stored.getCurrentVersion());
+    }
+
     @Test
     void storeFile_nullFilenameGiven_shouldThrowInvalidArgumentException() {
         assertThrows(InvalidArgumentException.class,
@@ -101,18 +177,86 @@ class FileStorageServiceTest {
 
     @Test
     void storeFile_existingFilenameGiven_shouldThrowFileAlreadyExistsException() {
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
         when(fileRepositoryMock.save(Mockito.any(File.class))).thenThrow(DataIntegrityViolationException.class);
         assertThrows(FileAlreadyExistsException.class,
                 () ->  fileStorageService.storeFile(FILENAME, InputStream.nullInputStream(), 0, CONTENT_TYPE, user));
+        verify(blobReferenceCounterMock).release(Collections.singletonList(BLOB.getKey()));
     }
 
     @Test
     void updateFile_correctParametersGiven_shouldReturnFile() {
         when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
         when(fileVersionRepositoryMock.save(Mockito.any(FileVersion.class))).thenReturn(new FileVersion());
         assertEquals(file, fileStorageService.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, CONTENT_TYPE));
     }
 
+    @Test
+    void updateFile_correctParametersGiven_shouldMakeNewVersionCurrent() {
+        var version = new FileVersion(BLOB.getKey(), 0, BLOB.getSha256(), file);
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
+        when(fileVersionRepositoryMock.save(Mockito.any(FileVersion.class))).thenReturn(version);
+        fileStorageService.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, CONTENT_TYPE);
+        verify(fileRepositoryMock).updateCurrentVersion(file.getId(), version);
+    }
+
+    @Test
+    void updateFile_compressedContentGiven_shouldNotEncodeDelta() {
+        var encoded = new EncodedBlob(BLOB, "gzip", 1000, SHA256);
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(encoded);
+        when(fileVersionRepositoryMock.save(Mockito.any(FileVersion.class))).thenAnswer(a -> a.getArgument(0));
+        fileStorageService.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, CONTENT_TYPE);
+
+        verifyNoInteractions(deltaEncoderMock);
+        verify(fileVersionRepositoryMock).save(argThat(version -> "gzip".equals(version.getContentEncoding())
+                && version.getSize() == 1000 && version.getEncodedSize() == BLOB.getSize()));
+    }
+
+    @Test
+    void updateFile_deltaGiven_shouldStoreVersionAsDelta() {
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
+        when(deltaEncoderMock.accepts(BLOB.getSize())).thenReturn(true);
+        when(fileVersionRepositoryMock.findSnapshotKeyByFileId(file.getId())).thenReturn(Optional.of(BASE_KEY));
+        when(deltaEncoderMock.encode(BASE_KEY, BLOB)).thenReturn(Optional.of(DELTA));
+        when(fileVersionRepositoryMock.save(Mockito.any(FileVersion.class))).thenAnswer(a -> a.getArgument(0));
+        fileStorageService.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, CONTENT_TYPE);
+
+        verify(fileVersionRepositoryMock).save(argThat(version ->
+                DELTA.getKey().equals(version.getStorageKey()) && BASE_KEY.equals(version.getDeltaBaseKey())));
+        verify(blobReferenceCounterMock).retainExisting(BASE_KEY);
+        // the full content is only released once the version is saved
+        verify(blobReferenceCounterMock).release(Collections.singletonList(BLOB.getKey()));
+    }
+
+    @Test
+    void updateFile_sharedContentGiven_shouldNotEncodeDelta() {
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
+        when(blobReferenceCounterMock.retain(BLOB)).thenReturn(true);
+        fileStorageService.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, CONTENT_TYPE);
+        verifyNoInteractions(deltaEncoderMock);
+        verify(blobReferenceCounterMock, never()).release(Mockito.any());
+    }
+
+    @Test
+    void updateFile_deletedSnapshotGiven_shouldStoreVersionWhole() {
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
+        when(deltaEncoderMock.accepts(BLOB.getSize())).thenReturn(true);
+        when(fileVersionRepositoryMock.findSnapshotKeyByFileId(file.getId())).thenReturn(Optional.of(BASE_KEY));
+        when(deltaEncoderMock.encode(BASE_KEY, BLOB)).thenReturn(Optional.of(DELTA));
+        doThrow(BlobStoreException.class).when(blobReferenceCounterMock).retainExisting(BASE_KEY);
+        fileStorageService.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, CONTENT_TYPE);
+
+        verify(blobReferenceCounterMock).release(Collections.singletonList(DELTA.getKey()));
+        verify(fileVersionRepositoryMock).save(argThat(version ->
+                BLOB.getKey().equals(version.getStorageKey()) && version.getDeltaBaseKey() == null));
+    }
+
     @Test
     void updateFile_invalidFileIdGiven_shouldThrowFileNotFoundException() {
         when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.empty());
@@ -137,10 +281,17 @@ class FileStorageServiceTest {
     @Test
     void deleteFile_correctParametersGiven_shouldReturnFile() {
         when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
-        doAnswer(a -> null).when(fileRepositoryMock).delete(file);
         assertEquals(file, fileStorageService.deleteFile(file.getId(), user));
     }
 
+    @Test
+    void deleteFile_correctParametersGiven_shouldOnlyTombstoneTheFile() {
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        fileStorageService.deleteFile(file.getId(), user);
+        verify(fileRepositoryMock).markDeleted(eq(Collections.singletonList(file.getId())), any(LocalDateTime.class));
+        verifyNoInteractions(fileVersionRepositoryMock, blobReferenceCounterMock);
+    }
+
     @Test
     void deleteFile_invalidFileIdGiven_shouldThrowFileNotFoundException() {
         when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.empty());
@@ -155,36 +306,121 @@ class FileStorageServiceTest {
                 () ->  fileStorageService.deleteFile(file.getId(), null));
     }
 
+    @Test
+    void deleteFiles_correctParametersGiven_shouldTombstoneTheFilesFound() {
+        var ids = Arrays.asList(file.getId(), 2L);
+        when(fileRepositoryMock.findAllByIdInAndUser(ids, user)).thenReturn(Collections.singletonList(file));
+        assertEquals(Collections.singletonList(file), fileStorageService.deleteFiles(ids, user));
+        verify(fileRepositoryMock).markDeleted(eq(Collections.singletonList(file.getId())), any(LocalDateTime.class));
+    }
+
+    @Test
+    void deleteFiles_noFilesFound_shouldTombstoneNothing() {
+        when(fileRepositoryMock.findAllByIdInAndUser(Collections.singletonList(2L), user)).thenReturn(Collections.emptyList());
+        assertEquals(Collections.emptyList(), fileStorageService.deleteFiles(Collections.singletonList(2L), user));
+        verify(fileRepositoryMock, never()).markDeleted(any(), any());
+    }
+
+    @Test
+    void deleteFiles_tooManyIdsGiven_shouldThrowInvalidArgumentException() {
+        assertThrows(InvalidArgumentException.class,
+                () -> fileStorageService.deleteFiles(Arrays.asList(1L, 2L, 3L), user));
+    }
+
+    @Test
+    void deleteFiles_noIdsGiven_shouldThrowInvalidArgumentException() {
+        assertThrows(InvalidArgumentException.class,
+                () -> fileStorageService.deleteFiles(Collections.emptyList(), user));
+    }
+
     @Test
     void getFiles_correctParametersGiven_shouldReturnListOfUserFile() {
-        when(userFileRepositoryMock.findAllByUserIdAndRankOrderByFilenameAsc(user.getId(), 1)).thenReturn(userFileList);
-        assertEquals(userFileList, fileStorageService.getFiles(user));
+        when(userFileRepositoryMock.findPage(user.getId(), "%", null, "", 0L, PageRequest.of(0, 10))).thenReturn(userFileList);
+        assertEquals(userFileList, fileStorageService.getFiles(user, null, null, null, 10));
     }
 
     @Test
     void getFiles_nullUserGiven_shouldReturnEmptyListOfUserFile() {
-        when(userFileRepositoryMock.findAllByUserIdAndRankOrderByFilenameAsc(0L, 1)).thenReturn(Collections.emptyList());
-        assertEquals(Collections.emptyList(), fileStorageService.getFiles(null));
+        when(userFileRepositoryMock.findPage(0L, "%", null, "", 0L, PageRequest.of(0, 10))).thenReturn(Collections.emptyList());
+        assertEquals(Collections.emptyList(), fileStorageService.getFiles(null, null, null, null, 10));
+    }
+
+    @Test
+    void getFiles_cursorAndFiltersGiven_shouldQueryThePageAfterTheCursor() {
+        when(userFileRepositoryMock.findPage(user.getId(), "50!%!_off%", CONTENT_TYPE, FILENAME, 1L, PageRequest.of(0, 10)))
+                .thenReturn(userFileList);
+        assertEquals(userFileList,
+                fileStorageService.getFiles(user, "50%_off", CONTENT_TYPE, new FileCursor(FILENAME, 1L), 10));
+    }
+
+    @Test
+    void getFiles_limitTooLargeGiven_shouldThrowInvalidArgumentException() {
+        assertThrows(InvalidArgumentException.class, () -> fileStorageService.getFiles(user, null, null, null, 1001));
+    }
+
+    @Test
+    void forEachFile_correctParametersGiven_shouldGiveAndDetachEachFile() {
+        when(userFileRepositoryMock.streamAll(user.getId(), "docs/%", null)).thenReturn(userFileList.stream());
+        var files = new ArrayList<UserFile>();
+        fileStorageService.forEachFile(user, "docs/", null, files::add);
+        assertEquals(userFileList, files);
+        verify(entityManagerMock).detach(userFile);
     }
 
     @Test
     void getFile_correctParametersGiven_shouldReturnUserFile() {
-        when(userFileRepositoryMock.findByIdAndUserIdAndRank(file.getId(), user.getId(), 1)).thenReturn(Optional.of(userFile));
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.of(userFile));
         assertEquals(userFile, fileStorageService.getFile(file.getId(), user));
     }
 
     @Test
     void getFile_nullFileIdGiven_shouldThrowFileNotFoundException() {
-        when(userFileRepositoryMock.findByIdAndUserIdAndRank(null, user.getId(), 1)).thenReturn(Optional.empty());
+        when(userFileRepositoryMock.findByIdAndUserId(null, user.getId())).thenReturn(Optional.empty());
         assertThrows(FileNotFoundException.class, () -> fileStorageService.getFile(null, user));
     }
 
     @Test
     void getFile_nullUserGiven_shouldThrowFileNotFoundException() {
-        when(userFileRepositoryMock.findByIdAndUserIdAndRank(file.getId(), 0L, 1)).thenReturn(Optional.empty());
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), 0L)).thenReturn(Optional.empty());
         assertThrows(FileNotFoundException.class, () -> fileStorageService.getFile(file.getId(), null));
     }
 
+    @Test
+    void getFile_cachedFileGiven_shouldNotQueryItAgain() {
+        var service = withMetadataCache();
+        userFile.setStorageKey(BLOB.getKey());
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.of(userFile));
+        service.getFile(file.getId(), user);
+        assertEquals(userFile, service.getFile(file.getId(), user));
+        verify(userFileRepositoryMock, times(1)).findByIdAndUserId(file.getId(), user.getId());
+    }
+
+    @Test
+    void getFile_updatedFileGiven_shouldQueryItAgain() {
+        var service = withMetadataCache();
+        userFile.setStorageKey(BLOB.getKey());
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.of(userFile));
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(contentCompressorMock.put(Mockito.any(InputStream.class), Mockito.any())).thenReturn(EncodedBlob.identity(BLOB));
+        when(fileVersionRepositoryMock.save(Mockito.any(FileVersion.class))).thenReturn(new FileVersion());
+        service.getFile(file.getId(), user);
+        service.updateFile(file.getId(), user, InputStream.nullInputStream(), 0, CONTENT_TYPE);
+        service.getFile(file.getId(), user);
+        verify(userFileRepositoryMock, times(2)).findByIdAndUserId(file.getId(), user.getId());
+    }
+
+    @Test
+    void getFileVersions_deletedFileGiven_shouldQueryThemAgain() {
+        var service = withMetadataCache();
+        var versions = Collections.singletonList(new FileVersion(BLOB.getKey(), 0, BLOB.getSha256(), file));
+        when(fileVersionRepositoryMock.findAllByFileIdAndFileUserOrderByCreatedAtDesc(file.getId(), user))
+                .thenReturn(versions).thenReturn(Collections.emptyList());
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        assertEquals(versions, service.getFileVersions(file.getId(), user));
+        service.deleteFile(file.getId(), user);
+        assertEquals(Collections.emptyList(), service.getFileVersions(file.getId(), user));
+    }
+
     @Test
     void getFileVersions_correctParametersGiven_shouldReturnListOfFileVersion() {
         when(fileVersionRepositoryMock.findAllByFileIdAndFileUserOrderByCreatedAtDesc(file.getId(), user)).thenReturn(fileVersionList);
@@ -226,4 +462,169 @@ class FileStorageServiceTest {
         when(fileVersionRepositoryMock.findByUuidAndFileIdAndFileUser(uuid, file.getId(), null)).thenReturn(Optional.empty());
         assertThrows(FileVersionNotFoundException.class, () -> fileStorageService.getFileVersion(uuid, file.getId(), null));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getFileVersionContent_blobStoreVersionGiven_shouldReadFromBlobStore() {
+        var stream = InputStream.nullInputStream();
+        var version = new FileVersion(BLOB.getKey(), 10, BLOB.getSha256(), file);
+        when(fileVersionRepositoryMock.findByUuidAndFileIdAndFileUser(uuid, file.getId(), user)).thenReturn(Optional.of(version));
+        when(blobStoreMock.get(BLOB.getKey(), 2, 5)).thenReturn(stream);
+        assertEquals(stream, fileStorageService.getFileVersionContent(uuid, file.getId(), user).open(2, 5));
+    }
+
+    @Test
+    void getFileVersionContent_deltaVersionGiven_shouldRebuildRangeFromSnapshot() throws IOException {
+        var base = new byte[10000];
+        new Random(1).nextBytes(base);
+        var target = base.clone();
+        target[5000] ^= 1;
+        var delta = new ByteArrayOutputStream();
+        BinaryDelta.encode(new ByteArrayInputStream(base), new ByteArrayInputStream(target), target.length, delta,
+                target.length);
+
+        var version = new FileVersion(DELTA.getKey(), target.length, BLOB.getSha256(), file);
+        version.setDeltaBaseKey(BASE_KEY);
+        when(fileVersionRepositoryMock.findByUuidAndFileIdAndFileUser(uuid, file.getId(), user)).thenReturn(Optional.of(version));
+        when(blobStoreMock.get(DELTA.getKey())).thenReturn(new ByteArrayInputStream(delta.toByteArray()));
+        when(blobStoreMock.get(eq(BASE_KEY), anyLong(), anyLong())).thenAnswer(a -> new ByteArrayInputStream(base,
+                (int) (long) a.getArgument(1), (int) (long) a.getArgument(2)));
+
+        var content = fileStorageService.getFileVersionContent(uuid, file.getId(), user);
+        assertTrue(content.getPath().isEmpty());
+        try (var in = content.open(4000, 2000)) {
+            assertArrayEquals(Arrays.copyOfRange(target, 4000, 6000), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void getFileVersionContent_inlineVersionGiven_shouldNotReadFromBlobStore() throws Exception {
+        when(fileVersionRepositoryMock.findByUuidAndFileIdAndFileUser(uuid, file.getId(), user)).thenReturn(Optional.of(fileVersion));
+        when(fileVersionRepositoryMock.findContentRangeByUuid(Mockito.eq(uuid), Mockito.anyLong(), Mockito.anyInt()))
+                .thenReturn(Optional.of(new byte[0]));
+        try (var in = fileStorageService.getFileVersionContent(uuid, file.getId(), user).open()) {
+            assertEquals(-1, in.read());
+        }
+        verifyNoInteractions(blobStoreMock);
+    }
+
+    @Test
+    void getFileVersionContent_inlineVersionGiven_shouldNotReadTheDatabaseUntilTheContentIsRead() throws Exception {
+        when(fileVersionRepositoryMock.findByUuidAndFileIdAndFileUser(uuid, file.getId(), user)).thenReturn(Optional.of(fileVersion));
+        var in = fileStorageService.getFileVersionContent(uuid, file.getId(), user).open();
+        verify(fileVersionRepositoryMock, never()).findContentRangeByUuid(Mockito.any(), Mockito.anyLong(), Mockito.anyInt());
+        in.close();
+        verify(fileVersionRepositoryMock, never()).findContentRangeByUuid(Mockito.any(), Mockito.anyLong(), Mockito.anyInt());
+    }
+
+    @Test
+    void getFileVersionContent_largeInlineVersionGiven_shouldCopyTheRangeOutOfTheDatabaseInChunks() throws Exception {
+        var stored = new byte[3 * 1024 * 1024];
+        new Random(1).nextBytes(stored);
+        var version = new FileVersion(InputStream.nullInputStream(), stored.length, file);
+        version.setUuid(uuid);
+        when(fileVersionRepositoryMock.findByUuidAndFileIdAndFileUser(uuid, file.getId(), user)).thenReturn(Optional.of(version));
+        when(fileVersionRepositoryMock.findContentRangeByUuid(Mockito.eq(uuid), Mockito.anyLong(), Mockito.anyInt()))
+                .thenAnswer(invocation -> {
+                    var from = (int) (long) invocation.getArgument(1, Long.class) - 1;
+                    int length = invocation.getArgument(2);
+                    return Optional.of(Arrays.copyOfRange(stored, from, Math.min(from + length, stored.length)));
+                });
+
+        var content = fileStorageService.getFileVersionContent(uuid, file.getId(), user);
+        try (var in = content.open(1000, 2 * 1024 * 1024 + 10)) {
+            assertArrayEquals(Arrays.copyOfRange(stored, 1000, 1000 + 2 * 1024 * 1024 + 10), in.readAllBytes());
+        }
+        // only the range is selected, a megabyte at a time
+        verify(fileVersionRepositoryMock).findContentRangeByUuid(uuid, 1001, 1024 * 1024);
+        verify(fileVersionRepositoryMock).findContentRangeByUuid(uuid, 1001 + 1024 * 1024, 1024 * 1024);
+        verify(fileVersionRepositoryMock).findContentRangeByUuid(uuid, 1001 + 2 * 1024 * 1024, 10);
+    }
+
+    @Test
+    void getFileVersionContent_versionWithoutContentGiven_shouldThrowBlobStoreExceptionWhenRead() throws Exception {
+        var version = new FileVersion();
+        version.setFile(file);
+        version.setUuid(uuid);
+        when(fileVersionRepositoryMock.findByUuidAndFileIdAndFileUser(uuid, file.getId(), user)).thenReturn(Optional.of(version));
+        when(fileVersionRepositoryMock.findContentRangeByUuid(Mockito.eq(uuid), Mockito.anyLong(), Mockito.anyInt()))
+                .thenReturn(Optional.empty());
+        try (var in = fileStorageService.getFileVersionContent(uuid, file.getId(), user).open()) {
+            assertThrows(BlobStoreException.class, in::read);
+        }
+    }
+
+    @Test
+    void getFileContent_blobStoreFileGiven_shouldReturnContentWithFileMetadata() {
+        userFile.setStorageKey(BLOB.getKey());
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.of(userFile));
+        when(blobStoreMock.getPath(BLOB.getKey())).thenReturn(Optional.empty());
+        var content = fileStorageService.getFileContent(file.getId(), user);
+        assertEquals(FILENAME, content.getFilename());
+        assertEquals(CONTENT_TYPE, content.getContentType());
+        assertEquals(userFile.getSizeInBytes(), content.getSize());
+        assertEquals(userFile.getVersion(), content.getVersion());
+    }
+
+    @Test
+    void getFileContent_blobStoreFileGiven_shouldNotReadInlineContent() {
+        // cached files are detached, so their lazy inline content can't be loaded
+        var detached = spy(userFile);
+        detached.setStorageKey(BLOB.getKey());
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.of(detached));
+        when(blobStoreMock.getPath(BLOB.getKey())).thenReturn(Optional.empty());
+        fileStorageService.getFileContent(file.getId(), user);
+        verify(detached, never()).getContent();
+    }
+
+    @Test
+    void getFileContent_compressedFileGiven_shouldDecompressRange() throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var out = new GZIPOutputStream(compressed)) {
+            out.write("0123456789".getBytes());
+        }
+        userFile.setStorageKey(BLOB.getKey());
+        userFile.setContentEncoding("gzip");
+        userFile.setEncodedSize((long) compressed.size());
+        userFile.setSizeInBytes(10L);
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.of(userFile));
+        when(blobStoreMock.get(BLOB.getKey())).thenReturn(new ByteArrayInputStream(compressed.toByteArray()));
+
+        var content = fileStorageService.getFileContent(file.getId(), user);
+        assertEquals(compressed.size(), content.getEncoded().orElseThrow().getSize());
+        try (var in = content.open(2, 5)) {
+            assertEquals("23456", new String(in.readAllBytes()));
+        }
+    }
+
+    @Test
+    void getFileContent_compressedFileShorterThanRangeGiven_shouldThrowBlobStoreException() throws IOException {
+        var compressed = new ByteArrayOutputStream();
+        try (var out = new GZIPOutputStream(compressed)) {
+            out.write("0123456789".getBytes());
+        }
+        userFile.setStorageKey(BLOB.getKey());
+        userFile.setContentEncoding("gzip");
+        userFile.setEncodedSize((long) compressed.size());
+        userFile.setSizeInBytes(20L);
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.of(userFile));
+        when(blobStoreMock.get(BLOB.getKey())).thenReturn(new ByteArrayInputStream(compressed.toByteArray()));
+
+        var content = fileStorageService.getFileContent(file.getId(), user);
+        assertThrows(BlobStoreException.class, () -> content.open(15, 5));
+    }
+
+    @Test
+    void getFileContent_invalidFileIdGiven_shouldThrowFileNotFoundException() {
+        when(userFileRepositoryMock.findByIdAndUserId(file.getId(), user.getId())).thenReturn(Optional.empty());
+        assertThrows(FileNotFoundException.class, () -> fileStorageService.getFileContent(file.getId(), user));
+    }
+
+    // a service reading through an enabled metadata cache
+    private FileStorageService withMetadataCache() {
+        return new FileStorageService(fileRepositoryMock, fileVersionRepositoryMock, userFileRepositoryMock,
+                blobStoreMock, blobReferenceCounterMock, deltaEncoderMock, contentCompressorMock,
+                new ContentCache(false, DataSize.ofMegabytes(1), DataSize.ofKilobytes(1), new SimpleMeterRegistry()),
+                new FileMetadataCache(true, 100, Duration.ofMinutes(10), new SimpleMeterRegistry()),
+                new TransactionTemplate(transactionManagerMock), entityManagerMock, meterRegistry);
+    }
+}
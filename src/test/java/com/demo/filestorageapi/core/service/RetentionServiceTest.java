@@ -0,0 +1,189 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileRepository;
+import com.demo.filestorageapi.core.dao.FileVersionRepository;
+import com.demo.filestorageapi.core.dao.UserRepository;
+import com.demo.filestorageapi.core.exception.FileNotFoundException;
+import com.demo.filestorageapi.core.exception.InvalidArgumentException;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.FileVersion;
+import com.demo.filestorageapi.core.model.RetentionPolicy;
+import com.demo.filestorageapi.core.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Integration tests for {@link RetentionService}
+ *
+ * @author Franklin Grassals
+ */
+@DataJpaTest(properties = {"storage.retention.batch-size=2", "storage.retention.batch-delay=PT0S"})
+@ExtendWith(SpringExtension.class)
+@Import({RetentionService.class, SimpleMeterRegistry.class})
+class RetentionServiceTest {
+
+    @MockBean
+    BlobReferenceCounter blobReferenceCounterMock;
+
+    @MockBean
+    FileMetadataCache metadataCacheMock;
+
+    @Autowired
+    RetentionService retentionService;
+
+    @Autowired
+    FileRepository fileRepository;
+
+    @Autowired
+    FileVersionRepository fileVersionRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    EntityManager entityManager;
+
+    User user;
+
+    @BeforeEach
+    void setUp() {
+        //noinspection OptionalGetWithoutIsPresent
+        this.user = userRepository.findByUsername("test").get();
+    }
+
+    @Test
+    void setUserPolicy_limitsGiven_shouldSaveThePolicy() {
+        retentionService.setUserPolicy(user, 3, 30);
+        clear();
+        assertEquals(new RetentionPolicy(3, 30), retentionService.getUserPolicy(user));
+    }
+
+    @Test
+    void setFilePolicy_noLimitsGiven_shouldRemoveThePolicy() {
+        var file = saveFile("file.txt", 1);
+        retentionService.setFilePolicy(file.getId(), user, 3, null);
+        retentionService.setFilePolicy(file.getId(), user, null, null);
+        clear();
+        assertTrue(retentionService.getFilePolicy(file.getId(), user).isEmpty());
+    }
+
+    @Test
+    void setFilePolicy_invalidLimitGiven_shouldThrowInvalidArgumentException() {
+        var file = saveFile("file.txt", 1);
+        assertThrows(InvalidArgumentException.class, () -> retentionService.setFilePolicy(file.getId(), user, 0, null));
+    }
+
+    @Test
+    void getFilePolicy_deletedFileGiven_shouldThrowFileNotFoundException() {
+        var file = saveFile("file.txt", 1);
+        fileRepository.markDeleted(Collections.singletonList(file.getId()), LocalDateTime.now());
+        assertThrows(FileNotFoundException.class, () -> retentionService.getFilePolicy(file.getId(), user));
+    }
+
+    @Test
+    void prune_maxVersionsGiven_shouldKeepTheNewestVersions() {
+        var file = saveFile("file.txt", 5);
+        retentionService.setFilePolicy(file.getId(), user, 2, null);
+        clear();
+
+        // 5 versions of 10 bytes, 3 of them pruned in batches of 2 and 1
+        assertEquals(30, retentionService.prune());
+        verify(blobReferenceCounterMock).release(argThat(keys -> keys.size() == 2));
+        verify(blobReferenceCounterMock).release(argThat(keys -> keys.size() == 1));
+        assertEquals(2, getVersionIds(file).size());
+    }
+
+    @Test
+    void prune_maxVersionsGiven_shouldEvictTheFileFromTheMetadataCache() {
+        var file = saveFile("file.txt", 3);
+        var other = saveFile("other.txt", 3);
+        retentionService.setFilePolicy(file.getId(), user, 1, null);
+        clear();
+
+        retentionService.prune();
+        verify(metadataCacheMock).evict(file.getId());
+        verify(metadataCacheMock, never()).evict(other.getId());
+    }
+
+    @Test
+    void prune_maxAgeDaysGiven_shouldKeepTheCurrentVersion() {
+        var file = saveFile("file.txt", 3);
+        entityManager.createNativeQuery("update file_versions set created_at = ?")
+                .setParameter(1, LocalDateTime.now().minusDays(10))
+                .executeUpdate();
+        retentionService.setUserPolicy(user, null, 5);
+        clear();
+
+        retentionService.prune();
+        assertEquals(Collections.singletonList(getCurrentVersionId(file)), getVersionIds(file));
+    }
+
+    @Test
+    void prune_filePolicyGiven_shouldReplaceTheUserPolicy() {
+        var file = saveFile("file.txt", 4);
+        retentionService.setUserPolicy(user, 1, null);
+        retentionService.setFilePolicy(file.getId(), user, 3, null);
+        clear();
+
+        retentionService.prune();
+        assertEquals(3, getVersionIds(file).size());
+    }
+
+    @Test
+    void prune_noPolicyGiven_shouldKeepAllVersions() {
+        var file = saveFile("file.txt", 3);
+        clear();
+
+        assertEquals(0, retentionService.prune());
+        verify(blobReferenceCounterMock, never()).release(any());
+        assertEquals(3, getVersionIds(file).size());
+    }
+
+    // saves a file with the given number of versions of 10 bytes each, the last one being the current version
+    private File saveFile(String filename, int versions) {
+        var file = new File(filename, "text/plain", user);
+        var version = new FileVersion("key", 10, "hash", file);
+        file.setVersions(Collections.singletonList(version));
+        file.setCurrentVersion(version);
+        fileRepository.save(file);
+        for (var i = 1; i < versions; i++) {
+            var newer = fileVersionRepository.save(new FileVersion("key", 10, "hash", file));
+            fileRepository.updateCurrentVersion(file.getId(), newer);
+        }
+        entityManager.flush();
+        return file;
+    }
+
+    private List<Long> getVersionIds(File file) {
+        var ids = new ArrayList<>(fileVersionRepository.findIdsByFileId(file.getId(), PageRequest.of(0, 100)));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private Long getCurrentVersionId(File file) {
+        return fileVersionRepository.findNewestIdsByFileId(file.getId(), PageRequest.of(0, 1)).get(0);
+    }
+
+    // changes are flushed and the persistence context cleared, as a new request would
+    private void clear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,174 @@
+package com.demo.filestorageapi.core.service;
+
+import com.demo.filestorageapi.core.dao.FileRepository;
+import com.demo.filestorageapi.core.dao.UploadSessionRepository;
+import com.demo.filestorageapi.core.exception.*;
+import com.demo.filestorageapi.core.model.File;
+import com.demo.filestorageapi.core.model.UploadSession;
+import com.demo.filestorageapi.core.model.User;
+import com.demo.filestorageapi.core.storage.UploadStagingArea;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link UploadSessionService}
+ *
+ * @author Franklin Grassals
+ */
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTest {
+
+    @Mock
+    UploadSessionRepository uploadSessionRepositoryMock;
+
+    @Mock
+    FileRepository fileRepositoryMock;
+
+    @Mock
+    FileStorageService fileStorageServiceMock;
+
+    @Mock
+    UploadStagingArea uploadStagingAreaMock;
+
+    @InjectMocks
+    UploadSessionService uploadSessionService;
+
+    User user;
+    File file;
+    UploadSession session;
+
+    static final String CONTENT_TYPE = "text/plain";
+    static final String FILENAME = "test.txt";
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(uploadSessionService, "maxFileSize", DataSize.ofGigabytes(10));
+        ReflectionTestUtils.setField(uploadSessionService, "maxChunks", 10000);
+        ReflectionTestUtils.setField(uploadSessionService, "sessionTtl", Duration.ofHours(24));
+
+        this.user = new User(1L, "test", "test");
+        this.file = new File(FILENAME, CONTENT_TYPE, user);
+        this.file.setId(1L);
+        this.session = new UploadSession(FILENAME, CONTENT_TYPE, 10, user, null, LocalDateTime.now().plusDays(1));
+    }
+
+    @Test
+    void createSession_correctParametersGiven_shouldReturnUploadSession() {
+        when(uploadSessionRepositoryMock.save(Mockito.any(UploadSession.class))).then(invocation -> invocation.getArgument(0));
+        var created = uploadSessionService.createSession(FILENAME, CONTENT_TYPE, 5_000_000_000L, null, user);
+        assertEquals(5_000_000_000L, created.getSize());
+        assertNull(created.getFile());
+    }
+
+    @Test
+    void createSession_tooLargeSizeGiven_shouldThrowInvalidArgumentException() {
+        assertThrows(InvalidArgumentException.class,
+                () -> uploadSessionService.createSession(FILENAME, CONTENT_TYPE, DataSize.ofGigabytes(11).toBytes(), null, user));
+    }
+
+    @Test
+    void createSession_emptyFilenameGiven_shouldThrowInvalidArgumentException() {
+        assertThrows(InvalidArgumentException.class,
+                () -> uploadSessionService.createSession("", CONTENT_TYPE, 10, null, user));
+    }
+
+    @Test
+    void createSession_existingFileGiven_shouldUseItsFilename() {
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        when(uploadSessionRepositoryMock.save(Mockito.any(UploadSession.class))).then(invocation -> invocation.getArgument(0));
+        var created = uploadSessionService.createSession(null, CONTENT_TYPE, 10, file.getId(), user);
+        assertEquals(FILENAME, created.getFilename());
+        assertEquals(file, created.getFile());
+    }
+
+    @Test
+    void createSession_differentContentTypeGiven_shouldThrowFileContentTypeMismatch() {
+        when(fileRepositoryMock.findByIdAndUser(file.getId(), user)).thenReturn(Optional.of(file));
+        assertThrows(FileContentTypeMismatch.class,
+                () -> uploadSessionService.createSession(null, "image/png", 10, file.getId(), user));
+    }
+
+    @Test
+    void getSession_invalidIdGiven_shouldThrowUploadSessionNotFoundException() {
+        when(uploadSessionRepositoryMock.findByIdAndUser(session.getId(), user)).thenReturn(Optional.empty());
+        assertThrows(UploadSessionNotFoundException.class, () -> uploadSessionService.getSession(session.getId(), user));
+    }
+
+    @Test
+    void putChunk_invalidNumberGiven_shouldThrowInvalidArgumentException() {
+        when(uploadSessionRepositoryMock.findByIdAndUser(session.getId(), user)).thenReturn(Optional.of(session));
+        assertThrows(InvalidArgumentException.class,
+                () -> uploadSessionService.putChunk(session.getId(), 0, InputStream.nullInputStream(), user));
+    }
+
+    @Test
+    void putChunk_correctParametersGiven_shouldStoreChunk() {
+        var stream = InputStream.nullInputStream();
+        when(uploadSessionRepositoryMock.findByIdAndUser(session.getId(), user)).thenReturn(Optional.of(session));
+        when(uploadStagingAreaMock.putChunk(session.getId(), 2, stream)).thenReturn(5L);
+        assertEquals(5L, uploadSessionService.putChunk(session.getId(), 2, stream, user));
+        verify(uploadSessionRepositoryMock).save(session);
+    }
+
+    @Test
+    void commit_allChunksGiven_shouldStoreFileAndDeleteSession() {
+        var stream = InputStream.nullInputStream();
+        when(uploadSessionRepositoryMock.findByIdAndUser(session.getId(), user)).thenReturn(Optional.of(session));
+        when(uploadStagingAreaMock.getChunks(session.getId())).thenReturn(new TreeMap<>(Map.of(1, 6L, 2, 4L)));
+        when(uploadStagingAreaMock.openChunks(session.getId(), 2)).thenReturn(stream);
+        when(fileStorageServiceMock.storeFile(FILENAME, stream, 10, CONTENT_TYPE, user)).thenReturn(file);
+        assertEquals(file, uploadSessionService.commit(session.getId(), user));
+        verify(uploadSessionRepositoryMock).delete(session);
+        verify(uploadStagingAreaMock).delete(session.getId());
+    }
+
+    @Test
+    void commit_sessionForExistingFileGiven_shouldAddVersion() {
+        var stream = InputStream.nullInputStream();
+        session.setFile(file);
+        when(uploadSessionRepositoryMock.findByIdAndUser(session.getId(), user)).thenReturn(Optional.of(session));
+        when(uploadStagingAreaMock.getChunks(session.getId())).thenReturn(new TreeMap<>(Map.of(1, 10L)));
+        when(uploadStagingAreaMock.openChunks(session.getId(), 1)).thenReturn(stream);
+        when(fileStorageServiceMock.updateFile(file.getId(), user, stream, 10, CONTENT_TYPE)).thenReturn(file);
+        assertEquals(file, uploadSessionService.commit(session.getId(), user));
+    }
+
+    @Test
+    void commit_missingChunkGiven_shouldThrowInvalidArgumentException() {
+        when(uploadSessionRepositoryMock.findByIdAndUser(session.getId(), user)).thenReturn(Optional.of(session));
+        when(uploadStagingAreaMock.getChunks(session.getId())).thenReturn(new TreeMap<>(Map.of(1, 6L, 3, 4L)));
+        assertThrows(InvalidArgumentException.class, () -> uploadSessionService.commit(session.getId(), user));
+        verifyNoInteractions(fileStorageServiceMock);
+    }
+
+    @Test
+    void commit_incompleteSizeGiven_shouldThrowInvalidArgumentException() {
+        when(uploadSessionRepositoryMock.findByIdAndUser(session.getId(), user)).thenReturn(Optional.of(session));
+        when(uploadStagingAreaMock.getChunks(session.getId())).thenReturn(new TreeMap<>(Map.of(1, 6L)));
+        assertThrows(InvalidArgumentException.class, () -> uploadSessionService.commit(session.getId(), user));
+    }
+
+    @Test
+    void deleteExpiredSessions_expiredSessionGiven_shouldDeleteSessionAndChunks() {
+        when(uploadSessionRepositoryMock.findAllByExpiresAtBefore(Mockito.any(LocalDateTime.class)))
+                .thenReturn(Collections.singletonList(session));
+        uploadSessionService.deleteExpiredSessions();
+        verify(uploadSessionRepositoryMock).delete(session);
+        verify(uploadStagingAreaMock).delete(session.getId());
+    }
+}
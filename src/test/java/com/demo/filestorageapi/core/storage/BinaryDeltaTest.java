@@ -0,0 +1,103 @@
+package com.demo.filestorageapi.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link BinaryDelta} and {@link DeltaInputStream}
+ *
+ * @author Franklin Grassals
+ */
+class BinaryDeltaTest {
+
+    static final int SIZE = 1024 * 1024;
+
+    @Test
+    void encode_smallEditGiven_shouldReturnSmallDelta() throws IOException {
+        var base = random(SIZE, 1);
+        var target = base.clone();
+        target[SIZE / 2] ^= 1;
+        var delta = encode(base, target, SIZE);
+        assertTrue(delta.length < 10 * 1024);
+        assertArrayEquals(target, decode(delta, base));
+    }
+
+    @Test
+    void encode_insertedAndRemovedBytesGiven_shouldRebuildContent() throws IOException {
+        var base = random(SIZE, 1);
+        var target = new ByteArrayOutputStream();
+        target.write(base, 0, 1000);
+        target.write(random(300, 2));
+        target.write(base, 5000, SIZE - 5000);
+        target.write(random(7, 3));
+        var delta = encode(base, target.toByteArray(), SIZE);
+        assertTrue(delta.length < 10 * 1024);
+        assertArrayEquals(target.toByteArray(), decode(delta, base));
+    }
+
+    @Test
+    void encode_unrelatedContentGiven_shouldReturnMinusOne() throws IOException {
+        var out = new ByteArrayOutputStream();
+        assertEquals(-1, BinaryDelta.encode(new ByteArrayInputStream(random(SIZE, 1)),
+                new ByteArrayInputStream(random(SIZE, 2)), SIZE, out, SIZE / 2));
+    }
+
+    @Test
+    void encode_emptyContentsGiven_shouldRebuildEmptyContent() throws IOException {
+        var delta = encode(new byte[0], new byte[0], 1024);
+        assertEquals(0, decode(delta, new byte[0]).length);
+    }
+
+    @Test
+    void skip_copiedRangeGiven_shouldNotReadTheBase() throws IOException {
+        var base = random(SIZE, 1);
+        var delta = encode(base, base, SIZE);
+        var reads = new int[1];
+        try (var in = new DeltaInputStream(new ByteArrayInputStream(delta), (offset, length) -> {
+            reads[0]++;
+            return range(base, offset, length);
+        })) {
+            in.skipFully(SIZE - 10);
+            assertEquals(0, reads[0]);
+            assertArrayEquals(Arrays.copyOfRange(base, SIZE - 10, SIZE), in.readAllBytes());
+        }
+    }
+
+    @Test
+    void constructor_notADeltaGiven_shouldThrowIOException() {
+        assertThrows(IOException.class, () -> new DeltaInputStream(new ByteArrayInputStream(new byte[8]),
+                (offset, length) -> InputStream.nullInputStream()));
+    }
+
+    private static byte[] encode(byte[] base, byte[] target, long maxDeltaSize) throws IOException {
+        var out = new ByteArrayOutputStream();
+        assertTrue(BinaryDelta.encode(new ByteArrayInputStream(base), new ByteArrayInputStream(target), target.length,
+                out, maxDeltaSize) >= 0);
+        return out.toByteArray();
+    }
+
+    private static byte[] decode(byte[] delta, byte[] base) throws IOException {
+        try (var in = new DeltaInputStream(new ByteArrayInputStream(delta),
+                (offset, length) -> range(base, offset, length))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static InputStream range(byte[] content, long offset, long length) {
+        return new ByteArrayInputStream(content, (int) offset, (int) length);
+    }
+
+    private static byte[] random(int size, long seed) {
+        var bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
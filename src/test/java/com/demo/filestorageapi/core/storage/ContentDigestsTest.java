@@ -0,0 +1,26 @@
+package com.demo.filestorageapi.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ContentDigests}
+ *
+ * @author Franklin Grassals
+ */
+class ContentDigestsTest {
+
+    @Test
+    void toHex_sha256DigestGiven_shouldEncodeItInLowerCase() {
+        var digest = ContentDigests.sha256().digest("hello world".getBytes(StandardCharsets.US_ASCII));
+        assertEquals("b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9", ContentDigests.toHex(digest));
+    }
+
+    @Test
+    void toHex_leadingZerosGiven_shouldKeepThem() {
+        assertEquals("000f10ff", ContentDigests.toHex(new byte[]{0x00, 0x0f, 0x10, (byte) 0xff}));
+    }
+}
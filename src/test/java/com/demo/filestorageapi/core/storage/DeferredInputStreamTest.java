@@ -0,0 +1,67 @@
+package com.demo.filestorageapi.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link DeferredInputStream}
+ *
+ * @author Franklin Grassals
+ */
+class DeferredInputStreamTest {
+
+    @Test
+    void read_streamGiven_shouldOpenItOnce() throws IOException {
+        var opened = new AtomicInteger();
+        try (var in = new DeferredInputStream(() -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream("hello".getBytes());
+        })) {
+            assertEquals(0, opened.get());
+            assertArrayEquals("hello".getBytes(), in.readAllBytes());
+        }
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    void close_notReadGiven_shouldNotOpenTheStream() throws IOException {
+        var opened = new AtomicBoolean();
+        var in = new DeferredInputStream(() -> {
+            opened.set(true);
+            return InputStream.nullInputStream();
+        });
+        in.close();
+        assertThrows(IOException.class, in::read);
+        assertFalse(opened.get());
+    }
+
+    @Test
+    void close_whileOpeningGiven_shouldCloseTheOpenedStream() {
+        var closed = new AtomicBoolean();
+        var deferred = new AtomicReference<DeferredInputStream>();
+        deferred.set(new DeferredInputStream(() -> {
+            // another thread closes the stream while it's opened, e.g. when the request times out
+            try {
+                deferred.get().close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return new ByteArrayInputStream("hello".getBytes()) {
+                @Override
+                public void close() {
+                    closed.set(true);
+                }
+            };
+        }));
+        assertThrows(IOException.class, () -> deferred.get().read());
+        assertTrue(closed.get());
+    }
+}
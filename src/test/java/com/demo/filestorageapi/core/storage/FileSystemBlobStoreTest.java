@@ -0,0 +1,135 @@
+package com.demo.filestorageapi.core.storage;
+
+import com.demo.filestorageapi.core.exception.BlobStoreException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link FileSystemBlobStore}
+ *
+ * @author Franklin Grassals
+ */
+class FileSystemBlobStoreTest {
+
+    @TempDir
+    Path rootDir;
+
+    FileSystemBlobStore blobStore;
+    SimpleMeterRegistry meterRegistry;
+
+    static final byte[] CONTENT = "hello world".getBytes(StandardCharsets.UTF_8);
+    static final String CONTENT_SHA256 = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+    @BeforeEach
+    void setUp() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.blobStore = new FileSystemBlobStore(rootDir, meterRegistry);
+    }
+
+    @Test
+    void put_contentGiven_shouldReturnContentHashAndSize() {
+        assertEquals(new StoredBlob(CONTENT_SHA256, CONTENT.length, CONTENT_SHA256), blobStore.put(new ByteArrayInputStream(CONTENT)));
+    }
+
+    @Test
+    void put_contentGiven_shouldRecordTheWriteTime() {
+        blobStore.put(new ByteArrayInputStream(CONTENT));
+        assertEquals(1, meterRegistry.get("storage.blob.write").timer().count());
+    }
+
+    @Test
+    void put_contentGiven_shouldStoreInShardedDirectory() {
+        blobStore.put(new ByteArrayInputStream(CONTENT));
+        assertTrue(Files.exists(rootDir.resolve("b9").resolve("4d").resolve(CONTENT_SHA256)));
+    }
+
+    @Test
+    void put_sameContentTwiceGiven_shouldReturnSameKey() {
+        var first = blobStore.put(new ByteArrayInputStream(CONTENT));
+        var second = blobStore.put(new ByteArrayInputStream(CONTENT));
+        assertEquals(first, second);
+    }
+
+    @Test
+    void put_sameContentTwiceGiven_shouldKeepTheStoredBlob() throws IOException {
+        blobStore.put(new ByteArrayInputStream(CONTENT));
+        var path = blobStore.getPath(CONTENT_SHA256).orElseThrow();
+        var fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        blobStore.put(new ByteArrayInputStream(CONTENT));
+        assertEquals(fileKey, Files.readAttributes(path, BasicFileAttributes.class).fileKey());
+        try (var tmpFiles = Files.list(rootDir.resolve("tmp"))) {
+            assertEquals(0, tmpFiles.count());
+        }
+    }
+
+    @Test
+    void put_failingStreamGiven_shouldDeleteTempFile() throws IOException {
+        var stream = new InputStream() {
+            @Override
+            public int read() {
+                throw new IllegalStateException("upload too large");
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> blobStore.put(stream));
+        try (var tmpFiles = Files.list(rootDir.resolve("tmp"))) {
+            assertEquals(0, tmpFiles.count());
+        }
+    }
+
+    @Test
+    void get_existingKeyGiven_shouldReturnContent() throws IOException {
+        var blob = blobStore.put(new ByteArrayInputStream(CONTENT));
+        try (var stream = blobStore.get(blob.getKey())) {
+            assertArrayEquals(CONTENT, stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void get_rangeGiven_shouldReturnOnlyTheRange() throws IOException {
+        var blob = blobStore.put(new ByteArrayInputStream(CONTENT));
+        try (var stream = blobStore.get(blob.getKey(), 6, 3)) {
+            assertArrayEquals("wor".getBytes(StandardCharsets.UTF_8), stream.readAllBytes());
+        }
+    }
+
+    @Test
+    void getPath_existingKeyGiven_shouldReturnPathOfBlob() {
+        var blob = blobStore.put(new ByteArrayInputStream(CONTENT));
+        assertEquals(Optional.of(blobStore.resolve(blob.getKey())), blobStore.getPath(blob.getKey()));
+    }
+
+    @Test
+    void getPath_nonExistingKeyGiven_shouldReturnEmptyOptional() {
+        assertEquals(Optional.empty(), blobStore.getPath(CONTENT_SHA256));
+    }
+
+    @Test
+    void get_nonExistingKeyGiven_shouldThrowBlobStoreException() {
+        assertThrows(BlobStoreException.class, () -> blobStore.get(CONTENT_SHA256));
+    }
+
+    @Test
+    void get_invalidKeyGiven_shouldThrowBlobStoreException() {
+        assertThrows(BlobStoreException.class, () -> blobStore.get("../../etc/passwd"));
+    }
+
+    @Test
+    void delete_existingKeyGiven_shouldRemoveBlob() {
+        var blob = blobStore.put(new ByteArrayInputStream(CONTENT));
+        blobStore.delete(blob.getKey());
+        assertFalse(blobStore.exists(blob.getKey()));
+    }
+}
@@ -0,0 +1,65 @@
+package com.demo.filestorageapi.core.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link GzipCompressingInputStream}
+ *
+ * @author Franklin Grassals
+ */
+class GzipCompressingInputStreamTest {
+
+    @Test
+    void read_textGiven_shouldReturnSmallerGzipContent() throws IOException {
+        var content = "a line of a log file\n".repeat(10000).getBytes();
+        var compressed = compress(content);
+        assertTrue(compressed.length < content.length / 10);
+        assertArrayEquals(content, decompress(compressed));
+    }
+
+    @Test
+    void read_randomContentGiven_shouldReturnGzipContent() throws IOException {
+        var content = new byte[300 * 1024];
+        new Random(1).nextBytes(content);
+        assertArrayEquals(content, decompress(compress(content)));
+    }
+
+    @Test
+    void read_emptyContentGiven_shouldReturnGzipContent() throws IOException {
+        assertEquals(0, decompress(compress(new byte[0])).length);
+    }
+
+    @Test
+    void read_singleBytesRead_shouldReturnGzipContent() throws IOException {
+        var content = "hello gzip".getBytes();
+        var out = new ByteArrayOutputStream();
+        try (var in = new GzipCompressingInputStream(new ByteArrayInputStream(content), 6)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(b);
+            }
+        }
+        assertArrayEquals(content, decompress(out.toByteArray()));
+    }
+
+    private static byte[] compress(byte[] content) throws IOException {
+        try (var in = new GzipCompressingInputStream(new ByteArrayInputStream(content), 6)) {
+            return in.readAllBytes();
+        }
+    }
+
+    // GZIPInputStream checks the crc and the size in the trailer
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
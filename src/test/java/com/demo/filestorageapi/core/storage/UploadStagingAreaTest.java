@@ -0,0 +1,80 @@
+package com.demo.filestorageapi.core.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link UploadStagingArea}
+ *
+ * @author Franklin Grassals
+ */
+class UploadStagingAreaTest {
+
+    @TempDir
+    Path rootDir;
+
+    UploadStagingArea uploadStagingArea;
+    UUID sessionId;
+
+    @BeforeEach
+    void setUp() {
+        this.uploadStagingArea = new UploadStagingArea(rootDir);
+        this.sessionId = UUID.randomUUID();
+    }
+
+    @Test
+    void putChunk_contentGiven_shouldReturnChunkSize() {
+        assertEquals(5, uploadStagingArea.putChunk(sessionId, 1, stream("hello")));
+    }
+
+    @Test
+    void getChunks_chunksGiven_shouldReturnSizesByNumber() {
+        uploadStagingArea.putChunk(sessionId, 2, stream("world"));
+        uploadStagingArea.putChunk(sessionId, 1, stream("hello "));
+        assertEquals(new TreeMap<>(Map.of(1, 6L, 2, 5L)), uploadStagingArea.getChunks(sessionId));
+    }
+
+    @Test
+    void getChunks_unknownSessionGiven_shouldReturnEmptyMap() {
+        assertTrue(uploadStagingArea.getChunks(sessionId).isEmpty());
+    }
+
+    @Test
+    void putChunk_chunkSentAgainGiven_shouldReplaceChunk() {
+        uploadStagingArea.putChunk(sessionId, 1, stream("hel"));
+        uploadStagingArea.putChunk(sessionId, 1, stream("hello"));
+        assertEquals(new TreeMap<>(Map.of(1, 5L)), uploadStagingArea.getChunks(sessionId));
+    }
+
+    @Test
+    void openChunks_chunksGiven_shouldReadThemInOrder() throws IOException {
+        uploadStagingArea.putChunk(sessionId, 2, stream("world"));
+        uploadStagingArea.putChunk(sessionId, 1, stream("hello "));
+        try (var stream = uploadStagingArea.openChunks(sessionId, 2)) {
+            assertEquals("hello world", new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void delete_sessionGiven_shouldDeleteAllChunks() {
+        uploadStagingArea.putChunk(sessionId, 1, stream("hello"));
+        uploadStagingArea.delete(sessionId);
+        assertFalse(Files.exists(rootDir.resolve(sessionId.toString())));
+    }
+
+    private ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
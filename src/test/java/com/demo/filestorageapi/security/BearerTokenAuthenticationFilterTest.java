@@ -0,0 +1,86 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.CredentialsExpiredException;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link BearerTokenAuthenticationFilter}
+ *
+ * @author Franklin Grassals
+ */
+@ExtendWith(MockitoExtension.class)
+class BearerTokenAuthenticationFilterTest {
+
+    @Mock
+    TokenService tokenServiceMock;
+
+    BearerTokenAuthenticationFilter filter;
+    MockHttpServletRequest request;
+    MockHttpServletResponse response;
+    MockFilterChain chain;
+
+    @BeforeEach
+    void setUp() {
+        this.filter = new BearerTokenAuthenticationFilter(tokenServiceMock);
+        this.request = new MockHttpServletRequest("GET", "/files");
+        this.response = new MockHttpServletResponse();
+        this.chain = new MockFilterChain();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void doFilter_validTokenGiven_shouldAuthenticateRequest() throws Exception {
+        var user = new User(1L, "test", null);
+        when(tokenServiceMock.verify("token")).thenReturn(user);
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer token");
+
+        filter.doFilter(request, response, chain);
+
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertTrue(authentication instanceof BearerTokenAuthentication);
+        assertEquals(user, authentication.getPrincipal());
+        assertNotNull(chain.getRequest());
+    }
+
+    @Test
+    void doFilter_invalidTokenGiven_shouldRespondUnauthorized() throws Exception {
+        when(tokenServiceMock.verify("token")).thenThrow(new CredentialsExpiredException("The access token expired"));
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer token");
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(401, response.getStatus());
+        assertTrue(response.getHeader(HttpHeaders.WWW_AUTHENTICATE).startsWith("Bearer error=\"invalid_token\""));
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void doFilter_basicCredentialsGiven_shouldContinueWithoutVerifyingToken() throws Exception {
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Basic dGVzdDp0ZXN0");
+
+        filter.doFilter(request, response, chain);
+
+        verifyNoInteractions(tokenServiceMock);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertNotNull(chain.getRequest());
+    }
+}
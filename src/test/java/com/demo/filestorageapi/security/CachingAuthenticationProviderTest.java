@@ -0,0 +1,69 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link CachingAuthenticationProvider}
+ *
+ * @author Franklin Grassals
+ */
+@ExtendWith(MockitoExtension.class)
+class CachingAuthenticationProviderTest {
+
+    @Mock
+    AuthenticationProvider delegateMock;
+
+    @Mock
+    CredentialsCache credentialsCacheMock;
+
+    CachingAuthenticationProvider cachingAuthenticationProvider;
+    User user;
+    UsernamePasswordAuthenticationToken credentials;
+
+    @BeforeEach
+    void setUp() {
+        this.cachingAuthenticationProvider = new CachingAuthenticationProvider(delegateMock, credentialsCacheMock);
+        this.user = new User(1L, "test", "hash");
+        this.credentials = new UsernamePasswordAuthenticationToken("test", "test");
+    }
+
+    @Test
+    void authenticate_cachedCredentialsGiven_shouldNotCallDelegate() {
+        when(credentialsCacheMock.get("test", "test")).thenReturn(Optional.of(user));
+        var result = cachingAuthenticationProvider.authenticate(credentials);
+        assertEquals(user, result.getPrincipal());
+        assertTrue(result.isAuthenticated());
+        verifyNoInteractions(delegateMock);
+    }
+
+    @Test
+    void authenticate_newCredentialsGiven_shouldCacheThem() {
+        when(credentialsCacheMock.get("test", "test")).thenReturn(Optional.empty());
+        when(delegateMock.authenticate(credentials))
+                .thenReturn(new UsernamePasswordAuthenticationToken(user, "test", Collections.emptyList()));
+        assertEquals(user, cachingAuthenticationProvider.authenticate(credentials).getPrincipal());
+        verify(credentialsCacheMock).put("test", "test", user);
+    }
+
+    @Test
+    void authenticate_wrongCredentialsGiven_shouldNotCacheThem() {
+        when(credentialsCacheMock.get("test", "test")).thenReturn(Optional.empty());
+        when(delegateMock.authenticate(credentials)).thenThrow(new BadCredentialsException("Bad credentials"));
+        assertThrows(BadCredentialsException.class, () -> cachingAuthenticationProvider.authenticate(credentials));
+        verify(credentialsCacheMock, never()).put(any(), any(), any());
+    }
+}
@@ -0,0 +1,63 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CredentialsCache}
+ *
+ * @author Franklin Grassals
+ */
+class CredentialsCacheTest {
+
+    CredentialsCache credentialsCache;
+    SimpleMeterRegistry meterRegistry;
+    User user;
+
+    @BeforeEach
+    void setUp() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.credentialsCache = new CredentialsCache(100, Duration.ofMinutes(5), meterRegistry);
+        this.user = new User(1L, "test", "hash");
+        this.credentialsCache.put("test", "test", user);
+    }
+
+    @Test
+    void get_cachedCredentialsGiven_shouldReturnUser() {
+        assertEquals(Optional.of(user), credentialsCache.get("test", "test"));
+    }
+
+    @Test
+    void get_wrongPasswordGiven_shouldReturnEmptyOptional() {
+        assertEquals(Optional.empty(), credentialsCache.get("test", "wrong"));
+    }
+
+    @Test
+    void get_credentialsSplitDifferentlyGiven_shouldReturnEmptyOptional() {
+        assertEquals(Optional.empty(), credentialsCache.get("tes", "t:test"));
+    }
+
+    @Test
+    void evict_userGiven_shouldForgetItsCredentials() {
+        credentialsCache.put("test", "other", user);
+        credentialsCache.put("test2", "test", new User(2L, "test2", "hash"));
+        credentialsCache.evict(user.getId());
+        assertEquals(Optional.empty(), credentialsCache.get("test", "test"));
+        assertEquals(1, credentialsCache.size());
+    }
+
+    @Test
+    void get_cachedCredentialsGiven_shouldRecordHitsAndMisses() {
+        credentialsCache.get("test", "test");
+        credentialsCache.get("test", "wrong");
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "credentials").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "credentials").tag("result", "miss").functionCounter().count());
+    }
+}
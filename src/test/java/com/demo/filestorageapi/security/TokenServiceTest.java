@@ -0,0 +1,84 @@
+package com.demo.filestorageapi.security;
+
+import com.demo.filestorageapi.core.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.CredentialsExpiredException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TokenService}
+ *
+ * @author Franklin Grassals
+ */
+class TokenServiceTest {
+    static final String SECRET = Base64.getEncoder().encodeToString(new byte[32]);
+
+    TokenService tokenService;
+    User user;
+
+    @BeforeEach
+    void setUp() {
+        this.tokenService = new TokenService(SECRET, Duration.ofMinutes(15));
+        this.user = new User(1L, "test", "hash");
+    }
+
+    @Test
+    void verify_issuedTokenGiven_shouldReturnUserWithoutPassword() {
+        var verified = tokenService.verify(tokenService.issue(user).getValue());
+        assertEquals(user, verified);
+        assertNull(verified.getPassword());
+    }
+
+    @Test
+    void verify_tokenFromAnotherNodeWithTheSameSecretGiven_shouldReturnUser() {
+        var token = new TokenService(SECRET, Duration.ofMinutes(15)).issue(user).getValue();
+        assertEquals(user, tokenService.verify(token));
+    }
+
+    @Test
+    void verify_tokenSignedWithAnotherSecretGiven_shouldThrowBadCredentialsException() {
+        var token = new TokenService("", Duration.ofMinutes(15)).issue(user).getValue();
+        assertThrows(BadCredentialsException.class, () -> tokenService.verify(token));
+    }
+
+    @Test
+    void verify_tamperedClaimsGiven_shouldThrowBadCredentialsException() {
+        var parts = tokenService.issue(user).getValue().split("\\.");
+        var claims = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sub\":\"2\",\"name\":\"test2\",\"exp\":9999999999}".getBytes(StandardCharsets.UTF_8));
+        assertThrows(BadCredentialsException.class, () -> tokenService.verify(parts[0] + "." + claims + "." + parts[2]));
+    }
+
+    @Test
+    void verify_unsignedTokenGiven_shouldThrowBadCredentialsException() {
+        var parts = tokenService.issue(user).getValue().split("\\.");
+        var header = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"alg\":\"none\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        assertThrows(BadCredentialsException.class, () -> tokenService.verify(header + "." + parts[1] + "."));
+    }
+
+    @Test
+    void verify_malformedTokenGiven_shouldThrowBadCredentialsException() {
+        assertThrows(BadCredentialsException.class, () -> tokenService.verify("not-a-token"));
+        assertThrows(BadCredentialsException.class, () -> tokenService.verify("a.b.c"));
+    }
+
+    @Test
+    void verify_expiredTokenGiven_shouldThrowCredentialsExpiredException() {
+        var token = new TokenService(SECRET, Duration.ofSeconds(-1)).issue(user).getValue();
+        assertThrows(CredentialsExpiredException.class, () -> tokenService.verify(token));
+    }
+
+    @Test
+    void constructor_shortSecretGiven_shouldThrowIllegalArgumentException() {
+        var secret = Base64.getEncoder().encodeToString(new byte[16]);
+        assertThrows(IllegalArgumentException.class, () -> new TokenService(secret, Duration.ofMinutes(15)));
+    }
+}
@@ -0,0 +1,273 @@
+package com.demo.filestorageapi.web.download;
+
+import com.demo.filestorageapi.core.storage.FileContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link DownloadResponseFactory}
+ *
+ * @author Franklin Grassals
+ */
+class DownloadResponseFactoryTest {
+
+    DownloadResponseFactory downloadResponseFactory;
+    MockHttpServletRequest request;
+    SimpleMeterRegistry meterRegistry;
+    FileContent content;
+
+    static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    static final LocalDateTime LAST_MODIFIED_AT = LocalDateTime.of(2020, 7, 16, 23, 38, 33);
+    static final String SHA256 = "84d89877f0d4041efb6bf91a16f0248f2fd573e6af05c19f96bedb9f882f7882";
+    static final String ETAG = "\"" + SHA256 + "\"";
+    static final CacheControl CACHE_CONTROL = CacheControl.noCache();
+
+    @BeforeEach
+    void setUp() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.downloadResponseFactory = new DownloadResponseFactory(meterRegistry);
+        this.request = new MockHttpServletRequest();
+        this.content = new FileContent("test.txt", "text/plain", UUID.randomUUID(), SHA256, CONTENT.length,
+                LAST_MODIFIED_AT, null,
+                (offset, length) -> new ByteArrayInputStream(CONTENT, (int) offset, (int) length));
+    }
+
+    @Test
+    void build_noRangeGiven_shouldReturnWholeContent() throws IOException {
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(ETAG, response.getHeaders().getETag());
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+        assertEquals("0123456789", readBody(response));
+    }
+
+    @Test
+    void build_singleRangeGiven_shouldReturnPartialContent() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 2-4/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(3, response.getHeaders().getContentLength());
+        assertEquals("234", readBody(response));
+    }
+
+    @Test
+    void build_suffixRangeGiven_shouldReturnLastBytes() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertEquals("bytes 7-9/10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", readBody(response));
+    }
+
+    @Test
+    void build_multipleRangesGiven_shouldReturnMultipartByteranges() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,8-");
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("multipart", response.getHeaders().getContentType().getType());
+        assertEquals("byteranges", response.getHeaders().getContentType().getSubtype());
+
+        var body = readBody(response);
+        assertEquals(response.getHeaders().getContentLength(), body.length());
+        assertTrue(body.contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n"));
+        assertTrue(body.contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n"));
+    }
+
+    @Test
+    void build_unsatisfiableRangeGiven_shouldReturnRangeNotSatisfiable() {
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-20");
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode());
+        assertEquals("bytes */10", response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void build_invalidRangeGiven_shouldReturnWholeContent() {
+        request.addHeader(HttpHeaders.RANGE, "lines=1-2");
+        assertEquals(HttpStatus.OK, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_matchingIfRangeGiven_shouldReturnPartialContent() {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, LAST_MODIFIED_AT.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        assertEquals(HttpStatus.PARTIAL_CONTENT, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_outdatedIfRangeGiven_shouldReturnWholeContent() {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE,
+                LAST_MODIFIED_AT.minusDays(1).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        assertEquals(HttpStatus.OK, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_matchingEntityTagIfRangeGiven_shouldReturnPartialContent() {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, ETAG);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_weakEntityTagIfRangeGiven_shouldReturnWholeContent() {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "W/" + ETAG);
+        assertEquals(HttpStatus.OK, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_matchingIfNoneMatchGiven_shouldReturnNotModified() {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", " + ETAG);
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(ETAG, response.getHeaders().getETag());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void build_differentIfNoneMatchGiven_shouldReturnWholeContent() {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        // If-None-Match takes precedence over If-Modified-Since
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED_AT.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        assertEquals(HttpStatus.OK, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_ifModifiedSinceLastModificationGiven_shouldReturnNotModified() {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, LAST_MODIFIED_AT.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        assertEquals(HttpStatus.NOT_MODIFIED, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_ifModifiedSinceBeforeLastModificationGiven_shouldReturnWholeContent() {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE,
+                LAST_MODIFIED_AT.minusDays(1).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        assertEquals(HttpStatus.OK, downloadResponseFactory.build(request, content, CACHE_CONTROL).getStatusCode());
+    }
+
+    @Test
+    void build_compressedContentAndAcceptingClientGiven_shouldReturnStoredContent() throws IOException {
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.8");
+        var response = downloadResponseFactory.build(request, compressedContent(), CACHE_CONTROL);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("gzip", response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaders().getFirst(HttpHeaders.VARY));
+        assertEquals("\"" + SHA256 + "-gzip\"", response.getHeaders().getETag());
+        assertEquals(4, response.getHeaders().getContentLength());
+        assertEquals("gzip", readBody(response));
+    }
+
+    @Test
+    void build_compressedContentAndRefusingClientGiven_shouldReturnDecodedContent() throws IOException {
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *");
+        var response = downloadResponseFactory.build(request, compressedContent(), CACHE_CONTROL);
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(ETAG, response.getHeaders().getETag());
+        assertEquals("0123456789", readBody(response));
+    }
+
+    @Test
+    void build_compressedContentAndRangeGiven_shouldReturnDecodedRange() throws IOException {
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        var response = downloadResponseFactory.build(request, compressedContent(), CACHE_CONTROL);
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("234", readBody(response));
+    }
+
+    @Test
+    void build_matchingEncodedIfNoneMatchGiven_shouldReturnNotModified() {
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"" + SHA256 + "-gzip\"");
+        var response = downloadResponseFactory.build(request, compressedContent(), CACHE_CONTROL);
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"" + SHA256 + "-gzip\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    void build_bodyReadGiven_shouldCountTheBytesSent() throws IOException {
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertEquals(0, meterRegistry.get("storage.download.active").gauge().value());
+        var activeWhileSent = new ArrayList<Double>();
+        response.getBody().writeTo(new OutputStream() {
+            @Override
+            public void write(int b) {
+                activeWhileSent.add(meterRegistry.get("storage.download.active").gauge().value());
+            }
+        });
+        assertEquals(1, activeWhileSent.get(0));
+        assertEquals(CONTENT.length, meterRegistry.get("storage.download.size").tag("transfer", "stream").counter().count());
+        assertEquals(0, meterRegistry.get("storage.download.active").gauge().value());
+    }
+
+    @Test
+    void build_requestCompletedBeforeTheBodyRan_shouldCloseTheContent() throws Exception {
+        var closed = new AtomicBoolean();
+        var tracked = new FileContent("test.txt", "text/plain", UUID.randomUUID(), SHA256, CONTENT.length,
+                LAST_MODIFIED_AT, null, (offset, length) -> new ByteArrayInputStream(CONTENT) {
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                    }
+                });
+        downloadResponseFactory.build(request, tracked, CACHE_CONTROL);
+        // e.g. the client went away while the body waited for a transfer thread
+        WebAsyncUtils.getAsyncManager(request)
+                .getCallableInterceptor(DownloadResponseFactory.CLOSE_CONTENT_INTERCEPTOR)
+                .afterCompletion(null, null);
+        assertTrue(closed.get());
+        assertEquals(0, meterRegistry.get("storage.download.active").gauge().value());
+    }
+
+    @Test
+    void build_clientDisconnected_shouldCloseTheContent() {
+        var response = downloadResponseFactory.build(request, content, CACHE_CONTROL);
+        assertThrows(IOException.class, () -> response.getBody().writeTo(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Connection reset by peer");
+            }
+        }));
+        assertEquals(0, meterRegistry.get("storage.download.active").gauge().value());
+    }
+
+    // the stored bytes stand in for the compressed content, only their length matters here
+    private FileContent compressedContent() {
+        var stored = "gzip".getBytes(StandardCharsets.US_ASCII);
+        return new FileContent("test.txt", "text/plain", UUID.randomUUID(), SHA256, CONTENT.length,
+                LAST_MODIFIED_AT, null,
+                (offset, length) -> new ByteArrayInputStream(CONTENT, (int) offset, (int) length),
+                new FileContent.Encoded("gzip", stored.length, null,
+                        (offset, length) -> new ByteArrayInputStream(stored, (int) offset, (int) length)));
+    }
+
+    private String readBody(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        var out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,30 @@
+package com.demo.filestorageapi.web.upload;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link UploadSizeLimitInputStream}
+ *
+ * @author Franklin Grassals
+ */
+class UploadSizeLimitInputStreamTest {
+
+    @Test
+    void read_bodyWithinLimitGiven_shouldReadWholeBody() throws IOException {
+        var stream = new UploadSizeLimitInputStream(new ByteArrayInputStream(new byte[10]), 10);
+        assertEquals(10, stream.readAllBytes().length);
+    }
+
+    @Test
+    void read_bodyOverLimitGiven_shouldThrowMaxUploadSizeExceededException() {
+        var stream = new UploadSizeLimitInputStream(new ByteArrayInputStream(new byte[11]), 10);
+        assertThrows(MaxUploadSizeExceededException.class, () -> stream.transferTo(OutputStream.nullOutputStream()));
+    }
+}